@@ -1,70 +1,256 @@
-/*BEGIN_COPYRIGHT_BLOCK*
-
-ASTGen BSD License
-
-Copyright (c) 2007 JavaPLT group at Rice University
-All rights reserved.
-
-Developed by:   Java Programming Languages Team
-                Rice University
-                http://www.cs.rice.edu/~javaplt/
-
-Redistribution and use in source and binary forms, with or without modification, are permitted 
-provided that the following conditions are met:
-
-    - Redistributions of source code must retain the above copyright notice, this list of conditions 
-      and the following disclaimer.
-    - Redistributions in binary form must reproduce the above copyright notice, this list of 
-      conditions and the following disclaimer in the documentation and/or other materials provided 
-      with the distribution.
-    - Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
-      contributors may be used to endorse or promote products derived from this software without 
-      specific prior written permission.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
-IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
-FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
-CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
-DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
-DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
-IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
-OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-*END_COPYRIGHT_BLOCK*/
-
-package kmworks.dsltools.ant;
-
-import edu.rice.cs.astgen.ASTGen;
-import java.io.File;
-import java.io.FileReader;
-import org.apache.tools.ant.BuildException;
-import org.apache.tools.ant.Task;
-
-/**
- * An Ant task for running ASTGen.
- *
- * @author bstoler@bstoler.org
-*/
-public class ASTGenTask extends Task {
-
-  private File _file = null;
-
-  @Override
-  public void execute() throws BuildException {
-    if (_file == null) {
-      throw new BuildException("ASTGen requires an input <file> argument!");
-    } else {
-      try {
-        new ASTGen(new FileReader(_file), _file.getParentFile()).generate();
-      } catch (Exception e) {
-        throw new BuildException(e);
-      }
-    }
-  }
-
-  public void setFile(File file) {
-    if (file != null && file.isFile() && file.exists() && file.canRead()) {
-      _file = file;
-    }
-  }
-}
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+                Rice University
+                http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+    - Redistributions of source code must retain the above copyright notice, this list of conditions 
+      and the following disclaimer.
+    - Redistributions in binary form must reproduce the above copyright notice, this list of 
+      conditions and the following disclaimer in the documentation and/or other materials provided 
+      with the distribution.
+    - Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+      contributors may be used to endorse or promote products derived from this software without 
+      specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*END_COPYRIGHT_BLOCK*/
+
+package kmworks.dsltools.ant;
+
+import edu.rice.cs.astgen.ASTGen;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
+
+/**
+ * An Ant task for running ASTGen.
+ * <p>
+ * Definition files are given by the {@code file} attribute and/or nested {@code <fileset>}
+ * elements, and are processed in parallel (by up to {@code threads} threads).  After generating
+ * from a definition, the task records the files it read (the definition, its includes, the custom
+ * class path, and ASTGen itself) and wrote in a stamp file; a definition is skipped while all of
+ * its recorded outputs are newer than its recorded inputs, unless {@code force} is set.  Stamp
+ * files are kept next to the definitions, or in {@code stampdir}.
+ * </p>
+ *
+ * @author bstoler@bstoler.org
+*/
+public class ASTGenTask extends Task {
+
+  private File _file = null;
+  private final List<FileSet> _filesets = new LinkedList<FileSet>();
+  private int _threads = Runtime.getRuntime().availableProcessors();
+  private boolean _force = false;
+  private File _stampDir = null;
+
+  @Override
+  public void execute() throws BuildException {
+    Set<File> files = new LinkedHashSet<File>();
+    if (_file != null) { files.add(_file); }
+    for (FileSet fs : _filesets) {
+      DirectoryScanner ds = fs.getDirectoryScanner(getProject());
+      for (String name : ds.getIncludedFiles()) { files.add(new File(ds.getBasedir(), name)); }
+    }
+    if (files.isEmpty()) {
+      throw new BuildException("ASTGen requires an input <file> argument or a nested <fileset>!");
+    }
+
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(_threads, files.size())));
+    List<Future<Long>> results = new ArrayList<Future<Long>>();
+    try {
+      for (final File f : files) {
+        results.add(executor.submit(new Callable<Long>() {
+          public Long call() throws Exception { return process(f); }
+        }));
+      }
+
+      // log from this thread, in the order the files were given
+      int regenerated = 0;
+      int skipped = 0;
+      BuildException failure = null;
+      int i = 0;
+      for (File f : files) {
+        try {
+          long time = results.get(i++).get();
+          if (time < 0) {
+            skipped++;
+            log(f + " is up to date", Project.MSG_VERBOSE);
+          } else {
+            regenerated++;
+            log("Generated from " + f + " in " + time + " ms");
+          }
+        } catch (ExecutionException e) {
+          log("Failed to generate from " + f + ": " + e.getCause(), Project.MSG_ERR);
+          if (failure == null) { failure = new BuildException("ASTGen failed on " + f, e.getCause()); }
+        } catch (InterruptedException e) {
+          throw new BuildException(e);
+        }
+      }
+      log(regenerated + " regenerated, " + skipped + " up to date, " + (files.size() - regenerated - skipped) +
+          " failed, in " + (System.currentTimeMillis() - start) + " ms");
+      if (failure != null) { throw failure; }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Generate from the given definition unless it is up to date; return the time taken, or -1 if skipped. */
+  private long process(File file) throws IOException {
+    File stamp = stampFile(file);
+    if (!_force && upToDate(stamp)) { return -1; }
+
+    long start = System.currentTimeMillis();
+    ASTGen gen;
+    FileReader reader = new FileReader(file);
+    try {
+      gen = new ASTGen(reader, file.getParentFile());
+      gen.generate();
+    } finally {
+      reader.close();
+    }
+
+    List<File> inputs = new ArrayList<File>();
+    inputs.add(file);
+    inputs.addAll(gen.inputFiles());
+    File generatorJar = generatorLocation();
+    if (generatorJar != null) { inputs.add(generatorJar); }
+    writeStamp(stamp, file, inputs, gen.outputFiles());
+    return System.currentTimeMillis() - start;
+  }
+
+  private File stampFile(File file) {
+    if (_stampDir == null) {
+      return new File(file.getParentFile(), "." + file.getName() + ".astgen");
+    } else {
+      String key = Integer.toHexString(file.getAbsolutePath().hashCode());
+      return new File(_stampDir, file.getName() + "-" + key + ".astgen");
+    }
+  }
+
+  /** Whether every output recorded in the stamp is at least as new as every recorded input. */
+  private static boolean upToDate(File stamp) {
+    if (!stamp.isFile()) { return false; }
+    long newestInput = Long.MIN_VALUE;
+    long oldestOutput = Long.MAX_VALUE;
+    boolean hasOutputs = false;
+    try {
+      BufferedReader in = new BufferedReader(new FileReader(stamp));
+      try {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+          if (line.startsWith("input ")) {
+            File f = new File(line.substring(6));
+            if (!f.exists()) { return false; }
+            newestInput = Math.max(newestInput, lastModified(f));
+          } else if (line.startsWith("output ")) {
+            File f = new File(line.substring(7));
+            if (!f.isFile()) { return false; }
+            oldestOutput = Math.min(oldestOutput, f.lastModified());
+            hasOutputs = true;
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    return hasOutputs && newestInput <= oldestOutput;
+  }
+
+  /** The modification time of a file, or of the newest file in a directory. */
+  private static long lastModified(File f) {
+    long result = f.lastModified();
+    File[] children = f.listFiles();
+    if (children != null) {
+      for (File child : children) { result = Math.max(result, lastModified(child)); }
+    }
+    return result;
+  }
+
+  private static void writeStamp(File stamp, File file, List<File> inputs, List<File> outputs)
+      throws IOException {
+    File dir = stamp.getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't create directory " + dir);
+    }
+    PrintWriter out = new PrintWriter(new FileWriter(stamp));
+    try {
+      out.println("# ASTGen inputs and outputs of " + file.getAbsolutePath());
+      for (File f : inputs) { out.println("input " + f.getAbsolutePath()); }
+      for (File f : outputs) { out.println("output " + f.getAbsolutePath()); }
+    } finally {
+      out.close();
+    }
+  }
+
+  /** The jar or directory from which ASTGen was loaded, or null if it is unknown. */
+  private static File generatorLocation() {
+    try {
+      return new File(ASTGen.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public void setFile(File file) {
+    if (file != null && file.isFile() && file.exists() && file.canRead()) {
+      _file = file;
+    }
+  }
+
+  /** Add a set of definition files. */
+  public void addFileset(FileSet fs) {
+    _filesets.add(fs);
+  }
+
+  /** Set the maximum number of definitions processed at once; defaults to the number of processors. */
+  public void setThreads(int threads) {
+    _threads = threads;
+  }
+
+  /** Set whether to regenerate even if the outputs are up to date. */
+  public void setForce(boolean force) {
+    _force = force;
+  }
+
+  /** Set the directory in which stamp files are kept, instead of next to the definitions. */
+  public void setStampdir(File dir) {
+    _stampDir = dir;
+  }
+}
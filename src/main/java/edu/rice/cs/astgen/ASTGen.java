@@ -56,6 +56,9 @@ public class ASTGen {
     private static final int ABSTRACT_CLASS_TYPE = 2;
     private static final int INTERFACE_TYPE = 3;
 
+    /** Version of the format of parse cache entries, included in their keys. */
+    private static final String PARSE_CACHE_VERSION = "ASTGen parse cache 1";
+
     private final Options _options;
     private final ASTModel _ast;
 
@@ -63,10 +66,12 @@ public class ASTGen {
     private boolean _advanced = false; // used to track nextToken() to prevent infinite loops
     private Stack<NodeType> _ancestorStack;
     private int _spacesOnThisLine = 0;
+    private String _currentSource = null; // name of an included module being parsed, for error messages
     
     private ClassLoader _customLoader;
     private Set<Class<? extends CodeGenerator>> _generators;
     private Set<Class<? extends Runnable>> _preprocessors;
+    private Set<File> _inputFiles; // included modules and custom class path entries	///+ <CR028/>
 
     // -1 when at the top
     private int _prevIndent = -1;
@@ -95,32 +100,39 @@ public class ASTGen {
         _generators.add(UpdateVisitorGenerator.class);
         _generators.add(ToStringGenerator.class);
         _generators.add(EqualsGenerator.class);
+        _generators.add(PrimitiveListGenerator.class);	///+ <CR021/>
         
         _preprocessors = new LinkedHashSet<Class<? extends Runnable>>();
+        _inputFiles = new LinkedHashSet<File>();	///+ <CR028/>
         
-        _tokenizer = new StreamTokenizer(new BufferedReader(reader));
-        _tokenizer.slashStarComments(true);
-        _tokenizer.slashSlashComments(true);
-        _tokenizer.eolIsSignificant(true);
+        _tokenizer = _makeTokenizer(reader);
+    }
+
+    private static StreamTokenizer _makeTokenizer(Reader reader) {
+        StreamTokenizer result = new StreamTokenizer(new BufferedReader(reader));
+        result.slashStarComments(true);
+        result.slashSlashComments(true);
+        result.eolIsSignificant(true);
 
         // Don't let spaces get ignored!
-        _tokenizer.ordinaryChar(' ');
-        _tokenizer.ordinaryChar('<');
-        _tokenizer.ordinaryChar('>');
-        _tokenizer.ordinaryChar('/');
+        result.ordinaryChar(' ');
+        result.ordinaryChar('<');
+        result.ordinaryChar('>');
+        result.ordinaryChar('/');
         
         // Turn off number parsing
-        _tokenizer.ordinaryChar('-');
-        _tokenizer.ordinaryChar('.');
-        _tokenizer.ordinaryChars('0', '9');
+        result.ordinaryChar('-');
+        result.ordinaryChar('.');
+        result.ordinaryChars('0', '9');
 
         // Make []._* and digits chars that stay part of words!
-        _tokenizer.wordChars('[', '[');
-        _tokenizer.wordChars(']', ']');
-        _tokenizer.wordChars('_', '_');
-        _tokenizer.wordChars('*', '*'); // to support on-demand import statements
-        _tokenizer.wordChars('.', '.');
-        _tokenizer.wordChars('0', '9');
+        result.wordChars('[', '[');
+        result.wordChars(']', ']');
+        result.wordChars('_', '_');
+        result.wordChars('*', '*'); // to support on-demand import statements
+        result.wordChars('.', '.');
+        result.wordChars('0', '9');
+        return result;
     }
 
     /** Read and generate the AST */
@@ -132,6 +144,21 @@ public class ASTGen {
         _output();
     }
 
+///+ <CR028>
+  /**
+   * The files other than the main source that were read while generating: included modules, and
+   * the entries of the custom class path.  Complete once {@link #generate} has returned.
+   */
+  public Set<File> inputFiles() {
+    return Collections.unmodifiableSet(_inputFiles);
+  }
+
+  /** The files written by {@link #generate}. */
+  public List<File> outputFiles() {
+    return _options.outputFiles();
+  }
+///+ </CR028>
+
   /* * * SOURCE FILE PARSING * * */
   
   /**
@@ -163,6 +190,29 @@ public class ASTGen {
       _parseGenerateSerializers();
       _parseGenerateEmptyConstructor();
       _parseUsePLT();
+      _parseGenerateZippers();	///+ <CR005/>
+      _parseGenerateKindTags();	///+ <CR006/>
+      _parseGenerateComparators();	///+ <CR007/>
+      _parseGenerateTreeDiffs();	///+ <CR008/>
+      _parseGenerateDigests();	///+ <CR009/>
+      _parseGenerateParentIndex();	///+ <CR010/>
+      _parseGenerateNodeIndex();	///+ <CR011/>
+      _parseGenerateQueries();	///+ <CR012/>
+      _parseGenerateFocusedVisitors();	///+ <CR013/>
+      _parseGenerateStatsWalkers();	///+ <CR014/>
+      _parseGenerateLinearizations();	///+ <CR015/>
+      _parseGenerateStreams();	///+ <CR016/>
+      _parseGenerateDrafts();	///+ <CR017/>
+      _parseGenerateJson();	///+ <CR018/>
+      _parseGenerateExternalizable();	///+ <CR020/>
+      _parseCompactSequences();	///+ <CR022/>
+      _parseGenerateStackSafeVisitors();	///+ <CR024/>
+      _parseMetadataSideTables();	///+ <CR025/>
+      _parseAttribute();	///+ <CR026/>
+      _parseLockFreeAttributes();	///+ <CR026/>
+      _parseParseCacheDir();	///+ <CR027/>
+      _parseVisitorShardSize();	///+ <CR029/>
+      _parseNodePackageShardSize();	///+ <CR029/>
     }
   }
   
@@ -328,6 +378,7 @@ public class ASTGen {
         @Override
         public File value(File f) { return _options.fileRelativeToSource(f); }
       });
+      CollectUtil.addAll(_inputFiles, files);	///+ <CR028/>
       _customLoader = new PathClassLoader(_customLoader, files);
       _readSemicolon();
     }
@@ -485,6 +536,213 @@ public class ASTGen {
     }
   }
 
+  private void _parseGenerateZippers() {	///+ <CR005/>
+    if (_checkCaseInsensitiveKeyword("generatezippers")) {
+      _options.generateZippers = _readBoolean();
+      if (_options.generateZippers) { _generators.add(ZipperGenerator.class); }
+      else { _generators.remove(ZipperGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateKindTags() {	///+ <CR006/>
+    if (_checkCaseInsensitiveKeyword("generatekindtags")) {
+      _options.generateKindTags = _readBoolean();
+      if (_options.generateKindTags) { _generators.add(KindTagGenerator.class); }
+      else { _generators.remove(KindTagGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateComparators() {	///+ <CR007/>
+    if (_checkCaseInsensitiveKeyword("generatecomparators")) {
+      _options.generateComparators = _readBoolean();
+      if (_options.generateComparators) { _generators.add(ComparatorGenerator.class); }
+      else { _generators.remove(ComparatorGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateTreeDiffs() {	///+ <CR008/>
+    if (_checkCaseInsensitiveKeyword("generatetreediffs")) {
+      _options.generateTreeDiffs = _readBoolean();
+      if (_options.generateTreeDiffs) { _generators.add(TreeDiffGenerator.class); }
+      else { _generators.remove(TreeDiffGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateDigests() {	///+ <CR009/>
+    if (_checkCaseInsensitiveKeyword("generatedigests")) {
+      _options.generateDigests = _readBoolean();
+      if (_options.generateDigests) { _generators.add(DigestGenerator.class); }
+      else { _generators.remove(DigestGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateParentIndex() {	///+ <CR010/>
+    if (_checkCaseInsensitiveKeyword("generateparentindex")) {
+      _options.generateParentIndex = _readBoolean();
+      if (_options.generateParentIndex) { _generators.add(ParentIndexGenerator.class); }
+      else { _generators.remove(ParentIndexGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateNodeIndex() {	///+ <CR011/>
+    if (_checkCaseInsensitiveKeyword("generatenodeindex")) {
+      _options.generateNodeIndex = _readBoolean();
+      if (_options.generateNodeIndex) { _generators.add(NodeIndexGenerator.class); }
+      else { _generators.remove(NodeIndexGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateQueries() {	///+ <CR012/>
+    if (_checkCaseInsensitiveKeyword("generatequeries")) {
+      _options.generateQueries = _readBoolean();
+      if (_options.generateQueries) { _generators.add(QueryGenerator.class); }
+      else { _generators.remove(QueryGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateFocusedVisitors() {	///+ <CR013/>
+    if (_checkCaseInsensitiveKeyword("generatefocusedvisitors")) {
+      _options.generateFocusedVisitors = _readBoolean();
+      if (_options.generateFocusedVisitors) { _generators.add(FocusedVisitorGenerator.class); }
+      else { _generators.remove(FocusedVisitorGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateStatsWalkers() {	///+ <CR014/>
+    if (_checkCaseInsensitiveKeyword("generatestatswalkers")) {
+      _options.generateStatsWalkers = _readBoolean();
+      if (_options.generateStatsWalkers) { _generators.add(StatsWalkerGenerator.class); }
+      else { _generators.remove(StatsWalkerGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateLinearizations() {	///+ <CR015/>
+    if (_checkCaseInsensitiveKeyword("generatelinearizations")) {
+      _options.generateLinearizations = _readBoolean();
+      if (_options.generateLinearizations) { _generators.add(LinearizationGenerator.class); }
+      else { _generators.remove(LinearizationGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateStreams() {	///+ <CR016/>
+    if (_checkCaseInsensitiveKeyword("generatestreams")) {
+      _options.generateStreams = _readBoolean();
+      if (_options.generateStreams) { _generators.add(StreamGenerator.class); }
+      else { _generators.remove(StreamGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateDrafts() {	///+ <CR017/>
+    if (_checkCaseInsensitiveKeyword("generatedrafts")) {
+      _options.generateDrafts = _readBoolean();
+      if (_options.generateDrafts) { _generators.add(DraftGenerator.class); }
+      else { _generators.remove(DraftGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateJson() {	///+ <CR018/>
+    if (_checkCaseInsensitiveKeyword("generatejson")) {
+      _options.generateJson = _readBoolean();
+      if (_options.generateJson) { _generators.add(JsonSerializationGenerator.class); }
+      else { _generators.remove(JsonSerializationGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateExternalizable() {	///+ <CR020/>
+    if (_checkCaseInsensitiveKeyword("generateexternalizable")) {
+      _options.generateExternalizable = _readBoolean();
+      if (_options.generateExternalizable) { _generators.add(ExternalizableGenerator.class); }
+      else { _generators.remove(ExternalizableGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseCompactSequences() {	///+ <CR022/>
+    if (_checkCaseInsensitiveKeyword("compactsequences")) {
+      _options.compactSequences = _readBoolean();
+      if (_options.compactSequences) { _generators.add(CompactListGenerator.class); }
+      else { _generators.remove(CompactListGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseGenerateStackSafeVisitors() {	///+ <CR024/>
+    if (_checkCaseInsensitiveKeyword("generatestacksafevisitors")) {
+      _options.generateStackSafeVisitors = _readBoolean();
+      if (_options.generateStackSafeVisitors) { _generators.add(StackSafeVisitorGenerator.class); }
+      else { _generators.remove(StackSafeVisitorGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseMetadataSideTables() {	///+ <CR025/>
+    if (_checkCaseInsensitiveKeyword("metadatasidetables")) {
+      _options.metadataSideTables = _readBoolean();
+      if (_options.metadataSideTables) { _generators.add(MetadataTableGenerator.class); }
+      else { _generators.remove(MetadataTableGenerator.class); }
+      _readSemicolon();
+    }
+  }
+
+  private void _parseAttribute() {	///+ <CR026/>
+    if (_checkKeyword("attribute")) {
+      String nodeTypeName = _readString();
+      _assertTokenType(StreamTokenizer.TT_WORD);
+      TypeName type = _readType();
+      String name = _readString();
+      _assertTokenType('=');
+      _nextTokenIgnoreWhitespace();
+      String method = _readString();
+      _options.attributes.add(new Attribute(nodeTypeName, type, name, method));
+      _generators.add(AttributeGenerator.class);
+      _readSemicolon();
+    }
+  }
+
+  private void _parseLockFreeAttributes() {	///+ <CR026/>
+    if (_checkCaseInsensitiveKeyword("lockfreeattributes")) {
+      _options.lockFreeAttributes = _readBoolean();
+      _readSemicolon();
+    }
+  }
+
+  private void _parseParseCacheDir() {	///+ <CR027/>
+    if (_checkCaseInsensitiveKeyword("parsecachedir")) {
+      _options.parseCacheDir = _readFilePath();
+      _readSemicolon();
+    }
+  }
+
+  private void _parseVisitorShardSize() {	///+ <CR029/>
+    if (_checkCaseInsensitiveKeyword("visitorshardsize")) {
+      _options.visitorShardSize = _readInt();
+      _assert(_options.visitorShardSize >= 0, "visitorShardSize must not be negative");
+      _readSemicolon();
+    }
+  }
+
+  private void _parseNodePackageShardSize() {	///+ <CR029/>
+    if (_checkCaseInsensitiveKeyword("nodepackageshardsize")) {
+      _options.nodePackageShardSize = _readInt();
+      _assert(_options.nodePackageShardSize >= 0, "nodePackageShardSize must not be negative");
+      _readSemicolon();
+    }
+  }
+
   private void _readAST() {
     _assertTokenString("begin");
     _nextTokenIgnoreWhitespace();
@@ -492,10 +750,29 @@ public class ASTGen {
     _nextTokenIgnoreWhitespace();
     _readSemicolon();
 
+    List<Declaration> declarations = _readDeclarations(true);
+    _assertEndSemicolon();
+    _addDeclarations(declarations, 0, _options.fileRelativeToSource(new File(".")), null, new LinkedList<File>());
+  }
+
+  private void _assertEndSemicolon() {
+    _assertTokenString("end");
+    _nextTokenIgnoreWhitespace();
+    _assertTokenType(';');
+    _nextToken();
+  }
+
+  /**
+   * Read declaration lines, until "end" if {@code inAST}, or else until the end of the input (for
+   * an included module).
+   */
+  private List<Declaration> _readDeclarations(boolean inAST) {
+    List<Declaration> result = new LinkedList<Declaration>();
     while (true) {
-      if ((_ttype() == StreamTokenizer.TT_WORD) &&
-          (_sval().equals("end")))
-      {
+      if (inAST && (_ttype() == StreamTokenizer.TT_WORD) && (_sval().equals("end"))) {
+        break;
+      }
+      else if (!inAST && _ttype() == StreamTokenizer.TT_EOF) {
         break;
       }
       else if (_ttype() == StreamTokenizer.TT_EOL) {
@@ -507,109 +784,77 @@ public class ASTGen {
         _nextToken();
       }
       else if (_ttype() == StreamTokenizer.TT_WORD) {
-        _readASTLine();
+        result.add(_readASTLine());
       }
       else {
         throw new ASTGenException("Unexpected tokenizer state: lineno=" + _tokenizer.lineno() +
                                   " ttype=" + _ttype() + " as char=" + (char) _ttype());
       }
     }
-
-    _assertEndSemicolon();
-  }
-
-  private void _assertEndSemicolon() {
-    _assertTokenString("end");
-    _nextTokenIgnoreWhitespace();
-    _assertTokenType(';');
-    _nextToken();
+    return result;
   }
 
-  private void _readASTLine() {
-    _assert(_spacesOnThisLine % _options.tabSize == 0,
-            "Invalid number of preceding spaces on line. Found " +
-            _spacesOnThisLine + " spaces, which is not an " +
-            "even multiple of the tabsize, " +
-            _options.tabSize);
-
-    int curIndent = _spacesOnThisLine / _options.tabSize;
-    _assert(curIndent <= _prevIndent + 1,
-            "Line indent is more than one past previous line!");
+  /**
+   * Parse a declaration line.  Types are kept as strings, and the declaration is not yet added
+   * to the tree, so that the result does not depend on other declarations and can be cached.
+   */
+  private Declaration _readASTLine() {
+    Declaration result = new Declaration(_tokenizer.lineno(), _spacesOnThisLine);
 
-    // If cur indent is less than prev indent, we need to get rid of
-    // levels of stack that are no longer relevant
-    int levelsToPop = _prevIndent - curIndent + 1;
-    /**
-    System.err.println("cur=" + curIndent + " prev=" + _prevIndent +
-                       " spaces=" + _spacesOnThisLine +
-                       " tabsize=" + _options.tabSize);
+    _assertTokenType(StreamTokenizer.TT_WORD);
 
-    System.err.print("\tPop " + levelsToPop + ":");
-    **/
-    for (int i = 0; i < levelsToPop; i++) {
-      NodeType p = _ancestorStack.pop();
-      // System.err.print(" ");
-      // System.err.print(p.name());
+    if (_sval().equals("include")) {
+      _nextTokenIgnoreWhitespace();
+      result.include = _readFilePath();
+      // Don't ignore whitespace after the semicolon (see below)
+      _assertTokenType(';');
+      _nextToken();
+      return result;
     }
 
-    // System.err.println(" size now=" + _ancestorStack.size());
-
-    // Now the top of the stack is the parent of the next class/interface
-    // Also set _prevIndent to the indent of this line, ready
-    // for the next call to this function
-    _prevIndent = curIndent;
-
-    int type = NORMAL_CLASS_TYPE;
-    boolean root = false;
-
-    _assertTokenType(StreamTokenizer.TT_WORD);
-    
     if (_sval().equals("root")) {
-      root = true;
+      result.root = true;
       _nextTokenIgnoreWhitespace();
       _assertTokenType(StreamTokenizer.TT_WORD);
     }
     
     // This token could be interface, abstract or the name of the class
     if (_sval().equals("interface")) {
-      type = INTERFACE_TYPE;
+      result.type = INTERFACE_TYPE;
       _nextTokenIgnoreWhitespace();
       _assertTokenType(StreamTokenizer.TT_WORD);
     }
     else if (_sval().equals("abstract")) {
-      type = ABSTRACT_CLASS_TYPE;
+      result.type = ABSTRACT_CLASS_TYPE;
       _nextTokenIgnoreWhitespace();
       _assertTokenType(StreamTokenizer.TT_WORD);
     }
 
-    String name = _readString();
+    result.name = _readString();
 
     _assertTokenType('(');
     _nextTokenIgnoreWhitespace();
 
-    List<Field> fieldList = new LinkedList<Field>();
     // Now get all the fields
     while (_ttype() != ')') {
       _assertTokenType(StreamTokenizer.TT_WORD);
 
-      boolean ignoreForEquals = false;
+      FieldDeclaration field = new FieldDeclaration();
       if (_sval().equals("ignoreForEquals")) {
-        ignoreForEquals = true;
+        field.ignoreForEquals = true;
         _nextTokenIgnoreWhitespace();
         _assertTokenType(StreamTokenizer.TT_WORD);
       }
 
-      TypeName fieldType = _readType();
+      field.type = _readTypeString();
       _assertTokenType(StreamTokenizer.TT_WORD);
-      String fieldName = _sval();
+      field.name = _sval();
       _nextTokenIgnoreWhitespace();
-      Option<String> defaultValue = Option.none();
       if (_ttype() == '=') {
         _nextTokenIgnoreWhitespace();
-        defaultValue = Option.some(_readExpression());
+        field.defaultValue = _readExpression();
       }
-      fieldList.add(new Field(fieldType, fieldName, defaultValue, _options.allowNulls, ignoreForEquals, 
-                              _options.addGetterPrefixes));
+      result.fields.add(field);
 
       if (_ttype() == ',') {
         _nextTokenIgnoreWhitespace();
@@ -619,36 +864,17 @@ public class ASTGen {
     // Consume the close paren
     _nextTokenIgnoreWhitespace();
     
-    TypeName superClass = null;
-    List<TypeName> superInterfaces = new LinkedList<TypeName>();
-    
-    if (_ancestorStack.empty()) {
-      root = root || _options.automaticRoots;
-    }
-    else {
-      NodeType parent = _ancestorStack.peek();
-      TypeName parentName = Types.parse(parent.name(), _ast);
-      if (parent instanceof NodeClass) {
-        superClass = parentName;
-        _assert(type != INTERFACE_TYPE, "Interface cannot extend a class");
-      }
-      else { superInterfaces.add(parentName); }
-    }
-
-    if (type != INTERFACE_TYPE && _ttype() == StreamTokenizer.TT_WORD &&
+    if (result.type != INTERFACE_TYPE && _ttype() == StreamTokenizer.TT_WORD &&
         _sval().equals("extends")) {
         _nextTokenIgnoreWhitespace();
         _assertTokenType(StreamTokenizer.TT_WORD);
-        _assert(superClass == null, "Class has more than one superclass");
-        superClass = _readType();
+        result.superClass = _readTypeString();
     }
     
-    if (superClass == null) { superClass = Types.parse("java.lang.Object", _ast); }
-    
     // After paren we can either have implements or extends or semicolon
     if (_ttype() != ';') {
       _assertTokenType(StreamTokenizer.TT_WORD);
-      if (type == INTERFACE_TYPE) {
+      if (result.type == INTERFACE_TYPE) {
         _assert(_sval().equals("extends"), "Expected extends or semicolon after parameter list");
       }
       else {
@@ -658,7 +884,7 @@ public class ASTGen {
 
       while (_ttype() != ';') {
         _assertTokenType(StreamTokenizer.TT_WORD);
-        superInterfaces.add(_readType());
+        result.interfaces.add(_readTypeString());
 
         if (_ttype() == ',') {
           _nextTokenIgnoreWhitespace();
@@ -670,18 +896,225 @@ public class ASTGen {
     // to see EOLs to know when to reset the indent for each line.
     _assertTokenType(';');
     _nextToken();
-    
-    NodeType result;
-    if (type == INTERFACE_TYPE) {
-      result = new NodeInterface(name, fieldList, superInterfaces);
+    return result;
+  }
+
+  /**
+   * Add parsed declarations to the tree, expanding includes.
+   * @param baseIndent  The indentation level of the declarations' first column
+   * @param dir  The directory against which included paths are resolved
+   * @param source  The name of the file the declarations came from, for error messages, or
+   *                {@code null} for the main source
+   * @param including  The (canonical) modules currently being included, to detect cycles
+   */
+  private void _addDeclarations(List<Declaration> declarations, int baseIndent, File dir, String source,
+                                LinkedList<File> including) {
+    for (Declaration d : declarations) {
+      _assertDeclaration(d.spaces % _options.tabSize == 0, d, source,
+                         "Invalid number of preceding spaces on line. Found " +
+                         d.spaces + " spaces, which is not an " +
+                         "even multiple of the tabsize, " +
+                         _options.tabSize);
+      int curIndent = baseIndent + d.spaces / _options.tabSize;
+      _assertDeclaration(curIndent <= _prevIndent + 1, d, source,
+                         "Line indent is more than one past previous line!");
+
+      if (d.include != null) {
+        File module = new File(d.include.replace('/', File.separatorChar));
+        if (!module.isAbsolute()) { module = new File(dir, module.getPath()); }
+        module = IOUtil.attemptCanonicalFile(module);
+        _assertDeclaration(!including.contains(module), d, source, "Cyclic include of " + module);
+        including.addLast(module);
+        _addDeclarations(_readModule(module, d, source), curIndent, module.getParentFile(), module.getPath(),
+                         including);
+        including.removeLast();
+        continue;
+      }
+
+      // If cur indent is less than prev indent, we need to get rid of
+      // levels of stack that are no longer relevant
+      int levelsToPop = _prevIndent - curIndent + 1;
+      for (int i = 0; i < levelsToPop; i++) {
+        _ancestorStack.pop();
+      }
+
+      // Now the top of the stack is the parent of the next class/interface
+      // Also set _prevIndent to the indent of this line, ready
+      // for the next call to this function
+      _prevIndent = curIndent;
+
+      List<Field> fieldList = new LinkedList<Field>();
+      for (FieldDeclaration f : d.fields) {
+        Option<String> defaultValue = Option.wrap(f.defaultValue);
+        fieldList.add(new Field(Types.parse(f.type, _ast), f.name, defaultValue, _options.allowNulls,
+                                f.ignoreForEquals, _options.addGetterPrefixes));
+      }
+
+      boolean root = d.root;
+      TypeName superClass = null;
+      List<TypeName> superInterfaces = new LinkedList<TypeName>();
+      
+      if (_ancestorStack.empty()) {
+        root = root || _options.automaticRoots;
+      }
+      else {
+        NodeType parent = _ancestorStack.peek();
+        TypeName parentName = Types.parse(parent.name(), _ast);
+        if (parent instanceof NodeClass) {
+          superClass = parentName;
+          _assertDeclaration(d.type != INTERFACE_TYPE, d, source, "Interface cannot extend a class");
+        }
+        else { superInterfaces.add(parentName); }
+      }
+
+      if (d.superClass != null) {
+        _assertDeclaration(superClass == null, d, source, "Class has more than one superclass");
+        superClass = Types.parse(d.superClass, _ast);
+      }
+      if (superClass == null) { superClass = Types.parse("java.lang.Object", _ast); }
+
+      for (String i : d.interfaces) { superInterfaces.add(Types.parse(i, _ast)); }
+
+      NodeType result;
+      if (d.type == INTERFACE_TYPE) {
+        result = new NodeInterface(d.name, fieldList, superInterfaces);
+      }
+      else {
+        result = new NodeClass(d.name, d.type == ABSTRACT_CLASS_TYPE, fieldList, superClass, superInterfaces);
+      }
+      
+      if (_ancestorStack.empty()) { _ast.addTopType(result, root); }
+      else { _ast.addType(result, root, _ancestorStack.peek()); }
+      _ancestorStack.push(result);
     }
-    else {
-      result = new NodeClass(name, type == ABSTRACT_CLASS_TYPE, fieldList, superClass, superInterfaces);
+  }
+
+  /**
+   * Get the declarations of an included module: from the parse cache, if the option is set and
+   * the module's content has been parsed before, or else by parsing the module (and caching the
+   * result).
+   */
+  private List<Declaration> _readModule(File module, Declaration include, String source) {
+    _inputFiles.add(module);	///+ <CR028/>
+    byte[] content;
+    try { content = IOUtil.toByteArray(module); }
+    catch (IOException e) {
+      _assertDeclaration(false, include, source, "Can't read included file " + module + ": " + e.getMessage());
+      throw new RuntimeException(); // should never happen, since _assertDeclaration() should fail
+    }
+
+    File cacheFile = null;
+    if (_options.parseCacheDir != null) {
+      cacheFile = new File(_options.fileRelativeToSource(new File(_options.parseCacheDir)),
+                           _digest(content) + ".ast.ser");
+      if (cacheFile.isFile()) {
+        try {
+          InputStream file = new FileInputStream(cacheFile);
+          try {
+            @SuppressWarnings("unchecked") List<Declaration> result =
+              (List<Declaration>) new ObjectInputStream(file).readObject();
+            return result;
+          }
+          finally { file.close(); }
+        }
+        // a truncated or stale entry: discard it, and parse the module instead
+        catch (IOException e) { IOUtil.attemptDelete(cacheFile); }
+        catch (ClassNotFoundException e) { IOUtil.attemptDelete(cacheFile); }
+      }
+    }
+
+    StreamTokenizer tokenizer = _tokenizer;
+    int spacesOnThisLine = _spacesOnThisLine;
+    String currentSource = _currentSource;
+    List<Declaration> result;
+    try {
+      _tokenizer = _makeTokenizer(new InputStreamReader(new ByteArrayInputStream(content)));
+      _spacesOnThisLine = 0;
+      _currentSource = module.getPath();
+      _nextToken();
+      result = _readDeclarations(false);
+    }
+    finally {
+      _tokenizer = tokenizer;
+      _spacesOnThisLine = spacesOnThisLine;
+      _currentSource = currentSource;
+    }
+
+    if (cacheFile != null) {
+      // write to a temporary file first, so that concurrent builds never see a partial entry
+      File dir = cacheFile.getParentFile();
+      IOUtil.attemptMkdirs(dir);
+      try {
+        File temp = File.createTempFile("module", ".tmp", dir);
+        boolean written = false;
+        OutputStream file = new FileOutputStream(temp);
+        try {
+          ObjectOutputStream out = new ObjectOutputStream(file);
+          out.writeObject(result);
+          out.flush();
+          written = true;
+        }
+        finally {
+          file.close();
+          if (!written) { IOUtil.attemptDelete(temp); }
+        }
+        if (!IOUtil.attemptMove(temp, cacheFile)) { IOUtil.attemptDelete(temp); }
+      }
+      catch (IOException e) { /* caching is an optimization; ignore */ }
+    }
+    return result;
+  }
+
+  /** A hex SHA-256 digest of the given module content and the cache format version. */
+  private static String _digest(byte[] content) {
+    try {
+      java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
+      md.update(PARSE_CACHE_VERSION.getBytes("UTF-8"));
+      md.update(content);
+      StringBuilder result = new StringBuilder();
+      for (byte b : md.digest()) {
+        result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return result.toString();
+    }
+    catch (java.security.NoSuchAlgorithmException e) { throw new ASTGenException("SHA-256 is unavailable", e); }
+    catch (UnsupportedEncodingException e) { throw new ASTGenException("UTF-8 is unavailable", e); }
+  }
+
+  private void _assertDeclaration(boolean condition, Declaration d, String source, String msg) {
+    if (!condition) {
+      throw new ASTGenException((source == null ? "" : source + ", ") + "Line " + d.line + ": " + msg);
     }
-    
-    if (_ancestorStack.empty()) { _ast.addTopType(result, root); }
-    else { _ast.addType(result, root, _ancestorStack.peek()); }
-    _ancestorStack.push(result);
+  }
+
+  /**
+   * A parsed declaration line: a node type, or an include.  Since the parse of a module is cached,
+   * this refers to types by name only.
+   */
+  private static final class Declaration implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final int line;
+    final int spaces;
+    String include = null; // path of an included module, or null for a node type
+    int type = NORMAL_CLASS_TYPE;
+    boolean root = false;
+    String name = null;
+    final List<FieldDeclaration> fields = new ArrayList<FieldDeclaration>();
+    String superClass = null;
+    final List<String> interfaces = new ArrayList<String>();
+
+    Declaration(int line, int spaces) {
+      this.line = line;
+      this.spaces = spaces;
+    }
+  }
+
+  private static final class FieldDeclaration implements Serializable {
+    private static final long serialVersionUID = 1L;
+    boolean ignoreForEquals = false;
+    String type;
+    String name;
+    String defaultValue = null;
   }
   
   /**
@@ -689,6 +1122,11 @@ public class ASTGen {
    * a list of expressions enclosed in '<' and '>'.  Whitespace afterwards will be consumed.
    */
   private TypeName _readType() {
+    return Types.parse(_readTypeString(), _ast);
+  }
+
+  /** Reads a type expression (see {@link #_readType}), without parsing it. */
+  private String _readTypeString() {
     StringBuilder result = new StringBuilder();
     result.append(_sval());
     _nextTokenIgnoreWhitespace();
@@ -703,7 +1141,7 @@ public class ASTGen {
       result.append('>');
       _nextTokenIgnoreWhitespace();
     }
-    return Types.parse(result.toString(), _ast);
+    return result.toString();
   }
   
   /**
@@ -776,6 +1214,7 @@ public class ASTGen {
     Iterable<CodeGenerator> gens = IterUtil.mapSnapshot(genCs, genFactory);
 
     _options.makeOutputDir();
+    _options.assignNodeShards(_ast.types());	///+ <CR029/>
     for (NodeType t : _ast.types()) {
       t.output(_ast, gens);
     }
@@ -789,7 +1228,8 @@ public class ASTGen {
 
   private void _assert(boolean condition, String msg) {
     if (!condition) {
-      throw new ASTGenException("Line " + _tokenizer.lineno() + ": " + msg);
+      String source = (_currentSource == null) ? "" : _currentSource + ", ";
+      throw new ASTGenException(source + "Line " + _tokenizer.lineno() + ": " + msg);
     }
   }
   
@@ -152,6 +152,29 @@ public class ASTModel {
     return CollectUtil.immutable(_rootDescendents.matchSecond(t));
   }
   
+  /**
+   * Get all types declared in the tree that {@code t} extends or implements, directly or
+   * indirectly, including {@code t} itself.  This follows both the parent relation and any
+   * additional interfaces declared for a type.
+   */
+  public Set<NodeType> supertypes(NodeType t) {
+    Set<NodeType> result = new LinkedHashSet<NodeType>();
+    java.util.LinkedList<NodeType> workList = new java.util.LinkedList<NodeType>();
+    workList.add(t);
+    while (!workList.isEmpty()) {
+      NodeType current = workList.removeFirst();
+      if (result.add(current)) {
+        Option<NodeType> parent = parent(current);
+        if (parent.isSome()) { workList.add(parent.unwrap()); }
+        for (TypeName i : current.interfaces()) {
+          Option<NodeType> declared = typeForName(i);
+          if (declared.isSome()) { workList.add(declared.unwrap()); }
+        }
+      }
+    }
+    return result;
+  }
+  
   // MUTATION METHODS:
   
   public void addTopType(NodeType t, boolean root) {
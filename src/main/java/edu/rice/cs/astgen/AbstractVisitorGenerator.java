@@ -34,6 +34,8 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.astgen;
 
+import java.util.List;
+
 public class AbstractVisitorGenerator extends VisitorGenerator {
 
   public AbstractVisitorGenerator(ASTModel ast) {
@@ -60,6 +62,12 @@ public class AbstractVisitorGenerator extends VisitorGenerator {
   @Override
   protected void generateVisitor(NodeType root) {
     String visitorName = root.name() + "AbstractVisitor";
+///+ <CR029>
+    List<List<NodeType>> shards = shards(root);
+    for (int i = 0; i < shards.size() - 1; i++) {
+      generateShard(root, visitorName, shards, i);
+    }
+///+ </CR029>
     TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
 
     // Class header
@@ -72,7 +80,9 @@ public class AbstractVisitorGenerator extends VisitorGenerator {
     writer.startLine(" **/");
     writer.startLine("@SuppressWarnings(\"unused\")");
     writer.startLine("public abstract class " + visitorName + "<RetType> ");
-    if (options.usePLT) {
+    if (shards.size() > 1) {	///+ <CR029/>
+      writer.print(" extends " + shardName(visitorName, shards.size() - 2, shards.size()) + "<RetType>");
+    } else if (options.usePLT) {
       writer.print(" extends " + root.name() + "VisitorLambda<RetType>");
     } else {
       writer.print(" implements " + root.name() + "Visitor<RetType>");
@@ -80,12 +90,14 @@ public class AbstractVisitorGenerator extends VisitorGenerator {
     writer.print(" {");
     writer.indent();
 
-    outputDefaultCaseMethod(writer, root);
-    writer.println();
+    if (shards.size() == 1) {	///+ <CR029/>
+      outputDefaultCaseMethod(writer, root);
+      writer.println();
+    }
 
     // Write out forCASE methods
     writer.startLine("/* Methods to visit an item. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(shards.size() - 1)) {	///+ <CR029/>
       outputDelegatingForCase(t, writer, root, "RetType", "", "defaultCase");
     }
     writer.println();
@@ -95,5 +107,39 @@ public class AbstractVisitorGenerator extends VisitorGenerator {
     writer.println();
     writer.close();
   }
+
+///+ <CR029>
+  /** Generate the class handling shard {@code i}, which all but the last shard's class extends. */
+  private void generateShard(NodeType root, String visitorName, List<List<NodeType>> shards, int i) {
+    String shardName = shardName(visitorName, i, shards.size());
+    TabPrintWriter writer = options.createJavaSourceInOutDir(shardName);
+    writer.startLine("/** Part of {@link " + visitorName + "}, handling the cases for shard " + i + ". */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class " + shardName + "<RetType>");
+    if (i > 0) {
+      writer.print(" extends " + shardName(visitorName, i - 1, shards.size()) + "<RetType>");
+    } else if (options.usePLT) {
+      writer.print(" extends " + root.name() + "VisitorLambda<RetType>");
+    } else {
+      writer.print(" implements " + root.name() + "Visitor<RetType>");
+    }
+    writer.print(" {");
+    writer.indent();
+
+    if (i == 0) {
+      outputDefaultCaseMethod(writer, root);
+      writer.println();
+    }
+
+    for (NodeType t : shards.get(i)) {
+      outputDelegatingForCase(t, writer, root, "RetType", "", "defaultCase");
+    }
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+///+ </CR029>
   
 }
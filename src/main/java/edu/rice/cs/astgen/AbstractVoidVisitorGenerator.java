@@ -34,6 +34,8 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.astgen;
 
+import java.util.List;
+
 public class AbstractVoidVisitorGenerator extends VisitorGenerator {
 
   public AbstractVoidVisitorGenerator(ASTModel ast) {
@@ -60,6 +62,12 @@ public class AbstractVoidVisitorGenerator extends VisitorGenerator {
   @Override
   protected void generateVisitor(NodeType root) {
     String visitorName = root.name() + "AbstractVisitor_void";
+///+ <CR029>
+    List<List<NodeType>> shards = shards(root);
+    for (int i = 0; i < shards.size() - 1; i++) {
+      generateShard(root, visitorName, shards, i);
+    }
+///+ </CR029>
     TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
 
     // Class header
@@ -72,7 +80,9 @@ public class AbstractVoidVisitorGenerator extends VisitorGenerator {
     writer.startLine(" **/");
     writer.startLine("@SuppressWarnings(\"unused\")");
     writer.startLine("public class " + visitorName);
-    if (options.usePLT) {
+    if (shards.size() > 1) {	///+ <CR029/>
+      writer.print(" extends " + shardName(visitorName, shards.size() - 2, shards.size()));
+    } else if (options.usePLT) {
       writer.print(" extends " + root.name() + "VisitorRunnable1");
     } else {
       writer.print(" implements " + root.name() + "Visitor_void");
@@ -80,12 +90,47 @@ public class AbstractVoidVisitorGenerator extends VisitorGenerator {
     writer.print(" {");
     writer.indent();
 
-    outputDefaultCaseVoidMethod(writer, root);
-    writer.println();
+    if (shards.size() == 1) {	///+ <CR029/>
+      outputDefaultCaseVoidMethod(writer, root);
+      writer.println();
+    }
 
     // Write out forCASE methods
     writer.startLine("/* Methods to visit an item. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(shards.size() - 1)) {	///+ <CR029/>
+      outputDelegatingForCase(t, writer, root, "void", "", "defaultCase");
+    }
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+///+ <CR029>
+  /** Generate the class handling shard {@code i}, which all but the last shard's class extends. */
+  private void generateShard(NodeType root, String visitorName, List<List<NodeType>> shards, int i) {
+    String shardName = shardName(visitorName, i, shards.size());
+    TabPrintWriter writer = options.createJavaSourceInOutDir(shardName);
+    writer.startLine("/** Part of {@link " + visitorName + "}, handling the cases for shard " + i + ". */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class " + shardName);
+    if (i > 0) {
+      writer.print(" extends " + shardName(visitorName, i - 1, shards.size()));
+    } else if (options.usePLT) {
+      writer.print(" extends " + root.name() + "VisitorRunnable1");
+    } else {
+      writer.print(" implements " + root.name() + "Visitor_void");
+    }
+    writer.print(" {");
+    writer.indent();
+
+    if (i == 0) {
+      outputDefaultCaseVoidMethod(writer, root);
+      writer.println();
+    }
+
+    for (NodeType t : shards.get(i)) {
       outputDelegatingForCase(t, writer, root, "void", "", "defaultCase");
     }
 
@@ -94,5 +139,6 @@ public class AbstractVoidVisitorGenerator extends VisitorGenerator {
     writer.println();
     writer.close();
   }
+///+ </CR029>
   
 }
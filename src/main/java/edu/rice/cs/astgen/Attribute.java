@@ -0,0 +1,83 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import edu.rice.cs.astgen.Types.TypeName;
+
+/**
+ * Represents a derived attribute of a node type, declared with the {@code attribute} directive:
+ * a value of the given type, computed from the node by a static method and cached in the node.
+ */
+public class Attribute {
+  private final String _nodeTypeName;
+  private final TypeName _type;
+  private final String _name;
+  private final String _method;
+
+  /**
+   * @param nodeTypeName  The name of the node type on which the attribute is declared
+   * @param type  The attribute's type
+   * @param name  The attribute's name, also used as the name of its accessor
+   * @param method  The fully qualified name of a static method computing the attribute from a node
+   */
+  public Attribute(String nodeTypeName, TypeName type, String name, String method) {
+    _nodeTypeName = nodeTypeName;
+    _type = type;
+    _name = name;
+    _method = method;
+  }
+
+  public String nodeTypeName() {
+    return _nodeTypeName;
+  }
+
+  public TypeName type() {
+    return _type;
+  }
+
+  public String name() {
+    return _name;
+  }
+
+  public String method() {
+    return _method;
+  }
+
+  /** The name of the field caching the attribute's value. */
+  public String cacheFieldName() {
+    return "_" + _name + "_attribute";
+  }
+
+}
@@ -0,0 +1,198 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates accessors for the derived attributes declared with the {@code attribute} directive.
+ * An attribute is computed by a static method on first access and cached in the node; the cache
+ * is published safely, either under the node's lock or (with {@code lockFreeAttributes}) by a
+ * compare-and-set, in which case racing threads may compute the value more than once.  Every node
+ * has an {@code invalidateAttributes()} method, which setters call after changing a field.
+ */
+public class AttributeGenerator extends CodeGenerator {
+
+  public AttributeGenerator(ASTModel ast) {
+    super(ast);
+    for (Attribute a : options.attributes) { declaringType(a); }
+  }
+
+  /** Whether any attributes are declared, in which case setters must invalidate them. */
+  public static boolean hasAttributes(ASTModel ast) {
+    return !ast.options().attributes.isEmpty();
+  }
+
+  private NodeType declaringType(Attribute a) {
+    Option<NodeType> result = ast.typeForName(a.nodeTypeName());
+    if (result.isNone()) {
+      throw new ASTGenException("Attribute " + a.name() + " is declared on unknown type " + a.nodeTypeName());
+    }
+    return result.unwrap();
+  }
+
+  private boolean appliesTo(Attribute a, NodeType t) {
+    return ast.supertypes(t).contains(declaringType(a));
+  }
+
+  /** The attributes cached by {@code c}: those that apply to it but not to its superclass. */
+  private List<Attribute> ownedAttributes(NodeClass c) {
+    List<Attribute> result = new LinkedList<Attribute>();
+    for (Attribute a : options.attributes) {
+      if (appliesTo(a, c) && (ast.isTopClass(c) || !appliesTo(a, ast.parent(c).unwrap()))) { result.add(a); }
+    }
+    return result;
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (ast.isTop(i)) {
+      writer.startLine("/** Discard the cached values of this node's attributes. */");
+      writer.startLine("public void invalidateAttributes();");
+      writer.println();
+    }
+    for (Attribute a : options.attributes) {
+      if (declaringType(a).equals(i)) {
+        writer.startLine("/** Attribute {@code " + a.name() + "}, computed by {@code " + a.method() + "}. */");
+        writer.startLine("public " + a.type().name() + " " + a.name() + "();");
+        writer.println();
+      }
+    }
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    List<Attribute> owned = ownedAttributes(c);
+    boolean top = ast.isTopClass(c);
+    if (owned.isEmpty() && !top) { return; }
+
+    if (!owned.isEmpty()) {
+      writer.startLine("/** Cached value representing an attribute whose value is null. */");
+      writer.startLine("private static final java.lang.Object NULL_ATTRIBUTE = new java.lang.Object();");
+      writer.println();
+      for (Attribute a : owned) { outputAccessor(writer, c, a); }
+    }
+
+    writer.startLine("/** Discard the cached values of this node's attributes, so that they are recomputed. */");
+    writer.startLine("public void invalidateAttributes() {");
+    writer.indent();
+    if (!top) { writer.startLine("super.invalidateAttributes();"); }
+    for (Attribute a : owned) { writer.startLine(a.cacheFieldName() + " = null;"); }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  private void outputAccessor(TabPrintWriter writer, NodeClass c, Attribute a) {
+    TypeName t = a.type();
+    boolean primitive = t instanceof PrimitiveName;
+    String field = a.cacheFieldName();
+    String updater = field.substring(1).toUpperCase();
+
+    writer.startLine("private transient volatile java.lang.Object " + field + " = null;");
+    if (options.lockFreeAttributes) {
+      writer.startLine("private static final java.util.concurrent.atomic.AtomicReferenceFieldUpdater<");
+      writer.print(c.name() + ", java.lang.Object> " + updater + " =");
+      writer.indent();
+      writer.startLine("java.util.concurrent.atomic.AtomicReferenceFieldUpdater.newUpdater(");
+      writer.print(c.name() + ".class, java.lang.Object.class, \"" + field + "\");");
+      writer.unindent();
+    }
+    writer.println();
+
+    writer.startLine("/** Attribute {@code " + a.name() + "}, computed by {@code " + a.method() + "} and cached. */");
+    if (!primitive && !t.name().equals(t.erasedName())) { writer.startLine("@SuppressWarnings(\"unchecked\")"); }
+    writer.startLine("public " + t.name() + " " + a.name() + "() {");
+    writer.indent();
+    writer.startLine("java.lang.Object result = " + field + ";");
+    writer.startLine("if (result == null) {");
+    writer.indent();
+    if (options.lockFreeAttributes) {
+      outputCompute(writer, a);
+      writer.startLine("if (!" + updater + ".compareAndSet(this, null, result)) {");
+      writer.indent();
+      writer.startLine("java.lang.Object current = " + field + ";");
+      writer.startLine("if (current != null) { result = current; }");
+      writer.unindent();
+      writer.startLine("}");
+    } else {
+      writer.startLine("synchronized (this) {");
+      writer.indent();
+      writer.startLine("result = " + field + ";");
+      writer.startLine("if (result == null) {");
+      writer.indent();
+      outputCompute(writer, a);
+      writer.startLine(field + " = result;");
+      writer.unindent();
+      writer.startLine("}");
+      writer.unindent();
+      writer.startLine("}");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    if (primitive) {
+      writer.startLine("return (" + ((PrimitiveName) t).boxed().name() + ") result;");
+    } else {
+      writer.startLine("return (result == NULL_ATTRIBUTE) ? null : (" + t.name() + ") result;");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /** Compute the value of {@code a}, storing it, boxed or replaced by NULL_ATTRIBUTE, in {@code result}. */
+  private void outputCompute(TabPrintWriter writer, Attribute a) {
+    TypeName t = a.type();
+    if (t instanceof PrimitiveName) {
+      writer.startLine("result = " + a.method() + "(this);");
+    } else {
+      writer.startLine(t.name() + " value = " + a.method() + "(this);");
+      writer.startLine("result = (value == null) ? NULL_ATTRIBUTE : value;");
+    }
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+  }
+
+}
@@ -0,0 +1,249 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, an abstract visitor that enumerates the children of a node without
+ * recursion.  Each field holding children (directly, or nested within sequences, options and
+ * tuples) of each concrete class is assigned a "slot" number; subclasses are told the slot and
+ * sequence index of every child.  This is the basis for generated indexes and traversals that must handle
+ * arbitrarily deep trees.
+ */
+public class ChildrenGenerator extends VisitorGenerator {
+
+  public ChildrenGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  /** The name of the generated enumerator class for the given root. */
+  public static String childrenClassName(NodeType root) {
+    return root.name() + "Children";
+  }
+
+  /**
+   * The fields holding children of concrete descendants of {@code root}, in slot order.  Each
+   * entry pairs a class with one of its fields; the entry's position is its slot number.
+   */
+  public static List<Map.Entry<NodeType, Field>> slots(final ASTModel ast, final NodeType root) {
+    final List<Map.Entry<NodeType, Field>> result = new ArrayList<Map.Entry<NodeType, Field>>();
+    for (final NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        for (final Field f : t.allFields(ast)) {
+          if (isChildField(ast, root, f)) {
+            result.add(new AbstractMap.SimpleImmutableEntry<NodeType, Field>(t, f));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Whether the given field holds children of {@code root}'s hierarchy. */
+  public static boolean isChildField(ASTModel ast, NodeType root, Field f) {
+    return !childTypes(ast, root, f.type()).isEmpty();
+  }
+
+  /**
+   * The declared types of the children of {@code root}'s hierarchy held by a value of type
+   * {@code t}: directly, or nested within sequences, options and tuples.  Empty if the type
+   * holds no such children.
+   */
+  public static Set<NodeType> childTypes(ASTModel ast, NodeType root, TypeName t) {
+    Set<NodeType> result = new LinkedHashSet<NodeType>();
+    addChildTypes(ast, root, t, result);
+    return result;
+  }
+
+  private static void addChildTypes(ASTModel ast, NodeType root, TypeName t, Set<NodeType> result) {
+    if (t instanceof SequenceName) {
+      addChildTypes(ast, root, ((SequenceName) t).elementType(), result);
+    } else if (t instanceof OptionClassName) {
+      addChildTypes(ast, root, ((OptionClassName) t).elementType(), result);
+    } else if (t instanceof TupleClassName) {
+      for (TypeName elt : ((TupleClassName) t).elementTypes()) { addChildTypes(ast, root, elt, result); }
+    } else if (t instanceof ClassName) {
+      edu.rice.cs.plt.tuple.Option<NodeType> nodeType = ast.typeForName(t);
+      if (nodeType.isSome() && ast.isDescendent(root, nodeType.unwrap())) { result.add(nodeType.unwrap()); }
+    }
+  }
+
+  /**
+   * Whether each child held by a field of type {@code t} is identified by an index: true unless
+   * the field holds a single child directly or as an option's value.
+   */
+  private static boolean indexed(TypeName t) {
+    if (t instanceof OptionClassName) { t = ((OptionClassName) t).elementType(); }
+    return t instanceof SequenceName || t instanceof TupleClassName;
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(VisitorInterfaceGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(final NodeType root) {
+    final String r = root.name();
+    String className = childrenClassName(root);
+    final TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+    List<Map.Entry<NodeType, Field>> slots = slots(ast, root);
+
+    writer.startLine("/**");
+    writer.startLine(" * Enumerates the non-null children of " + r + " nodes, in declaration order, without");
+    writer.startLine(" * recursion.  Each field holding children of each class is identified by a slot");
+    writer.startLine(" * number (an index into {@link #FIELD_NAMES}); elements of sequences are also");
+    writer.startLine(" * identified by their index, while other children have index -1.  Where children are");
+    writer.startLine(" * nested (in sequences of sequences, or in tuples), the index counts the field's node");
+    writer.startLine(" * positions (including those holding null) that precede the child.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class " + className + " implements " + r + "Visitor<Void> {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** The name of the field corresponding to each slot. */");
+    writer.startLine("public static final java.lang.String[] FIELD_NAMES = {");
+    writer.indent();
+    for (int i = 0; i < slots.size(); i++) {
+      Map.Entry<NodeType, Field> slot = slots.get(i);
+      writer.startLine("\"" + slot.getValue().name() + "\"" + (i+1 < slots.size() ? "," : "")
+                       + " // " + slot.getKey().name());
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("/** The number of slots. */");
+    writer.startLine("public static final int SLOT_COUNT = " + slots.size() + ";");
+    writer.println();
+    writer.startLine("/** Handle a child of {@code parent}. */");
+    writer.startLine("protected abstract void child(" + r + " parent, " + r + " child, int slot, int index);");
+    writer.println();
+    writer.startLine("/** Invoke {@link #child} for each child of {@code node}. */");
+    writer.startLine("public final void children(" + r + " node) {");
+    writer.indent();
+    writer.startLine("node." + options.visitMethod + "(this);");
+    writer.unindent();
+    writer.startLine("}");
+
+    int slot = 0;
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        writer.println();
+        outputForCaseHeader(t, writer, "Void", "");
+        writer.indent();
+        for (final Field f : t.allFields(ast)) {
+          if (!isChildField(ast, root, f)) { continue; }
+          boolean indexed = indexed(f.type());
+          writer.startLine("{");
+          writer.indent();
+          if (indexed) { writer.startLine("int i = 0;"); }
+          outputChildren(writer, root, f.type(), "that." + f.getGetterName() + "()", slot++, indexed, 0);
+          writer.unindent();
+          writer.startLine("}");
+        }
+        writer.startLine("return null;");
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /**
+   * Output statements invoking {@code child} for each child held by {@code expr}, of type {@code t}.
+   * If {@code indexed}, a local variable {@code i} holds the index of the next position.
+   */
+  private void outputChildren(TabPrintWriter writer, NodeType root, TypeName t, String expr, int slot,
+                              boolean indexed, int depth) {
+    if (childTypes(ast, root, t).isEmpty()) { return; }
+    String v = expr;
+    if (!expr.matches("\\w+")) {
+      v = "v" + depth;
+      writer.startLine(t.name() + " " + v + " = " + expr + ";");
+    }
+    if (t instanceof SequenceName) {
+      SequenceName seq = (SequenceName) t;
+      writer.startLine("if (" + v + " != null) {");
+      writer.indent();
+      writer.startLine("for (" + seq.elementType().name() + " e" + depth + " : " + seq.iterable(v) + ") {");
+      writer.indent();
+      outputChildren(writer, root, seq.elementType(), "e" + depth, slot, indexed, depth + 1);
+      writer.unindent();
+      writer.startLine("}");
+      writer.unindent();
+      writer.startLine("}");
+    } else if (t instanceof OptionClassName) {
+      OptionClassName opt = (OptionClassName) t;
+      writer.startLine("if (" + v + " != null && !" + opt.emptyTester(v) + ") {");
+      writer.indent();
+      outputChildren(writer, root, opt.elementType(), opt.nonEmptyGetter(v), slot, indexed, depth + 1);
+      writer.unindent();
+      writer.startLine("}");
+    } else if (t instanceof TupleClassName) {
+      TupleClassName tuple = (TupleClassName) t;
+      writer.startLine("if (" + v + " != null) {");
+      writer.indent();
+      List<TypeName> eltTs = tuple.elementTypes();
+      for (int k = 0; k < eltTs.size(); k++) {
+        if (childTypes(ast, root, eltTs.get(k)).isEmpty()) { continue; }
+        writer.startLine("{");
+        writer.indent();
+        outputChildren(writer, root, eltTs.get(k), tuple.getter(v, k), slot, indexed, depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+      }
+      writer.unindent();
+      writer.startLine("}");
+    } else {
+      writer.startLine("if (" + v + " != null) { child(that, " + v + ", " + slot + ", " + (indexed ? "i" : "-1") + "); }");
+      if (indexed) { writer.startLine("i++;"); }
+    }
+  }
+
+}
@@ -65,6 +65,14 @@ public abstract class CodeGenerator {
    */
   public abstract void generateClassMembers(TabPrintWriter writer, NodeClass c);
 
+  /**
+   * Names of interfaces, beyond those declared in the AST, that the given class should
+   * implement.  By default, there are none.
+   */
+  public Iterable<String> additionalInterfaces(NodeClass c) {
+    return IterUtil.empty();
+  }
+
   /**
    * Generate any necessary support code.
    * @see Options#createFileInOutDir, Options#createJavaSourceInOutDir, #copyFromResource
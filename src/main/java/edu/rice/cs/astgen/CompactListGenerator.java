@@ -0,0 +1,223 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import edu.rice.cs.plt.iter.IterUtil;
+
+/**
+ * Produces {@code CompactList}, the immutable list used for {@code List}, {@code Collection},
+ * and {@code Iterable} fields when {@link Options#compactSequences} is set.  Lists are backed by
+ * an array of exactly the list's size; the empty list is shared, and singletons store their
+ * element directly.  Constructors and setters convert their arguments with {@code copyOf}, and
+ * generated code that builds sequences uses the nested {@code Builder}.
+ */
+public class CompactListGenerator extends CodeGenerator {
+
+  public CompactListGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+    TabPrintWriter writer = options.createJavaSourceInOutDir("CompactList");
+    writer.startLine("/**");
+    writer.startLine(" * An immutable list backed by an array of exactly the list's size.  The empty list is");
+    writer.startLine(" * shared, and singleton lists hold their element without an array.  Only these two");
+    writer.startLine(" * implementations exist, so calls through a {@code CompactList} remain cheap to dispatch.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class CompactList<E> extends java.util.AbstractList<E>");
+    writer.print(" implements java.util.RandomAccess, java.io.Serializable {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private static final long serialVersionUID = 1L;");
+    writer.startLine("private static final java.lang.Object[] NO_ELEMENTS = new java.lang.Object[0];");
+    writer.startLine("private static final CompactList<?> EMPTY = new ArrayBacked<java.lang.Object>(NO_ELEMENTS);");
+    writer.println();
+    writer.startLine("private CompactList() {}");
+    writer.println();
+
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("public static <E> CompactList<E> empty() { return (CompactList<E>) EMPTY; }");
+    writer.println();
+    writer.startLine("public static <E> CompactList<E> singleton(E element) { return new Singleton<E>(element); }");
+    writer.println();
+    writer.startLine("/** A list of the given elements.  The array is copied. */");
+    writer.startLine("@java.lang.SafeVarargs");
+    writer.startLine("public static <E> CompactList<E> of(E... elements) {");
+    writer.indent();
+    writer.startLine("// copy element by element, so the varargs array itself never escapes");
+    writer.startLine("Builder<E> result = new Builder<E>(elements.length);");
+    writer.startLine("for (E e : elements) { result.add(e); }");
+    writer.startLine("return result.build();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * A list of the given elements, or {@code elements} itself if it is already a CompactList.");
+    writer.startLine(" * Returns {@code null} for {@code null}.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("public static <E> CompactList<E> copyOf(java.lang.Iterable<? extends E> elements) {");
+    writer.indent();
+    writer.startLine("if (elements == null) { return null; }");
+    writer.startLine("if (elements instanceof CompactList) { return (CompactList<E>) elements; }");
+    writer.startLine("if (elements instanceof java.util.Collection) {");
+    writer.indent();
+    writer.startLine("return wrap(((java.util.Collection<?>) elements).toArray());");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("Builder<E> result = new Builder<E>();");
+    writer.startLine("for (E e : elements) { result.add(e); }");
+    writer.startLine("return result.build();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Wrap an array that is not shared with any other object. */");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("private static <E> CompactList<E> wrap(java.lang.Object[] elements) {");
+    writer.indent();
+    writer.startLine("switch (elements.length) {");
+    writer.indent();
+    writer.startLine("case 0: return (CompactList<E>) EMPTY;");
+    writer.startLine("case 1: return new Singleton<E>((E) elements[0]);");
+    writer.startLine("default: return new ArrayBacked<E>(elements);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static final class Singleton<E> extends CompactList<E> {");
+    writer.indent();
+    writer.startLine("private static final long serialVersionUID = 1L;");
+    writer.startLine("private final E _element;");
+    writer.startLine("public Singleton(E element) { _element = element; }");
+    writer.startLine("public int size() { return 1; }");
+    writer.startLine("public E get(int i) {");
+    writer.indent();
+    writer.startLine("if (i != 0) { throw new java.lang.IndexOutOfBoundsException(\"Index: \" + i + \", Size: 1\"); }");
+    writer.startLine("return _element;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("public java.lang.Object[] toArray() { return new java.lang.Object[]{ _element }; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static final class ArrayBacked<E> extends CompactList<E> {");
+    writer.indent();
+    writer.startLine("private static final long serialVersionUID = 1L;");
+    writer.startLine("private final java.lang.Object[] _elements;");
+    writer.startLine("public ArrayBacked(java.lang.Object[] elements) { _elements = elements; }");
+    writer.startLine("public int size() { return _elements.length; }");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("public E get(int i) { return (E) _elements[i]; }");
+    writer.startLine("public java.lang.Object[] toArray() { return _elements.clone(); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Accumulates elements for a new list.  Unless full, the array is trimmed by {@link #build}. */");
+    writer.startLine("public static final class Builder<E> {");
+    writer.indent();
+    writer.startLine("private java.lang.Object[] _elements;");
+    writer.startLine("private int _size = 0;");
+    writer.println();
+    writer.startLine("public Builder() { this(8); }");
+    writer.println();
+    writer.startLine("/** @param capacity  The expected number of elements. */");
+    writer.startLine("public Builder(int capacity) { _elements = (capacity == 0) ? NO_ELEMENTS : new java.lang.Object[capacity]; }");
+    writer.println();
+    writer.startLine("public Builder<E> add(E e) {");
+    writer.indent();
+    writer.startLine("if (_size == _elements.length) {");
+    writer.indent();
+    writer.startLine("_elements = java.util.Arrays.copyOf(_elements, java.lang.Math.max(8, _size * 2));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_elements[_size++] = e;");
+    writer.startLine("return this;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public int size() { return _size; }");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * A list of the elements added so far.  If the array is full, it is shared with the result;");
+    writer.startLine(" * since any later addition grows (and thus copies) the array, the result is unaffected.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("public CompactList<E> build() {");
+    writer.indent();
+    writer.startLine("switch (_size) {");
+    writer.indent();
+    writer.startLine("case 0: return (CompactList<E>) EMPTY;");
+    writer.startLine("case 1: return new Singleton<E>((E) _elements[0]);");
+    writer.startLine("default:");
+    writer.indent();
+    writer.startLine("if (_size == _elements.length) { return new ArrayBacked<E>(_elements); }");
+    writer.startLine("return new ArrayBacked<E>(java.util.Arrays.copyOf(_elements, _size));");
+    writer.unindent();
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
@@ -0,0 +1,806 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, a {@code java.util.Comparator} defining a structural total order
+ * on nodes.  Nodes are ordered first by kind tag (see {@link KindTagGenerator}); nodes of the
+ * same class are then ordered by their fields.  Fields that can be compared directly
+ * (primitives, strings, option emptiness, etc.) are compared first, in declaration order;
+ * subtrees are then compared in declaration order.  Subtrees, and sequences of values holding
+ * subtrees, are compared using an explicit worklist, so that deep trees do not overflow the stack.  Fields marked
+ * {@code ignoreForEquals} are ignored, so that the order is consistent with {@code equals}.
+ */
+public class ComparatorGenerator extends VisitorGenerator {
+
+  /** Counter used to produce unique temporary variable names. */
+  private int _tempCount;
+
+  /**
+   * Element types of sequences that hold subtrees without being nodes; each is compared by a case
+   * of the generated {@code compareValue} method, identified by its index.
+   */
+  private List<TypeName> _valueTypes;
+
+  public ComparatorGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  protected String comparatorName(NodeType root) {
+    return root.name() + "Comparator";
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(KindTagGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = comparatorName(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+    _valueTypes = new ArrayList<TypeName>();
+    boolean hasValues = false;
+    boolean hasSets = false;
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        for (Field f : t.allFields(ast)) {
+          if (!f.ignoreForEquals()) {
+            if (needsValues(root, f.type())) { hasValues = true; }
+            if (containsUnordered(f.type())) { hasSets = true; }
+          }
+        }
+      }
+    }
+
+    writer.startLine("/**");
+    writer.startLine(" * A structural total order on " + r + " nodes, consistent with {@code equals}.  Nodes");
+    writer.startLine(" * are ordered by kind; nodes of the same kind are ordered by their fields in declaration");
+    writer.startLine(" * order.  Sequences are ordered lexicographically, and unordered sets as the sequences of");
+    writer.startLine(" * their sorted elements; {@code null} precedes any value, and an empty option precedes any");
+    writer.startLine(" * non-empty option.  Values of other types are ordered by class name and then with");
+    writer.startLine(" * {@code compareTo}; they must be {@code Comparable}.  Trees are traversed with an explicit");
+    writer.startLine(" * worklist, so comparing deep trees is safe; only sorting sets that hold subtrees nests a");
+    writer.startLine(" * comparison, once per level of such sets.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings({\"unused\", \"unchecked\", \"rawtypes\"})");
+    writer.startLine("public final class " + className + " implements java.util.Comparator<" + r + ">, ");
+    writer.print("java.io.Serializable {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private static final long serialVersionUID = 1L;");
+    writer.println();
+    writer.startLine("public static final " + className + " INSTANCE = new " + className + "();");
+    writer.println();
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+    writer.startLine("private java.lang.Object readResolve() { return INSTANCE; }");
+    writer.println();
+
+    writer.startLine("public int compare(" + r + " a, " + r + " b) {");
+    writer.indent();
+    writer.startLine("if (a == b) { return 0; }");
+    writer.startLine("Worklist w = new Worklist();");
+    writer.startLine("w.push(a, b);");
+    writer.startLine("return run(w);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Compare the pairs on the worklist until one differs or the worklist is empty. */");
+    writer.startLine("private static int run(Worklist w) {");
+    writer.indent();
+    writer.startLine("while (w.size() > 0) {");
+    writer.indent();
+    writer.startLine("java.lang.Object x = w.topFirst();");
+    writer.startLine("java.lang.Object y = w.topSecond();");
+    writer.startLine("w.pop();");
+    writer.startLine("if (x instanceof Seq) {");
+    writer.indent();
+    writer.startLine("Seq s = (Seq) x;");
+    writer.startLine("boolean xMore = s.xs.hasNext();");
+    writer.startLine("boolean yMore = s.ys.hasNext();");
+    writer.startLine("if (xMore != yMore) { return xMore ? 1 : -1; }");
+    writer.startLine("if (xMore) {");
+    writer.indent();
+    writer.startLine("java.lang.Object xElt = s.xs.next();");
+    writer.startLine("java.lang.Object yElt = s.ys.next();");
+    writer.startLine("w.push(s, s);");
+    if (hasValues) {
+      writer.startLine("if (s.eltType < 0) { w.push(xElt, yElt); }");
+      writer.startLine("else { w.push(new Resume(s.eltType, 0, xElt), yElt); }");
+    } else {
+      writer.startLine("w.push(xElt, yElt);");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else if (x instanceof Resume) {");
+    writer.indent();
+    writer.startLine("Resume resume = (Resume) x;");
+    if (hasValues) {
+      writer.startLine("int c = (resume.type < 0) ? compareNode((" + r + ") resume.value, (" + r + ") y, resume.step, w) :");
+      writer.print(" compareValue(resume.type, resume.step, resume.value, y, w);");
+    } else {
+      writer.startLine("int c = compareNode((" + r + ") resume.value, (" + r + ") y, resume.step, w);");
+    }
+    writer.startLine("if (c != 0) { return c; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else if (x != y) {");
+    writer.indent();
+    writer.startLine("if (x == null || y == null) { return (x == null) ? -1 : 1; }");
+    writer.startLine("int c = compareNode((" + r + ") x, (" + r + ") y, 0, w);");
+    writer.startLine("if (c != 0) { return c; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Compare two non-null nodes, starting with the given step: step 0 compares their kinds and");
+    writer.startLine(" * then their fields in declaration order.  When a field pushes subtree pairs onto the");
+    writer.startLine(" * worklist, the comparison of any later fields is pushed beneath them, to resume once");
+    writer.startLine(" * they are equal.");
+    writer.startLine(" */");
+    writer.startLine("private static int compareNode(" + r + " x, " + r + " y, int step, Worklist w) {");
+    writer.indent();
+    writer.startLine("int kind = x.kind();");
+    writer.startLine("if (step == 0) {");
+    writer.indent();
+    writer.startLine("int yKind = y.kind();");
+    writer.startLine("if (kind != yKind) { return (kind < yKind) ? -1 : 1; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int c;");
+    writer.startLine("switch (kind) {");
+    writer.indent();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        _tempCount = 0;
+        writer.startLine("case " + KindTagGenerator.kindConstant(ast, t) + ": {");
+        writer.indent();
+        List<TypeName> types = new ArrayList<TypeName>();
+        List<String> names = new ArrayList<String>();
+        List<String> xs = new ArrayList<String>();
+        List<String> ys = new ArrayList<String>();
+        for (Field f : t.allFields(ast)) {
+          if (!f.ignoreForEquals()) {
+            types.add(f.type());
+            names.add(f.name());
+            xs.add("xNode." + f.getGetterName() + "()");
+            ys.add("yNode." + f.getGetterName() + "()");
+          }
+        }
+        if (!types.isEmpty()) {
+          writer.startLine(t.name() + " xNode = (" + t.name() + ") x;");
+          writer.startLine(t.name() + " yNode = (" + t.name() + ") y;");
+        }
+        compareComponents(writer, root, types, names, xs, ys, "-1");
+        writer.startLine("break;");
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    writer.startLine("default: throw new java.lang.IllegalArgumentException(\"Unexpected kind \" + kind);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    if (hasValues) {
+      writer.startLine("/**");
+      writer.startLine(" * Compare two values that are not nodes, starting with the given step, as {@link #compareNode}");
+      writer.startLine(" * does for nodes.  The type is a case registered for sequence elements that hold subtrees,");
+      writer.startLine(" * for tuples that hold subtrees, or for the elements of unordered sets.");
+      writer.startLine(" */");
+      writer.startLine("private static int compareValue(int type, int step, java.lang.Object x, java.lang.Object y, Worklist w) {");
+      writer.indent();
+      writer.startLine("int c;");
+      writer.startLine("switch (type) {");
+      writer.indent();
+      // cases may register further types, so the list grows as it is traversed
+      for (int i = 0; i < _valueTypes.size(); i++) {
+        TypeName t = _valueTypes.get(i);
+        _tempCount = 0;
+        writer.startLine("case " + i + ": {");
+        writer.indent();
+        writer.startLine(t.name() + " xValue = (" + t.name() + ") x;");
+        writer.startLine(t.name() + " yValue = (" + t.name() + ") y;");
+        if (t instanceof TupleClassName) {
+          TupleClassName tuple = (TupleClassName) t;
+          writer.startLine("if (xValue == yValue) { return 0; }");
+          writer.startLine("if (xValue == null || yValue == null) { return (xValue == null) ? -1 : 1; }");
+          List<TypeName> types = new ArrayList<TypeName>();
+          List<String> names = new ArrayList<String>();
+          List<String> xs = new ArrayList<String>();
+          List<String> ys = new ArrayList<String>();
+          int j = 0;
+          for (TypeName eltT : tuple.elementTypes()) {
+            types.add(eltT);
+            names.add("" + (j+1));
+            xs.add(tuple.getter("xValue", j));
+            ys.add(tuple.getter("yValue", j));
+            j++;
+          }
+          compareComponents(writer, root, types, names, xs, ys, "" + i);
+        } else if (mayPush(root, t)) {
+          writer.startLine("int mark = w.size();");
+          compareVal(writer, root, t, "xValue", "yValue");
+          writer.startLine("w.reverseFrom(mark);");
+        } else {
+          compareVal(writer, root, t, "xValue", "yValue");
+        }
+        writer.startLine("break;");
+        writer.unindent();
+        writer.startLine("}");
+      }
+      writer.startLine("default: throw new java.lang.IllegalArgumentException(\"Unexpected type \" + type);");
+      writer.unindent();
+      writer.startLine("}");
+      writer.startLine("return 0;");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+
+    outputHelpers(writer, hasValues, hasSets);
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /**
+   * Output the comparison, in declaration order, of the components of a node or tuple
+   * ({@code xNode}/{@code yNode} or {@code xValue}/{@code yValue}, and {@code x}/{@code y} as
+   * objects).  The components are divided into steps: each step compares components directly
+   * up to one whose comparison may push subtrees onto the worklist, followed by any that
+   * only push subtrees.  A step with later steps to come first pushes a {@code Resume} of the
+   * given type for the next step, so that the rest is compared once the subtrees are equal.
+   */
+  private void compareComponents(TabPrintWriter writer, NodeType root, List<TypeName> types, List<String> names,
+                                 List<String> xs, List<String> ys, String resumeType) {
+    List<Integer> stepStarts = new ArrayList<Integer>();
+    int i = 0;
+    while (i < types.size()) {
+      stepStarts.add(i);
+      while (i < types.size() && !mayPush(root, types.get(i))) { i++; }
+      if (i < types.size()) { i++; }
+      while (i < types.size() && onlyPushes(root, types.get(i))) { i++; }
+    }
+    stepStarts.add(types.size());
+    int steps = stepStarts.size() - 1;
+    if (steps > 1) {
+      writer.startLine("switch (step) {");
+      writer.indent();
+    }
+    for (int step = 0; step < steps; step++) {
+      int start = stepStarts.get(step);
+      int end = stepStarts.get(step + 1);
+      boolean pushes = mayPush(root, types.get(end - 1));
+      if (steps > 1) {
+        writer.startLine("case " + step + ": {");
+        writer.indent();
+      }
+      for (int j = start; j < end; j++) {
+        TypeName t = types.get(j);
+        String x = "x_" + names.get(j);
+        String y = "y_" + names.get(j);
+        if (mayPush(root, t) && j == firstPush(root, types, start, end)) {
+          if (step < steps - 1) { writer.startLine("w.push(new Resume(" + resumeType + ", " + (step+1) + ", x), y);"); }
+          writer.startLine("int mark = w.size();");
+        }
+        writer.startLine(t.name() + " " + x + " = " + xs.get(j) + ";");
+        writer.startLine(t.name() + " " + y + " = " + ys.get(j) + ";");
+        compareVal(writer, root, t, x, y);
+      }
+      if (pushes) {
+        writer.startLine("w.reverseFrom(mark);");
+        if (step < steps - 1) { writer.startLine("return 0;"); }
+      }
+      if (steps > 1) {
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    if (steps > 1) {
+      writer.unindent();
+      writer.startLine("}");
+    }
+  }
+
+  /** The index of the first component in {@code [start, end)} whose comparison may push subtrees. */
+  private int firstPush(NodeType root, List<TypeName> types, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (mayPush(root, types.get(i))) { return i; }
+    }
+    return end;
+  }
+
+  /** Whether comparing values of type {@code t} may push pairs onto the worklist. */
+  private boolean mayPush(NodeType root, TypeName t) {
+    return !ChildrenGenerator.childTypes(ast, root, t).isEmpty();
+  }
+
+  /**
+   * Whether comparing values of type {@code t} only pushes a pair onto the worklist, without
+   * first comparing anything directly.
+   */
+  private boolean onlyPushes(NodeType root, TypeName t) {
+    return isLocalNode(root, t) || (t instanceof TupleClassName && mayPush(root, t));
+  }
+
+  private boolean isLocalNode(NodeType root, TypeName t) {
+    Option<NodeType> nodeType = ast.typeForName(t);
+    return nodeType.isSome() && ast.isDescendent(root, nodeType.unwrap());
+  }
+
+  /** Output statements comparing two values of the given type, returning if they differ. */
+  protected void compareVal(final TabPrintWriter writer, final NodeType root, TypeName type,
+                            final String x, final String y) {
+    type.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) {
+        Option<NodeType> nodeType = ast.typeForName(t);
+        if (nodeType.isSome() && ast.isDescendent(root, nodeType.unwrap())) {
+          writer.startLine("w.push(" + x + ", " + y + ");");
+        } else if (nodeType.isSome() && !ast.ancestorRoots(nodeType.unwrap()).isEmpty()) {
+          NodeType otherRoot = IterUtil.first(ast.ancestorRoots(nodeType.unwrap()));
+          writer.startLine("c = compareNull(" + x + ", " + y + ");");
+          writer.startLine("if (c == 0 && " + x + " != null) { c = " + comparatorName(otherRoot));
+          writer.print(".INSTANCE.compare(" + x + ", " + y + "); }");
+          writer.startLine("if (c != 0) { return c; }");
+        } else {
+          forGeneralClass(t);
+        }
+        return null;
+      }
+
+      public Void forPrimitive(PrimitiveName t) {
+        comparePrimitive(writer, t.name(), x, y);
+        return null;
+      }
+
+      public Void forString(ClassName t) {
+        writer.startLine("c = compareStrings(" + x + ", " + y + ");");
+        writer.startLine("if (c != 0) { return c; }");
+        return null;
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        comparePrimitives(t.name().substring(0, t.name().length() - 2), x, y);
+        return null;
+      }
+
+      /** Compare arrays {@code xs} and {@code ys} (expressions in terms of {@code x} and {@code y}). */
+      private void comparePrimitives(String eltT, String xs, String ys) {
+        String i = temp("i");
+        openNonNull();
+        if (!xs.equals(x)) {
+          String xa = temp("xs");
+          String ya = "ys" + _tempCount;
+          writer.startLine(eltT + "[] " + xa + " = " + xs + ";");
+          writer.startLine(eltT + "[] " + ya + " = " + ys + ";");
+          xs = xa;
+          ys = ya;
+        }
+        writer.startLine("int " + i + " = 0;");
+        writer.startLine("for (; " + i + " < " + xs + ".length && " + i + " < " + ys + ".length; " + i + "++) {");
+        writer.indent();
+        comparePrimitive(writer, eltT, xs + "[" + i + "]", ys + "[" + i + "]");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("if (" + xs + ".length != " + ys + ".length) { return (" + xs + ".length < ");
+        writer.print(ys + ".length) ? -1 : 1; }");
+        close();
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) {
+        compareSequence(t, "java.util.Arrays.asList(" + x + ").iterator()",
+                        "java.util.Arrays.asList(" + y + ").iterator()");
+        return null;
+      }
+
+      public Void forSequenceClass(SequenceClassName t) {
+        if (t instanceof PrimitiveSequenceClassName) {
+          comparePrimitives(t.elementType().name(), t.iterable(x), t.iterable(y));
+          return null;
+        }
+        if (isUnordered(t)) {
+          String order = isLocalNode(root, t.elementType()) ? "INSTANCE" : "new ValueOrder(" + valueType(t.elementType()) + ")";
+          compareSequence(t, "sorted(" + x + ", " + order + ")", "sorted(" + y + ", " + order + ")");
+        } else {
+          compareSequence(t, x + ".iterator()", y + ".iterator()");
+        }
+        return null;
+      }
+
+      private void compareSequence(SequenceName t, String xIter, String yIter) {
+        String eltT = t.elementType().name();
+        openNonNull();
+        if (isLocalNode(root, t.elementType()) || holdsSubtrees(root, t.elementType())) {
+          // compare element by element (including subtrees) before comparing lengths
+          String eltType = isLocalNode(root, t.elementType()) ? "-1" : ("" + valueType(t.elementType()));
+          String seq = temp("seq");
+          writer.startLine("Seq " + seq + " = new Seq(" + xIter + ", " + yIter + ", " + eltType + ");");
+          writer.startLine("w.push(" + seq + ", " + seq + ");");
+        } else {
+          String xi = temp("xIter");
+          String yi = "yIter" + _tempCount;
+          writer.startLine("java.util.Iterator<" + eltT + "> " + xi + " = " + xIter + ";");
+          writer.startLine("java.util.Iterator<" + eltT + "> " + yi + " = " + yIter + ";");
+          writer.startLine("while (" + xi + ".hasNext() && " + yi + ".hasNext()) {");
+          writer.indent();
+          String xe = temp("xElt");
+          String ye = "yElt" + _tempCount;
+          writer.startLine(eltT + " " + xe + " = " + xi + ".next();");
+          writer.startLine(eltT + " " + ye + " = " + yi + ".next();");
+          compareVal(writer, root, t.elementType(), xe, ye);
+          writer.unindent();
+          writer.startLine("}");
+          writer.startLine("if (" + xi + ".hasNext() != " + yi + ".hasNext()) { return ");
+          writer.print(xi + ".hasNext() ? 1 : -1; }");
+        }
+        close();
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        String eltT = t.elementType().name();
+        openNonNull();
+        String xEmpty = temp("xEmpty");
+        String yEmpty = "yEmpty" + _tempCount;
+        writer.startLine("boolean " + xEmpty + " = " + t.emptyTester(x) + ";");
+        writer.startLine("boolean " + yEmpty + " = " + t.emptyTester(y) + ";");
+        writer.startLine("if (" + xEmpty + " != " + yEmpty + ") { return " + xEmpty + " ? -1 : 1; }");
+        writer.startLine("if (!" + xEmpty + ") {");
+        writer.indent();
+        String xv = temp("xVal");
+        String yv = "yVal" + _tempCount;
+        writer.startLine(eltT + " " + xv + " = " + t.nonEmptyGetter(x) + ";");
+        writer.startLine(eltT + " " + yv + " = " + t.nonEmptyGetter(y) + ";");
+        compareVal(writer, root, t.elementType(), xv, yv);
+        writer.unindent();
+        writer.startLine("}");
+        close();
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        if (mayPush(root, t)) {
+          // compared by steps, so that its elements are compared in order
+          writer.startLine("w.push(new Resume(" + valueType(t) + ", 0, " + x + "), " + y + ");");
+          return null;
+        }
+        openNonNull();
+        int i = 0;
+        for (TypeName eltT : t.elementTypes()) {
+          String xv = temp("xVal");
+          String yv = "yVal" + _tempCount;
+          writer.startLine(eltT.name() + " " + xv + " = " + t.getter(x, i) + ";");
+          writer.startLine(eltT.name() + " " + yv + " = " + t.getter(y, i) + ";");
+          compareVal(writer, root, eltT, xv, yv);
+          i++;
+        }
+        close();
+        return null;
+      }
+
+      public Void forGeneralClass(ClassName t) {
+        writer.startLine("c = compareObjects(" + x + ", " + y + ");");
+        writer.startLine("if (c != 0) { return c; }");
+        return null;
+      }
+
+      /** Open a block that is only executed if x and y are distinct, non-null references. */
+      private void openNonNull() {
+        writer.startLine("if (" + x + " != " + y + ") {");
+        writer.indent();
+        writer.startLine("if (" + x + " == null || " + y + " == null) { return (" + x + " == null) ? -1 : 1; }");
+      }
+
+      private void close() {
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+    });
+  }
+
+  /** Whether values of type {@code t} hold subtrees of {@code root}'s hierarchy without being nodes. */
+  private boolean holdsSubtrees(NodeType root, TypeName t) {
+    Option<NodeType> nodeType = ast.typeForName(t);
+    boolean isNode = nodeType.isSome() && ast.isDescendent(root, nodeType.unwrap());
+    return !isNode && !ChildrenGenerator.childTypes(ast, root, t).isEmpty();
+  }
+
+  /** Whether comparing values of type {@code t} uses a case of {@code compareValue}. */
+  private boolean needsValues(NodeType root, TypeName t) {
+    if (t instanceof SequenceName) {
+      TypeName elt = ((SequenceName) t).elementType();
+      return holdsSubtrees(root, elt) || (isUnordered(t) && !isLocalNode(root, elt)) || needsValues(root, elt);
+    } else if (t instanceof OptionClassName) {
+      return needsValues(root, ((OptionClassName) t).elementType());
+    } else if (t instanceof TupleClassName) {
+      if (mayPush(root, t)) { return true; }
+      for (TypeName elt : ((TupleClassName) t).elementTypes()) {
+        if (needsValues(root, elt)) { return true; }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether {@code t} is a set without a defined iteration order: equal sets may iterate in
+   * different orders, so their elements are sorted before they are compared.
+   */
+  private static boolean isUnordered(TypeName t) {
+    if (!(t instanceof SequenceClassName) || t instanceof PrimitiveSequenceClassName) { return false; }
+    String name = t.name();
+    int typeArgs = name.indexOf('<');
+    if (typeArgs >= 0) { name = name.substring(0, typeArgs); }
+    return name.equals("Set") || name.equals("java.util.Set") ||
+      name.equals("HashSet") || name.equals("java.util.HashSet");
+  }
+
+  /** Whether values of type {@code t} may contain an unordered set. */
+  private static boolean containsUnordered(TypeName t) {
+    if (isUnordered(t)) { return true; }
+    else if (t instanceof SequenceName) { return containsUnordered(((SequenceName) t).elementType()); }
+    else if (t instanceof OptionClassName) { return containsUnordered(((OptionClassName) t).elementType()); }
+    else if (t instanceof TupleClassName) {
+      for (TypeName elt : ((TupleClassName) t).elementTypes()) {
+        if (containsUnordered(elt)) { return true; }
+      }
+    }
+    return false;
+  }
+
+  /** The {@code compareValue} case for the given type, registering it if necessary. */
+  private int valueType(TypeName t) {
+    for (int i = 0; i < _valueTypes.size(); i++) {
+      if (_valueTypes.get(i).name().equals(t.name())) { return i; }
+    }
+    _valueTypes.add(t);
+    return _valueTypes.size() - 1;
+  }
+
+  /** Produce a fresh temporary variable name with the given prefix. */
+  private String temp(String prefix) {
+    _tempCount++;
+    return prefix + _tempCount;
+  }
+
+  /** Output statements comparing two primitive values of the named type. */
+  protected void comparePrimitive(TabPrintWriter writer, String type, String x, String y) {
+    if (type.equals("boolean")) {
+      writer.startLine("if (" + x + " != " + y + ") { return " + x + " ? 1 : -1; }");
+    } else if (type.equals("float") || type.equals("double")) {
+      // consistent with equals: -0.0 is ordered before 0.0, and NaNs last
+      String boxed = type.equals("float") ? "Float" : "Double";
+      writer.startLine("c = java.lang." + boxed + ".compare(" + x + ", " + y + ");");
+      writer.startLine("if (c != 0) { return c; }");
+    } else {
+      writer.startLine("if (" + x + " != " + y + ") { return (" + x + " < " + y + ") ? -1 : 1; }");
+    }
+  }
+
+  protected void outputHelpers(TabPrintWriter writer, boolean hasValues, boolean hasSets) {
+    writer.startLine("private static int compareNull(java.lang.Object x, java.lang.Object y) {");
+    writer.indent();
+    writer.startLine("if (x == y || (x != null && y != null)) { return 0; }");
+    writer.startLine("return (x == null) ? -1 : 1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static int compareStrings(java.lang.String x, java.lang.String y) {");
+    writer.indent();
+    writer.startLine("if (x == y) { return 0; }");
+    writer.startLine("if (x == null || y == null) { return (x == null) ? -1 : 1; }");
+    writer.startLine("return x.compareTo(y);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Compare values of types that are not part of the AST.  Equal values are equivalent;");
+    writer.startLine(" * otherwise, values are ordered by class name, and values of the same class with");
+    writer.startLine(" * {@code compareTo}.");
+    writer.startLine(" * @throws IllegalArgumentException  If unequal values of the same class are not {@code Comparable}.");
+    writer.startLine(" */");
+    writer.startLine("private static int compareObjects(java.lang.Object x, java.lang.Object y) {");
+    writer.indent();
+    writer.startLine("if (x == y) { return 0; }");
+    writer.startLine("if (x == null || y == null) { return (x == null) ? -1 : 1; }");
+    writer.startLine("if (x.equals(y)) { return 0; }");
+    writer.startLine("int c = x.getClass().getName().compareTo(y.getClass().getName());");
+    writer.startLine("if (c != 0) { return c; }");
+    writer.startLine("if (!(x instanceof java.lang.Comparable)) {");
+    writer.indent();
+    writer.startLine("throw new java.lang.IllegalArgumentException(\"Cannot order values of \" + x.getClass().getName());");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return ((java.lang.Comparable) x).compareTo(y);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** A pair of iterators over sequences whose remaining elements are still to be compared. */");
+    writer.startLine("private static final class Seq {");
+    writer.indent();
+    writer.startLine("final java.util.Iterator<?> xs;");
+    writer.startLine("final java.util.Iterator<?> ys;");
+    writer.startLine("final int eltType; // -1 for nodes, otherwise a case of compareValue");
+    writer.startLine("Seq(java.util.Iterator<?> xs, java.util.Iterator<?> ys, int eltType) {");
+    writer.indent();
+    writer.startLine("this.xs = xs; this.ys = ys; this.eltType = eltType;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * The rest of a comparison, from the given step, of a node (type -1) or of a value by a case");
+    writer.startLine(" * of {@code compareValue}; paired on the worklist with the other node or value.");
+    writer.startLine(" */");
+    writer.startLine("private static final class Resume {");
+    writer.indent();
+    writer.startLine("final int type;");
+    writer.startLine("final int step;");
+    writer.startLine("final java.lang.Object value;");
+    writer.startLine("Resume(int type, int step, java.lang.Object value) { this.type = type; this.step = step; this.value = value; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    if (hasSets) {
+      writer.startLine("/** The elements of {@code xs} in the given order. */");
+      writer.startLine("private static <T> java.util.Iterator<T> sorted(java.util.Collection<T> xs, java.util.Comparator<? super T> order) {");
+      writer.indent();
+      writer.startLine("java.util.List<T> result = new java.util.ArrayList<T>(xs);");
+      writer.startLine("java.util.Collections.sort(result, order);");
+      writer.startLine("return result.iterator();");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+      if (hasValues) {
+        writer.startLine("/**");
+        writer.startLine(" * The order of a case of {@code compareValue}, used to sort the elements of a set.  Each");
+        writer.startLine(" * instance reuses one worklist, so it must not be shared between threads.");
+        writer.startLine(" */");
+        writer.startLine("private static final class ValueOrder implements java.util.Comparator<java.lang.Object> {");
+        writer.indent();
+        writer.startLine("private final int _type;");
+        writer.startLine("private final Worklist _work = new Worklist();");
+        writer.startLine("ValueOrder(int type) { _type = type; }");
+        writer.startLine("public int compare(java.lang.Object x, java.lang.Object y) {");
+        writer.indent();
+        writer.startLine("if (x == y) { return 0; }");
+        writer.startLine("int c = compareValue(_type, 0, x, y, _work);");
+        writer.startLine("if (c == 0) { c = run(_work); }");
+        writer.startLine("_work.clear();");
+        writer.startLine("return c;");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        writer.println();
+      }
+    }
+
+    writer.startLine("/** A stack of pairs of values to be compared, stored in a flat array. */");
+    writer.startLine("private static final class Worklist {");
+    writer.indent();
+    writer.startLine("private java.lang.Object[] _elts = new java.lang.Object[32];");
+    writer.startLine("private int _size = 0; // number of pairs");
+    writer.println();
+    writer.startLine("int size() { return _size; }");
+    writer.startLine("java.lang.Object topFirst() { return _elts[2*_size-2]; }");
+    writer.startLine("java.lang.Object topSecond() { return _elts[2*_size-1]; }");
+    writer.println();
+    writer.startLine("void pop() {");
+    writer.indent();
+    writer.startLine("_size--;");
+    writer.startLine("_elts[2*_size] = null;");
+    writer.startLine("_elts[2*_size+1] = null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("void clear() {");
+    writer.indent();
+    writer.startLine("java.util.Arrays.fill(_elts, 0, 2*_size, null);");
+    writer.startLine("_size = 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("void push(java.lang.Object x, java.lang.Object y) {");
+    writer.indent();
+    writer.startLine("if (2*_size == _elts.length) {");
+    writer.indent();
+    writer.startLine("_elts = java.util.Arrays.copyOf(_elts, _elts.length * 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_elts[2*_size] = x;");
+    writer.startLine("_elts[2*_size+1] = y;");
+    writer.startLine("_size++;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Reverse the order of the pairs pushed since the stack had the given size. */");
+    writer.startLine("void reverseFrom(int mark) {");
+    writer.indent();
+    writer.startLine("for (int i = mark, j = _size-1; i < j; i++, j--) {");
+    writer.indent();
+    writer.startLine("java.lang.Object x = _elts[2*i];");
+    writer.startLine("java.lang.Object y = _elts[2*i+1];");
+    writer.startLine("_elts[2*i] = _elts[2*j];");
+    writer.startLine("_elts[2*i+1] = _elts[2*j+1];");
+    writer.startLine("_elts[2*j] = x;");
+    writer.startLine("_elts[2*j+1] = y;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+}
@@ -43,6 +43,8 @@ import edu.rice.cs.astgen.Types.*;
 public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
 
   private Set<TypeName> _arraySeeds; // classes needed for array seeds
+  private Set<TypeName> _doneHelpers; // helpers already generated in an earlier shard	///+ <CR029/>
+  private Set<TypeName> _doneArraySeeds; // array seeds already generated in an earlier shard	///+ <CR029/>
 
   public DepthFirstVisitorGenerator(ASTModel ast) {
     super(ast);
@@ -85,21 +87,42 @@ public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
   @Override
   protected void generateVisitor(NodeType root) {
     String visitorName = root.name() + "DepthFirstVisitor";
-    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+///+ <CR029>
+    List<List<NodeType>> shards = shards(root);
+    _doneHelpers = new HashSet<TypeName>();
+    _doneArraySeeds = new HashSet<TypeName>();
+    for (int i = 0; i < shards.size(); i++) {
+      generateShard(root, visitorName, shards, i);
+    }
+  }
+
+  /**
+   * Generate the class handling shard {@code i}.  The last shard's class has the visitor's name and
+   * extends the others in a chain; defaultCase() and recur() are declared by the first.
+   */
+  private void generateShard(NodeType root, String visitorName, List<List<NodeType>> shards, int i) {
+    String shardName = shardName(visitorName, i, shards.size());
+    TabPrintWriter writer = options.createJavaSourceInOutDir(shardName);
 
     // Class header
-    writer.startLine("/** A parametric abstract implementation of a visitor over " + root.name());
-    writer.print(" that returns a value.");
-    writer.startLine(" ** This visitor implements the visitor interface with methods that ");
-    writer.startLine(" ** first visit children, and then call forCASEOnly(), passing in ");
-    writer.startLine(" ** the values of the visits of the children. (CASE is replaced by the case name.)");
-    writer.startLine(" ** By default, each of forCASEOnly delegates to a more general case; at the");
-    writer.startLine(" ** top of this delegation tree is defaultCase(), which (unless overridden)");
-    writer.startLine(" ** throws an exception.");
-    writer.startLine(" **/");
+    if (i < shards.size() - 1) {
+      writer.startLine("/** Part of {@link " + visitorName + "}, handling the cases for shard " + i + ". */");
+    } else {
+      writer.startLine("/** A parametric abstract implementation of a visitor over " + root.name());
+      writer.print(" that returns a value.");
+      writer.startLine(" ** This visitor implements the visitor interface with methods that ");
+      writer.startLine(" ** first visit children, and then call forCASEOnly(), passing in ");
+      writer.startLine(" ** the values of the visits of the children. (CASE is replaced by the case name.)");
+      writer.startLine(" ** By default, each of forCASEOnly delegates to a more general case; at the");
+      writer.startLine(" ** top of this delegation tree is defaultCase(), which (unless overridden)");
+      writer.startLine(" ** throws an exception.");
+      writer.startLine(" **/");
+    }
     writer.startLine("@SuppressWarnings(\"unused\")");
-    writer.startLine("public abstract class " + visitorName + "<RetType>");
-    if (options.usePLT) {
+    writer.startLine("public abstract class " + shardName + "<RetType>");
+    if (i > 0) {
+      writer.print(" extends " + shardName(visitorName, i - 1, shards.size()) + "<RetType>");
+    } else if (options.usePLT) {
       writer.print(" extends " + root.name() + "VisitorLambda<RetType>");
     } else {
       writer.print(" implements " + root.name() + "Visitor<RetType>");
@@ -107,12 +130,14 @@ public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
     writer.print(" {");
     writer.indent();
 
-    outputDefaultCaseMethod(writer, root);
-    writer.println();
+    if (i == 0) {
+      outputDefaultCaseMethod(writer, root);
+      writer.println();
+    }
 
     // Write out forCASEOnly methods
     writer.startLine("/* Methods to handle a node after recursion. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(i)) {
       outputForCaseOnly(t, writer, root);
     }
     writer.println();
@@ -120,26 +145,32 @@ public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
 
     // Write implementation of visit methods
     writer.startLine("/** Methods to recur on each child. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(i)) {
       if (!t.isAbstract()) {
         outputVisitMethod(t, writer, root);
       }
     }
 
-    writer.println();
-    outputRecurMethod(writer, root, "RetType");
+    if (i == 0) {
+      writer.println();
+      outputRecurMethod(writer, root, "RetType");
+    }
 
-    // Output helpers, if necessary
+    // Output helpers, if necessary (and not inherited from an earlier shard)
     for (TypeName t : helpers()) {
-      writer.println();
-      generateHelper(t, writer, root);
+      if (_doneHelpers.add(t)) {
+        writer.println();
+        generateHelper(t, writer, root);
+      }
     }
     clearHelpers();
 
-    // output array seeds, if necessary
+    // output array seeds, if necessary (and not inherited from an earlier shard)
     for (TypeName t : _arraySeeds) {
-      writer.println();
-      generateArraySeed(t, writer);
+      if (_doneArraySeeds.add(t)) {
+        writer.println();
+        generateArraySeed(t, writer);
+      }
     }
     clearArraySeeds();
 
@@ -148,6 +179,7 @@ public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
     writer.println();
     writer.close();
   }
+///+ </CR029>
 
   protected void outputVisitMethod(NodeType t, TabPrintWriter writer, NodeType root) {
     outputForCaseHeader(t, writer, "RetType", "");
@@ -265,7 +297,7 @@ public class DepthFirstVisitorGenerator extends RecursiveVisitorGenerator {
   protected void generateArraySeed(TypeName t, TabPrintWriter writer) {
     if (t instanceof ReferenceArrayName) {
       TypeName eltT = ((ReferenceArrayName) t).elementType();
-      writer.startLine("private final java.lang.Class<?> " + arraySeedExpression(t, false) + " = "
+      writer.startLine("protected final java.lang.Class<?> " + arraySeedExpression(t, false) + " = "
               + "java.lang.reflect.Array.newInstance(" + arraySeedExpression(eltT, false)
               + ", 0).getClass();");
     } else {
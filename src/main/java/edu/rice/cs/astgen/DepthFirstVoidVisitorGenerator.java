@@ -33,12 +33,16 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  *END_COPYRIGHT_BLOCK*/
 package edu.rice.cs.astgen;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import edu.rice.cs.plt.tuple.Option;
 import edu.rice.cs.astgen.Types.*;
 
 public class DepthFirstVoidVisitorGenerator extends RecursiveVisitorGenerator {
 
+  private Set<TypeName> _doneHelpers; // helpers already generated in an earlier shard	///+ <CR029/>
+
   public DepthFirstVoidVisitorGenerator(ASTModel ast) {
     super(ast);
   }
@@ -63,23 +67,44 @@ public class DepthFirstVoidVisitorGenerator extends RecursiveVisitorGenerator {
   @Override
   protected void generateVisitor(NodeType root) {
     String visitorName = root.name() + "DepthFirstVisitor_void";
-    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+///+ <CR029>
+    List<List<NodeType>> shards = shards(root);
+    _doneHelpers = new HashSet<TypeName>();
+    for (int i = 0; i < shards.size(); i++) {
+      generateShard(root, visitorName, shards, i);
+    }
+  }
+
+  /**
+   * Generate the class handling shard {@code i}.  The last shard's class has the visitor's name and
+   * extends the others in a chain; the default cases and recur() are declared by the first.
+   */
+  private void generateShard(NodeType root, String visitorName, List<List<NodeType>> shards, int i) {
+    String shardName = shardName(visitorName, i, shards.size());
+    TabPrintWriter writer = options.createJavaSourceInOutDir(shardName);
+    boolean last = (i == shards.size() - 1);
 
     // Class header
-    writer.startLine("/** An abstract implementation of a visitor over " + root.name());
-    writer.print(" that does not return a value.");
-    writer.startLine(" ** This visitor implements the visitor interface with methods that ");
-    writer.startLine(" ** first call forCASEDoFirst(), second visit the children, and finally ");
-    writer.startLine(" ** call forCASEOnly().  (CASE is replaced by the case name.)");
-    writer.startLine(" ** By default, each of forCASEDoFirst and forCASEOnly delegates");
-    writer.startLine(" ** to a more general case.  At the top of this delegation tree are");
-    writer.startLine(" ** defaultDoFirst() and defaultCase(), respectively, which (unless");
-    writer.startLine(" ** overridden) are no-ops.");
-    writer.startLine(" **/");
+    if (!last) {
+      writer.startLine("/** Part of {@link " + visitorName + "}, handling the cases for shard " + i + ". */");
+    } else {
+      writer.startLine("/** An abstract implementation of a visitor over " + root.name());
+      writer.print(" that does not return a value.");
+      writer.startLine(" ** This visitor implements the visitor interface with methods that ");
+      writer.startLine(" ** first call forCASEDoFirst(), second visit the children, and finally ");
+      writer.startLine(" ** call forCASEOnly().  (CASE is replaced by the case name.)");
+      writer.startLine(" ** By default, each of forCASEDoFirst and forCASEOnly delegates");
+      writer.startLine(" ** to a more general case.  At the top of this delegation tree are");
+      writer.startLine(" ** defaultDoFirst() and defaultCase(), respectively, which (unless");
+      writer.startLine(" ** overridden) are no-ops.");
+      writer.startLine(" **/");
+    }
 
     writer.startLine("@SuppressWarnings(\"unused\")");
-    writer.startLine("public class " + visitorName);
-    if (options.usePLT) {
+    writer.startLine((last ? "public class " : "public abstract class ") + shardName);
+    if (i > 0) {
+      writer.print(" extends " + shardName(visitorName, i - 1, shards.size()));
+    } else if (options.usePLT) {
       writer.print(" extends " + root.name() + "VisitorRunnable1");
     } else {
       writer.print(" implements " + root.name() + "Visitor_void");
@@ -87,41 +112,47 @@ public class DepthFirstVoidVisitorGenerator extends RecursiveVisitorGenerator {
     writer.print(" {");
     writer.indent();
 
-    outputDefaultCaseVoidMethod(writer, root);
-    writer.println();
+    if (i == 0) {
+      outputDefaultCaseVoidMethod(writer, root);
+      writer.println();
 
-    writer.startLine("/**");
-    writer.startLine(" * This method is run for all DoFirst cases that are not handled elsewhere.");
-    writer.startLine(" * By default, it is a no-op; subclasses may override this behavior.");
-    writer.startLine("**/");
-    writer.startLine("public void defaultDoFirst(" + root.name() + " that) {");
-    writer.print("}");
-    writer.println();
+      writer.startLine("/**");
+      writer.startLine(" * This method is run for all DoFirst cases that are not handled elsewhere.");
+      writer.startLine(" * By default, it is a no-op; subclasses may override this behavior.");
+      writer.startLine("**/");
+      writer.startLine("public void defaultDoFirst(" + root.name() + " that) {");
+      writer.print("}");
+      writer.println();
+    }
 
     writer.startLine("/* Methods to handle a node before recursion. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(i)) {
       outputDelegatingForCase(t, writer, root, "void", "DoFirst", "defaultDoFirst");
     }
 
     writer.startLine("/* Methods to handle a node after recursion. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(i)) {
       outputDelegatingForCase(t, writer, root, "void", "Only", "defaultCase");
     }
 
     writer.startLine("/* Methods to recur on each child. */");
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : shards.get(i)) {
       if (!t.isAbstract()) {
         outputVisitMethod(t, writer, root);
       }
     }
 
-    writer.println();
-    outputRecurMethod(writer, root, "void");
+    if (i == 0) {
+      writer.println();
+      outputRecurMethod(writer, root, "void");
+    }
 
-    // Output helpers
+    // Output helpers (unless inherited from an earlier shard)
     for (TypeName t : helpers()) {
-      writer.println();
-      generateHelper(t, writer, root);
+      if (_doneHelpers.add(t)) {
+        writer.println();
+        generateHelper(t, writer, root);
+      }
     }
     clearHelpers();
 
@@ -130,6 +161,7 @@ public class DepthFirstVoidVisitorGenerator extends RecursiveVisitorGenerator {
     writer.println();
     writer.close();
   }
+///+ </CR029>
 
   protected void outputVisitMethod(NodeType t, TabPrintWriter writer, NodeType root) {
     outputForCaseHeader(t, writer, "void", "");
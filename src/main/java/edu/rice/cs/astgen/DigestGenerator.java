@@ -0,0 +1,350 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates cached SHA-256 subtree digests.  A node's digest is computed (lazily, and only
+ * once) from its class name, the encoding of each field, and the digests of its children; after
+ * an update that shares unchanged subtrees, only the digests of new nodes must be computed.
+ * The encoding does not depend on the JVM or on identity hash codes, so digests can key a
+ * persistent cache.  Like {@code hashCode}, digests ignore fields marked {@code ignoreForEquals}.
+ */
+public class DigestGenerator extends CodeGenerator {
+
+  private final String digestClassName;
+  private int _tempCount;
+
+  public DigestGenerator(ASTModel ast) {
+    super(ast);
+    if (ast.topTypes().size() == 1) {
+      digestClassName = IterUtil.first(ast.topTypes()).name() + "Digest";
+    } else {
+      digestClassName = "TreeNodeDigest";
+    }
+  }
+
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (ast.isTop(i)) {
+      writer.startLine("/** A SHA-256 digest of this subtree's content, computed once and cached. */");
+      writer.startLine("public byte[] digest();");
+      writer.startLine("/** Add this subtree's (cached) digest to a digest under construction. */");
+      writer.startLine("public void digestInto(" + digestClassName + " d);");
+      writer.startLine("public byte[] generateDigest();");
+    }
+  }
+
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    if (ast.isTopClass(c)) {
+      writer.startLine("private transient byte[] _digest = null;");
+      writer.println();
+      writer.startLine("/** A SHA-256 digest of this subtree's content, computed once and cached. */");
+      writer.startLine("public final byte[] digest() {");
+      writer.indent();
+      writer.startLine("if (_digest == null) { _digest = generateDigest(); }");
+      writer.startLine("return _digest.clone();");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+      writer.startLine("/** Add this subtree's (cached) digest to a digest under construction. */");
+      writer.startLine("public final void digestInto(" + digestClassName + " d) {");
+      writer.indent();
+      writer.startLine("if (_digest == null) { _digest = generateDigest(); }");
+      writer.startLine("d.putBytes(_digest);");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+    if (c.isAbstract()) {
+      writer.startLine("public abstract byte[] generateDigest();");
+    } else {
+      _tempCount = 0;
+      writer.startLine("public byte[] generateDigest() {");
+      writer.indent();
+      writer.startLine(digestClassName + " d = new " + digestClassName + "(\"" + c.name() + "\");");
+      for (Field f : c.allFields(ast)) {
+        if (!f.ignoreForEquals()) {
+          writer.startLine(f.type().name() + " temp_" + f.name() + " = " + f.getGetterName() + "();");
+          digestForVal(writer, f.type(), "temp_" + f.name());
+        }
+      }
+      writer.startLine("return d.finish();");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+  }
+
+  protected void digestForVal(final TabPrintWriter writer, TypeName type, final String name) {
+    type.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) {
+        writer.startLine("if (" + name + " == null) { d.putNull(); } else { " + name + ".digestInto(d); }");
+        return null;
+      }
+
+      public Void forPrimitive(PrimitiveName t) {
+        writer.startLine(putPrimitive(t.name(), name));
+        return null;
+      }
+
+      public Void forString(ClassName t) {
+        writer.startLine("d.putString(" + name + ");");
+        return null;
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        String eltT = t.name().substring(0, t.name().length() - 2);
+        String i = temp("i");
+        openNonNull();
+        writer.startLine("d.putInt(" + name + ".length);");
+        writer.startLine("for (int " + i + " = 0; " + i + " < " + name + ".length; " + i + "++) {");
+        writer.indent();
+        writer.startLine(putPrimitive(eltT, name + "[" + i + "]"));
+        writer.unindent();
+        writer.startLine("}");
+        close();
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) {
+        iterate(t);
+        return null;
+      }
+
+      public Void forSequenceClass(SequenceClassName t) {
+        iterate(t);
+        return null;
+      }
+
+      private void iterate(SequenceName t) {
+        String elt = temp("elt");
+        openNonNull();
+        writer.startLine("for (" + t.elementType().name() + " " + elt + " : " + t.iterable(name) + ") {");
+        writer.indent();
+        writer.startLine("d.putBoolean(true);");
+        digestForVal(writer, t.elementType(), elt);
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("d.putBoolean(false);");
+        close();
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        openNonNull();
+        writer.startLine("if (" + t.emptyTester(name) + ") { d.putBoolean(false); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("d.putBoolean(true);");
+        String val = temp("val");
+        writer.startLine(t.elementType().name() + " " + val + " = " + t.nonEmptyGetter(name) + ";");
+        digestForVal(writer, t.elementType(), val);
+        writer.unindent();
+        writer.startLine("}");
+        close();
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        openNonNull();
+        int i = 0;
+        for (TypeName eltT : t.elementTypes()) {
+          String val = temp("val");
+          writer.startLine(eltT.name() + " " + val + " = " + t.getter(name, i) + ";");
+          digestForVal(writer, eltT, val);
+          i++;
+        }
+        close();
+        return null;
+      }
+
+      public Void forGeneralClass(ClassName t) {
+        writer.startLine("d.putObject(" + name + ");");
+        return null;
+      }
+
+      /** Open a block encoding a non-null value, preceded by a marker distinguishing null. */
+      private void openNonNull() {
+        writer.startLine("if (" + name + " == null) { d.putNull(); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("d.putNonNull();");
+      }
+
+      private void close() {
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+    });
+  }
+
+  private String temp(String prefix) {
+    _tempCount++;
+    return prefix + _tempCount;
+  }
+
+  private static String putPrimitive(String type, String value) {
+    if (type.equals("boolean")) { return "d.putBoolean(" + value + ");"; }
+    else if (type.equals("char")) { return "d.putChar(" + value + ");"; }
+    else if (type.equals("long")) { return "d.putLong(" + value + ");"; }
+    else if (type.equals("float")) { return "d.putInt(java.lang.Float.floatToIntBits(" + value + "));"; }
+    else if (type.equals("double")) { return "d.putLong(java.lang.Double.doubleToLongBits(" + value + "));"; }
+    else { return "d.putInt(" + value + ");"; }
+  }
+
+  public void generateAdditionalCode() {
+    TabPrintWriter writer = options.createJavaSourceInOutDir(digestClassName);
+    writer.startLine("/**");
+    writer.startLine(" * Builds a SHA-256 digest of a node from a stable, unambiguous encoding of its class name");
+    writer.startLine(" * and field values.  Values are written big-endian; strings are length-prefixed UTF-8;");
+    writer.startLine(" * nullable values are preceded by a marker byte.  Values of types unknown to the AST are");
+    writer.startLine(" * encoded by class name and {@code toString()}, so they should have a stable string form.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + digestClassName + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** The number of bytes in a digest. */");
+    writer.startLine("public static final int LENGTH = 32;");
+    writer.println();
+    writer.startLine("private final java.security.MessageDigest _md;");
+    writer.startLine("private final byte[] _buffer = new byte[8];");
+    writer.println();
+    writer.startLine("/** Start a digest of a node of the named class. */");
+    writer.startLine("public " + digestClassName + "(java.lang.String className) {");
+    writer.indent();
+    writer.startLine("try { _md = java.security.MessageDigest.getInstance(\"SHA-256\"); }");
+    writer.startLine("catch (java.security.NoSuchAlgorithmException e) {");
+    writer.indent();
+    writer.startLine("// every Java platform is required to support SHA-256");
+    writer.startLine("throw new java.lang.IllegalStateException(e);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("putString(className);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public void putNull() { _md.update((byte) 0); }");
+    writer.println();
+    writer.startLine("public void putNonNull() { _md.update((byte) 1); }");
+    writer.println();
+    writer.startLine("public void putBoolean(boolean b) { _md.update(b ? (byte) 1 : (byte) 0); }");
+    writer.println();
+    writer.startLine("public void putChar(char c) {");
+    writer.indent();
+    writer.startLine("_buffer[0] = (byte) (c >>> 8);");
+    writer.startLine("_buffer[1] = (byte) c;");
+    writer.startLine("_md.update(_buffer, 0, 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public void putInt(int i) {");
+    writer.indent();
+    writer.startLine("for (int k = 0; k < 4; k++) { _buffer[k] = (byte) (i >>> (24 - 8*k)); }");
+    writer.startLine("_md.update(_buffer, 0, 4);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public void putLong(long l) {");
+    writer.indent();
+    writer.startLine("for (int k = 0; k < 8; k++) { _buffer[k] = (byte) (l >>> (56 - 8*k)); }");
+    writer.startLine("_md.update(_buffer, 0, 8);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Add a byte array, such as a child's digest, without a length prefix. */");
+    writer.startLine("public void putBytes(byte[] bytes) { _md.update(bytes); }");
+    writer.println();
+    writer.startLine("public void putString(java.lang.String s) {");
+    writer.indent();
+    writer.startLine("if (s == null) { putNull(); }");
+    writer.startLine("else {");
+    writer.indent();
+    writer.startLine("putNonNull();");
+    writer.startLine("byte[] bytes;");
+    writer.startLine("try { bytes = s.getBytes(\"UTF-8\"); }");
+    writer.startLine("catch (java.io.UnsupportedEncodingException e) { throw new java.lang.IllegalStateException(e); }");
+    writer.startLine("putInt(bytes.length);");
+    writer.startLine("_md.update(bytes);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Add a value of a type unknown to the AST, encoded by its class name and string form. */");
+    writer.startLine("public void putObject(java.lang.Object o) {");
+    writer.indent();
+    writer.startLine("if (o == null) { putNull(); }");
+    writer.startLine("else {");
+    writer.indent();
+    writer.startLine("putNonNull();");
+    writer.startLine("putString(o.getClass().getName());");
+    writer.startLine("putString(o.toString());");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Complete the digest.  This object may not be used afterwards. */");
+    writer.startLine("public byte[] finish() { return _md.digest(); }");
+    writer.println();
+    writer.startLine("/** Convert a digest to a lower-case hexadecimal string. */");
+    writer.startLine("public static java.lang.String toHex(byte[] digest) {");
+    writer.indent();
+    writer.startLine("java.lang.StringBuilder result = new java.lang.StringBuilder(digest.length * 2);");
+    writer.startLine("for (byte b : digest) {");
+    writer.indent();
+    writer.startLine("result.append(java.lang.Character.forDigit((b >> 4) & 0xf, 16));");
+    writer.startLine("result.append(java.lang.Character.forDigit(b & 0xf, 16));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return result.toString();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
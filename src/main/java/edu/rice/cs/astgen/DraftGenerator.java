@@ -0,0 +1,596 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.collect.CollectUtil;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates a mutable "draft" class mirroring each node type, with {@code toDraft()} methods
+ * on nodes and {@code freeze()} methods on drafts.  A draft of type {@code T} is named
+ * {@code TDraft}; drafts of abstract types are abstract, and the draft hierarchy follows the
+ * parent relation of node types.  Children of a draft are themselves drafted lazily, on first
+ * access, so creating a draft is cheap and only the parts of a tree that are visited are
+ * copied.  Freezing reuses each original node whose fields are unchanged.  Drafts are generated
+ * for the descendants of roots that do not descend from another root.
+ */
+public class DraftGenerator extends VisitorGenerator {
+
+  public DraftGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  /** The name of the draft class for {@code t}. */
+  public static String draftClassName(NodeType t) {
+    return t.name() + "Draft";
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  /** The outermost root that {@code t} descends from, or {@code null}. */
+  private NodeType draftRoot(NodeType t) {
+    for (NodeType r : ast.ancestorRoots(t)) {
+      if (isOutermost(r)) { return r; }
+    }
+    return null;
+  }
+
+  private boolean isOutermost(NodeType r) {
+    for (NodeType other : ast.ancestorRoots(r)) {
+      if (!other.equals(r)) { return false; }
+    }
+    return true;
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (i.equals(draftRoot(i))) {
+      writer.startLine("/** A mutable draft of this node; see {@link " + draftClassName(i) + "}. */");
+      writer.startLine("public " + draftClassName(i) + " toDraft();");
+      writer.println();
+    }
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    if (draftRoot(c) == null) { return; }
+    if (c.isAbstract()) {
+      writer.startLine("/** A mutable draft of this node; see {@link " + draftClassName(c) + "}. */");
+      writer.startLine("public abstract " + draftClassName(c) + " toDraft();");
+    } else {
+      writer.startLine("/** A mutable draft of this node; see {@link " + draftClassName(c) + "}. */");
+      writer.startLine("public " + draftClassName(c) + " toDraft() { return new " + draftClassName(c) + "(this); }");
+    }
+    writer.println();
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    if (!isOutermost(root)) { return; }
+    for (NodeType t : ast.descendents(root)) {
+      if (t.isAbstract()) { generateAbstractDraft(t, root); }
+      else { generateConcreteDraft(t, root); }
+    }
+  }
+
+  /** The draft of {@code t}'s parent, or {@code null} for the root. */
+  private String draftSuperclass(NodeType t, NodeType root) {
+    if (t.equals(root)) { return null; }
+    Option<NodeType> parent = ast.parent(t);
+    return parent.isSome() ? draftClassName(parent.unwrap()) : null;
+  }
+
+  private void generateAbstractDraft(NodeType t, NodeType root) {
+    String className = draftClassName(t);
+    String sup = draftSuperclass(t, root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+    writer.startLine("/**");
+    if (sup == null) {
+      writer.startLine(" * A mutable draft of a " + t.name() + " tree.  Drafts are created with {@code toDraft()}");
+      writer.startLine(" * and can be modified in place, any number of times, before being converted back to");
+      writer.startLine(" * nodes with {@link #freeze}.  Children are drafted when first accessed; freezing");
+      writer.startLine(" * reuses every original node whose fields have not changed, so a sequence of rewrites");
+      writer.startLine(" * on a draft allocates only the nodes that differ in the result.");
+    } else {
+      writer.startLine(" * A mutable draft of a " + t.name() + ".");
+    }
+    writer.startLine(" */");
+    writer.startLine("public abstract class " + className + (sup == null ? "" : " extends " + sup) + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** Produce an immutable node with the current contents of this draft. */");
+    writer.startLine("public abstract " + t.name() + " freeze();");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * The node this draft was created from or was last frozen to, or {@code null} if");
+    writer.startLine(" * it was constructed directly and has not been frozen.");
+    writer.startLine(" */");
+    writer.startLine("public abstract " + t.name() + " original();");
+    writer.println();
+    if (sup == null) {
+      generateFreezeTree(writer, t);
+      writer.startLine("/** Push this draft's loaded, non-null child drafts onto {@code stack}. */");
+      writer.startLine("protected abstract void pushLoadedChildren(java.util.ArrayList<" + className + "> stack);");
+      writer.println();
+      writer.startLine("/** Freeze this draft alone, assuming its loaded children have already been frozen. */");
+      writer.startLine("protected abstract void freezeShallow();");
+      writer.println();
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** The kinds of fields of a draft. */
+  private static enum FieldKind { NODE, SEQUENCE, OPTION, OTHER }
+
+  private FieldKind fieldKind(TypeName t, NodeType root) {
+    final FieldKind[] result = { FieldKind.OTHER };
+    t.accept(new ChildFieldVisitor(root) {
+      @Override protected void handleNode(ClassName t) { result[0] = FieldKind.NODE; }
+      @Override protected void handleSequence(SequenceName t) {
+        if (isChild(t.elementType())) { result[0] = FieldKind.SEQUENCE; }
+      }
+      @Override protected void handleOption(OptionClassName t) { result[0] = FieldKind.OPTION; }
+    });
+    return result[0];
+  }
+
+  /** The draft type holding a child of (node) type {@code t}. */
+  private String draftTypeFor(TypeName t, NodeType root) {
+    NodeType nodeType = ast.typeForName(t).unwrap();
+    if (nodeType instanceof NodeInterface && !nodeType.equals(root)) {
+      // classes may implement an interface without it being their parent, so its draft
+      // is not a supertype of theirs
+      return draftClassName(root);
+    } else {
+      return draftClassName(nodeType);
+    }
+  }
+
+  /**
+   * An expression converting {@code node} to a draft; {@code node} may be null.  The declared
+   * result of {@code toDraft()} is already the draft type of the node's static type.
+   */
+  private String toDraftExpr(String node) {
+    return "(" + node + " == null) ? null : " + node + ".toDraft()";
+  }
+
+  /**
+   * An expression for the node that {@code draft}, holding a child of type {@code t}, was frozen
+   * to; {@code draft} may be null.  Children are frozen before their parents by {@code freezeTree()}.
+   */
+  private String frozenExpr(TypeName t, String draft, NodeType root) {
+    boolean narrows = draftTypeFor(t, root).equals(draftClassName(root)) && !t.name().equals(root.name());
+    String cast = narrows ? "(" + t.name() + ") " : "";
+    return "(" + draft + " == null) ? null : " + cast + draft + ".original()";
+  }
+
+  /**
+   * Generate {@code freezeTree()} in the draft of {@code root}: the loaded drafts beneath a draft
+   * are listed in preorder with an explicit stack, then frozen in reverse, so that each is frozen
+   * after its children and deep trees do not overflow the Java stack.
+   */
+  private void generateFreezeTree(TabPrintWriter writer, NodeType root) {
+    String rootDraft = draftClassName(root);
+    writer.startLine("/** Freeze every loaded draft beneath this one, children before parents. */");
+    writer.startLine("protected final void freezeTree() {");
+    writer.indent();
+    writer.startLine("java.util.ArrayList<" + rootDraft + "> order = new java.util.ArrayList<" + rootDraft + ">();");
+    writer.startLine("java.util.ArrayList<" + rootDraft + "> stack = new java.util.ArrayList<" + rootDraft + ">();");
+    writer.startLine("stack.add(this);");
+    writer.startLine("while (!stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine(rootDraft + " d = stack.remove(stack.size() - 1);");
+    writer.startLine("order.add(d);");
+    writer.startLine("d.pushLoadedChildren(stack);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("for (int i = order.size() - 1; i >= 0; i--) { order.get(i).freezeShallow(); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  private void generateConcreteDraft(NodeType t, NodeType root) {
+    String n = t.name();
+    String className = draftClassName(t);
+    String sup = draftSuperclass(t, root);
+    List<Field> fields = CollectUtil.makeArrayList(t.allFields(ast));
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * A mutable draft of a " + n + ".  Children are drafted when first accessed.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + (sup == null ? "" : " extends " + sup) + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + n + " _original;");
+    for (Field f : fields) {
+      FieldKind kind = fieldKind(f.type(), root);
+      switch (kind) {
+        case NODE: case OPTION:
+          writer.startLine("private " + draftTypeFor(elementOf(f.type(), kind), root) + " _" + f.name() + ";");
+          writer.startLine("private boolean _" + f.name() + "Loaded;");
+          break;
+        case SEQUENCE:
+          writer.startLine("private java.util.List<" + draftTypeFor(elementOf(f.type(), kind), root) + "> _" + f.name() + ";");
+          writer.startLine("private boolean _" + f.name() + "Loaded;");
+          break;
+        default:
+          writer.startLine("private " + f.type().name() + " _" + f.name() + ";");
+      }
+    }
+    writer.println();
+
+    writer.startLine("/** Create a draft of {@code original}; its children are drafted when first accessed. */");
+    writer.startLine("public " + className + "(" + n + " original) {");
+    writer.indent();
+    writer.startLine("_original = original;");
+    for (Field f : fields) {
+      if (fieldKind(f.type(), root) == FieldKind.OTHER) {
+        writer.startLine("_" + f.name() + " = original." + f.getGetterName() + "();");
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    if (!fields.isEmpty()) {
+      writer.startLine("/** Create a draft of a new " + n + ". */");
+      writer.startLine("public " + className + "(");
+      boolean first = true;
+      for (Field f : fields) {
+        if (!first) { writer.print(", "); }
+        first = false;
+        writer.print(draftFieldType(f, root) + " in_" + f.name());
+      }
+      writer.print(") {");
+      writer.indent();
+      writer.startLine("_original = null;");
+      for (Field f : fields) {
+        FieldKind kind = fieldKind(f.type(), root);
+        if (kind == FieldKind.SEQUENCE) {
+          String eltDraft = draftTypeFor(elementOf(f.type(), kind), root);
+          writer.startLine("_" + f.name() + " = (in_" + f.name() + " == null) ? null : new java.util.ArrayList<"
+                           + eltDraft + ">(in_" + f.name() + ");");
+        } else {
+          writer.startLine("_" + f.name() + " = in_" + f.name() + ";");
+        }
+        if (kind != FieldKind.OTHER) { writer.startLine("_" + f.name() + "Loaded = true;"); }
+      }
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+
+    writer.startLine("public " + n + " original() { return _original; }");
+    writer.println();
+
+    for (Field f : fields) {
+      generateAccessors(writer, f, root);
+    }
+
+    generateFreeze(writer, t, fields, root, sup == null);
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** The element type of a node, sequence or option child field type. */
+  private TypeName elementOf(TypeName t, FieldKind kind) {
+    switch (kind) {
+      case SEQUENCE: return ((SequenceName) t).elementType();
+      case OPTION: return ((OptionClassName) t).elementType();
+      default: return t;
+    }
+  }
+
+  private String draftFieldType(Field f, NodeType root) {
+    FieldKind kind = fieldKind(f.type(), root);
+    switch (kind) {
+      case NODE: case OPTION: return draftTypeFor(elementOf(f.type(), kind), root);
+      case SEQUENCE: return "java.util.List<" + draftTypeFor(elementOf(f.type(), kind), root) + ">";
+      default: return f.type().name();
+    }
+  }
+
+  private void generateAccessors(TabPrintWriter writer, Field f, NodeType root) {
+    FieldKind kind = fieldKind(f.type(), root);
+    String draftType = draftFieldType(f, root);
+    String field = "_" + f.name();
+    String loaded = field + "Loaded";
+    String getOriginal = "_original." + f.getGetterName() + "()";
+
+    switch (kind) {
+      case NODE:
+        writer.startLine("public " + draftType + " " + f.getGetterName() + "() {");
+        writer.indent();
+        writer.startLine("if (!" + loaded + ") {");
+        writer.indent();
+        writer.startLine(f.type().name() + " orig = " + getOriginal + ";");
+        writer.startLine(field + " = " + toDraftExpr("orig") + ";");
+        writer.startLine(loaded + " = true;");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return " + field + ";");
+        writer.unindent();
+        writer.startLine("}");
+        break;
+      case OPTION: {
+        OptionClassName opt = (OptionClassName) f.type();
+        writer.startLine("/** The draft of the optional child, or {@code null} if it is absent. */");
+        writer.startLine("public " + draftType + " " + f.getGetterName() + "() {");
+        writer.indent();
+        writer.startLine("if (!" + loaded + ") {");
+        writer.indent();
+        writer.startLine(f.type().name() + " orig = " + getOriginal + ";");
+        writer.startLine("if (orig == null || " + opt.emptyTester("orig") + ") { " + field + " = null; }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine(opt.elementType().name() + " elt = " + opt.nonEmptyGetter("orig") + ";");
+        writer.startLine(field + " = " + toDraftExpr("elt") + ";");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine(loaded + " = true;");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return " + field + ";");
+        writer.unindent();
+        writer.startLine("}");
+        break;
+      }
+      case SEQUENCE: {
+        SequenceName seq = (SequenceName) f.type();
+        TypeName eltT = seq.elementType();
+        String eltDraft = draftTypeFor(eltT, root);
+        writer.startLine("/** The drafts of the elements, as a mutable list. */");
+        writer.startLine("public " + draftType + " " + f.getGetterName() + "() {");
+        writer.indent();
+        writer.startLine("if (!" + loaded + ") {");
+        writer.indent();
+        writer.startLine(f.type().name() + " orig = " + getOriginal + ";");
+        writer.startLine("if (orig == null) { " + field + " = null; }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine(field + " = new java.util.ArrayList<" + eltDraft + ">();");
+        writer.startLine("for (" + eltT.name() + " elt : " + seq.iterable("orig") + ") {");
+        writer.indent();
+        writer.startLine(field + ".add(" + toDraftExpr("elt") + ");");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine(loaded + " = true;");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return " + field + ";");
+        writer.unindent();
+        writer.startLine("}");
+        break;
+      }
+      default:
+        writer.startLine("public " + draftType + " " + f.getGetterName() + "() { return " + field + "; }");
+    }
+    writer.println();
+
+    String setter = "set" + upperCaseFirst(f.name());
+    writer.startLine("public void " + setter + "(" + draftType + " in_" + f.name() + ") {");
+    writer.indent();
+    if (kind == FieldKind.SEQUENCE) {
+      writer.startLine(field + " = (in_" + f.name() + " == null) ? null : new java.util.ArrayList<"
+                       + draftTypeFor(elementOf(f.type(), kind), root) + ">(in_" + f.name() + ");");
+    } else {
+      writer.startLine(field + " = in_" + f.name() + ";");
+    }
+    if (kind != FieldKind.OTHER) { writer.startLine(loaded + " = true;"); }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  private void generateFreeze(TabPrintWriter writer, NodeType t, List<Field> fields, NodeType root, boolean isRoot) {
+    String n = t.name();
+    String rootDraft = draftClassName(root);
+    String override = isRoot ? "" : "@Override ";
+    writer.startLine("/**");
+    writer.startLine(" * Produce an immutable " + n + " with the current contents of this draft.  If no field");
+    writer.startLine(" * differs from the original node, the original is returned; children that were never");
+    writer.startLine(" * accessed are taken from the original unchanged.");
+    writer.startLine(" */");
+    writer.startLine("public " + n + " freeze() {");
+    writer.indent();
+    writer.startLine("freezeTree();");
+    writer.startLine("return _original;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    if (isRoot) { generateFreezeTree(writer, root); }
+
+    writer.startLine(override + "protected void pushLoadedChildren(java.util.ArrayList<" + rootDraft + "> stack) {");
+    writer.indent();
+    for (Field f : fields) {
+      FieldKind kind = fieldKind(f.type(), root);
+      String field = "_" + f.name();
+      switch (kind) {
+        case NODE: case OPTION:
+          writer.startLine("if (" + field + "Loaded && " + field + " != null) { stack.add(" + field + "); }");
+          break;
+        case SEQUENCE:
+          writer.startLine("if (" + field + "Loaded && " + field + " != null) {");
+          writer.indent();
+          writer.startLine("for (" + draftTypeFor(elementOf(f.type(), kind), root) + " d : " + field + ") {");
+          writer.print(" if (d != null) { stack.add(d); } }");
+          writer.unindent();
+          writer.startLine("}");
+          break;
+        default:
+          break;
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine(override + "protected void freezeShallow() {");
+    writer.indent();
+    List<String> vals = new ArrayList<String>();
+    for (Field f : fields) {
+      FieldKind kind = fieldKind(f.type(), root);
+      String field = "_" + f.name();
+      String loaded = field + "Loaded";
+      String val = f.name() + "_frozen";
+      String getOriginal = "_original." + f.getGetterName() + "()";
+      vals.add(val);
+      switch (kind) {
+        case NODE:
+          writer.startLine(f.type().name() + " " + val + " = !" + loaded + " ? " + getOriginal + " : ");
+          writer.print(frozenExpr(f.type(), field, root) + ";");
+          break;
+        case OPTION: {
+          OptionClassName opt = (OptionClassName) f.type();
+          TypeName eltT = opt.elementType();
+          writer.startLine(f.type().name() + " " + val + ";");
+          writer.startLine("if (!" + loaded + ") { " + val + " = " + getOriginal + "; }");
+          writer.startLine("else {");
+          writer.indent();
+          writer.startLine(eltT.name() + " elt = " + frozenExpr(eltT, field, root) + ";");
+          writer.startLine(f.type().name() + " orig = (_original == null) ? null : " + getOriginal + ";");
+          writer.startLine("if (orig != null && (elt == null ? " + opt.emptyTester("orig") + " : !"
+                           + opt.emptyTester("orig") + " && " + opt.nonEmptyGetter("orig") + " == elt)) { ");
+          writer.print(val + " = orig; }");
+          writer.startLine("else if (elt == null) { " + val + " = " + opt.emptyConstructor() + "; }");
+          writer.startLine("else { " + val + " = " + opt.nonEmptyConstructor("elt") + "; }");
+          writer.unindent();
+          writer.startLine("}");
+          break;
+        }
+        case SEQUENCE: {
+          SequenceName seq = (SequenceName) f.type();
+          TypeName eltT = seq.elementType();
+          String eltDraft = draftTypeFor(eltT, root);
+          writer.startLine(f.type().name() + " " + val + ";");
+          writer.startLine("if (!" + loaded + ") { " + val + " = " + getOriginal + "; }");
+          writer.startLine("else if (" + field + " == null) { " + val + " = null; }");
+          writer.startLine("else {");
+          writer.indent();
+          // copy on change: nothing is allocated until a frozen element differs from the original
+          writer.startLine(f.type().name() + " orig = (_original == null) ? null : " + getOriginal + ";");
+          writer.startLine("int changed = 0;");
+          writer.startLine(eltT.name() + " changed_elt = null;");
+          writer.startLine("boolean has_changed_elt = false;");
+          writer.startLine("boolean unchanged = (orig != null);");
+          writer.startLine("if (unchanged) {");
+          writer.indent();
+          writer.startLine("for (" + eltT.name() + " elt : " + seq.iterable("orig") + ") {");
+          writer.indent();
+          writer.startLine("if (changed == " + field + ".size()) { unchanged = false; break; }");
+          writer.startLine(eltDraft + " d = " + field + ".get(changed);");
+          writer.startLine(eltT.name() + " frozen_elt = " + frozenExpr(eltT, "d", root) + ";");
+          writer.startLine("if (frozen_elt != elt) {");
+          writer.print(" changed_elt = frozen_elt; has_changed_elt = true; unchanged = false; break; }");
+          writer.startLine("changed++;");
+          writer.unindent();
+          writer.startLine("}");
+          writer.startLine("unchanged &= (changed == " + field + ".size());");
+          writer.unindent();
+          writer.startLine("}");
+          writer.startLine("if (unchanged) { " + val + " = orig; }");
+          writer.startLine("else {");
+          writer.indent();
+          // elements before the first change are reused
+          writer.startLine(seq.accumulator("accum"));
+          writer.startLine("int index = 0;");
+          writer.startLine("if (orig != null) {");
+          writer.indent();
+          writer.startLine("for (" + eltT.name() + " elt : " + seq.iterable("orig") + ") {");
+          writer.indent();
+          writer.startLine("if (index == changed) { break; }");
+          writer.startLine(seq.addToAccumulator("accum", "elt"));
+          writer.startLine("index++;");
+          writer.unindent();
+          writer.startLine("}");
+          writer.unindent();
+          writer.startLine("}");
+          writer.startLine("if (has_changed_elt) { " + seq.addToAccumulator("accum", "changed_elt") + " index++; }");
+          writer.startLine("for (; index < " + field + ".size(); index++) {");
+          writer.indent();
+          writer.startLine(eltDraft + " d = " + field + ".get(index);");
+          writer.startLine(seq.addToAccumulator("accum", frozenExpr(eltT, "d", root)));
+          writer.unindent();
+          writer.startLine("}");
+          writer.startLine(val + " = " + seq.constructor("accum") + ";");
+          writer.unindent();
+          writer.startLine("}");
+          writer.unindent();
+          writer.startLine("}");
+          break;
+        }
+        default:
+          writer.startLine(f.type().name() + " " + val + " = _" + f.name() + ";");
+      }
+    }
+    writer.startLine("if (_original == null");
+    for (int i = 0; i < fields.size(); i++) {
+      Field f = fields.get(i);
+      writer.print(" || " + EqualsGenerator.primitiveDiffers(f.type(), vals.get(i), "_original." + f.getGetterName() + "()"));
+    }
+    writer.print(") {");
+    writer.indent();
+    writer.startLine("_original = new " + n + "(");
+    for (int i = 0; i < vals.size(); i++) {
+      if (i > 0) { writer.print(", "); }
+      writer.print(vals.get(i));
+    }
+    writer.print(");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+}
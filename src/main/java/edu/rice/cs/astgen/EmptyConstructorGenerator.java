@@ -67,13 +67,16 @@ public class EmptyConstructorGenerator extends CodeGenerator {
     hasEmptyConstructor |= allDefaults;
 
     if (!hasEmptyConstructor) {
+      // Externalizable classes must have a public no-arg constructor
+      String access = (options.generateExternalizable && !c.isAbstract()) ? "public " : "protected ";
       writer.startLine("/**");
       writer.startLine(" * Empty constructor, for reflective access.  Clients are ");
       writer.startLine(" * responsible for manually instantiating each field.");
       writer.startLine(" */");
-      writer.startLine("protected " + c.name() + "() {");
+      writer.startLine(access + c.name() + "() {");
       writer.indent();
       for (Field f : c.declaredFields(ast)) {
+        if (MetadataTableGenerator.inSideTable(ast, f)) { continue; }
         String init;
         if (f.type() instanceof PrimitiveName) {
           if (f.type().name().equals("boolean")) {
@@ -47,6 +47,19 @@ public class EqualsGenerator extends CodeGenerator {
     return IterUtil.empty();
   }
 
+///+ <CR021>
+  /**
+   * An expression testing whether two primitive values of type {@code t} differ.  Floating-point
+   * values are compared as by {@code Double.equals}, consistently with the hash code and with
+   * primitive lists: a NaN equals itself, and {@code 0.0} differs from {@code -0.0}.
+   */
+  public static String primitiveDiffers(TypeName t, String x, String y) {
+    if (t.name().equals("double")) { return "java.lang.Double.compare(" + x + ", " + y + ") != 0"; }
+    else if (t.name().equals("float")) { return "java.lang.Float.compare(" + x + ", " + y + ") != 0"; }
+    else { return x + " != " + y; }
+  }
+///+ </CR021>
+
   public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
     if (ast.isTop(i)) {
       writer.startLine("public int generateHashCode();");
@@ -122,7 +135,7 @@ public class EqualsGenerator extends CodeGenerator {
       }
 
       public Void forPrimitive(PrimitiveName t) {
-        checkIdentical(t);
+        writer.startLine("if (" + primitiveDiffers(t, name1, name2) + ") return false;");	///+ <CR021/>
         return null;
       }
 
@@ -0,0 +1,555 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Makes node classes implement {@link java.io.Externalizable}, writing fields positionally
+ * rather than relying on default serialization.  Each class writes its declared fields after
+ * those of its superclass.  Child nodes are written as a compact class tag followed by their
+ * fields, so Java serialization's per-object class descriptors are only written for the
+ * outermost node.  Integers and lengths are written as variable-length quantities, and options
+ * and tuples are preceded by a tag byte.  A public no-arg constructor is required by
+ * {@code Externalizable}; it is provided with the help of {@link EmptyConstructorGenerator}.
+ */
+public class ExternalizableGenerator extends CodeGenerator {
+
+  private final String ioClassName;
+
+  public ExternalizableGenerator(ASTModel ast) {
+    super(ast);
+    ioClassName = ioClassName(ast);
+  }
+
+  /** The name of the generated class holding encoding support code. */
+  public static String ioClassName(ASTModel ast) {
+    if (ast.topTypes().size() == 1) {
+      return IterUtil.first(ast.topTypes()).name() + "ExternalIO";
+    } else {
+      return "TreeNodeExternalIO";
+    }
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(EmptyConstructorGenerator.class);
+  }
+
+  @Override
+  public Iterable<String> additionalInterfaces(NodeClass c) {
+    if (ast.isTopClass(c)) { return IterUtil.singleton("java.io.Externalizable"); }
+    else { return IterUtil.empty(); }
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    boolean hasSuper = !ast.isTopClass(c);
+    int depth = 0;
+
+    writer.startLine("/** Write the fields of this node positionally; see {@link " + ioClassName + "}. */");
+    writer.startLine("public void writeExternal(java.io.ObjectOutput out) throws java.io.IOException {");
+    writer.indent();
+    if (hasSuper) { writer.startLine("super.writeExternal(out);"); }
+    for (Field f : c.declaredFields(ast)) {
+      if (MetadataTableGenerator.inSideTable(ast, f)) {
+        writeValue(writer, f.type(), f.getGetterName() + "()", depth);
+      } else {
+        writeValue(writer, f.type(), "_" + f.name(), depth);
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Read the fields written by {@link #writeExternal}. */");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("public void readExternal(java.io.ObjectInput in)");
+    writer.print(" throws java.io.IOException, java.lang.ClassNotFoundException {");
+    writer.indent();
+    if (hasSuper) { writer.startLine("super.readExternal(in);"); }
+    for (Field f : c.declaredFields(ast)) {
+      if (MetadataTableGenerator.inSideTable(ast, f)) {
+        // side table entries are keyed by this node, so read into a local and set it
+        writer.startLine(f.type().name() + " " + f.getConstructorArgName() + ";");
+        readValue(writer, f.type(), f.getConstructorArgName(), depth);
+        writer.startLine(MetadataTableGenerator.column(ast, f) + ".put(this, " + f.getConstructorArgName() + ");");
+      } else {
+        readValue(writer, f.type(), "_" + f.name(), depth);
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /** The name of an element type of a primitive array.  (Avoids PrimitiveArrayName.elementType().) */
+  private TypeName primitiveElementType(PrimitiveArrayName t) {
+    return Types.parse(t.name().substring(0, t.name().length() - 2), ast);
+  }
+
+  /** Output statements writing the value of the expression {@code expr} of type {@code t}. */
+  protected void writeValue(final TabPrintWriter writer, TypeName t, final String expr, final int depth) {
+    final String io = ioClassName;
+    t.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) {
+        writer.startLine(io + ".writeNode(out, (java.io.Externalizable) " + expr + ");");
+        return null;
+      }
+
+      public Void forPrimitive(PrimitiveName t) {
+        String name = t.name();
+        if (name.equals("int")) { writer.startLine(io + ".writeSignedVarint(out, " + expr + ");"); }
+        else if (name.equals("long")) { writer.startLine(io + ".writeSignedVarlong(out, " + expr + ");"); }
+        else { writer.startLine("out.write" + upperCaseFirst(name) + "(" + expr + ");"); }
+        return null;
+      }
+
+      public Void forString(ClassName t) {
+        writer.startLine(io + ".writeString(out, " + expr + ");");
+        return null;
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        String var = "arr" + depth;
+        String i = "i" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine(io + ".writeVarint(out, (" + var + " == null) ? 0 : " + var + ".length + 1);");
+        writer.startLine("if (" + var + " != null) {");
+        writer.indent();
+        writer.startLine("for (int " + i + " = 0; " + i + " < " + var + ".length; " + i + "++) {");
+        writer.indent();
+        writeValue(writer, primitiveElementType(t), var + "[" + i + "]", depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) { handleSequence(t); return null; }
+      public Void forSequenceClass(SequenceClassName t) { handleSequence(t); return null; }
+
+      private void handleSequence(SequenceName t) {
+        String var = "seq" + depth;
+        String size = "size" + depth;
+        String elt = "elt" + depth;
+        TypeName eltT = t.elementType();
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { " + io + ".writeVarint(out, 0); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("int " + size + " = 0;");
+        writer.startLine("for (" + eltT.name() + " " + elt + " : " + t.iterable(var) + ") { " + size + "++; }");
+        writer.startLine(io + ".writeVarint(out, " + size + " + 1);");
+        writer.startLine("for (" + eltT.name() + " " + elt + " : " + t.iterable(var) + ") {");
+        writer.indent();
+        writeValue(writer, eltT, elt, depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        String var = "opt" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { out.writeByte(0); }");
+        writer.startLine("else if (" + t.emptyTester(var) + ") { out.writeByte(1); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("out.writeByte(2);");
+        writeValue(writer, t.elementType(), t.nonEmptyGetter(var), depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        String var = "tuple" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { out.writeByte(0); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("out.writeByte(1);");
+        List<TypeName> eltTs = t.elementTypes();
+        for (int i = 0; i < eltTs.size(); i++) {
+          writeValue(writer, eltTs.get(i), t.getter(var, i), depth + 1);
+        }
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forGeneralClass(ClassName t) {
+        writer.startLine("out.writeObject(" + expr + ");");
+        return null;
+      }
+    });
+  }
+
+  /** Output statements reading a value of type {@code t} and assigning it to {@code target}. */
+  protected void readValue(final TabPrintWriter writer, TypeName t, final String target, final int depth) {
+    final String io = ioClassName;
+    t.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) {
+        writer.startLine(target + " = (" + t.name() + ") " + io + ".readNode(in);");
+        return null;
+      }
+
+      public Void forPrimitive(PrimitiveName t) {
+        String name = t.name();
+        if (name.equals("int")) { writer.startLine(target + " = " + io + ".readSignedVarint(in);"); }
+        else if (name.equals("long")) { writer.startLine(target + " = " + io + ".readSignedVarlong(in);"); }
+        else { writer.startLine(target + " = in.read" + upperCaseFirst(name) + "();"); }
+        return null;
+      }
+
+      public Void forString(ClassName t) {
+        writer.startLine(target + " = " + io + ".readString(in);");
+        return null;
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        TypeName eltT = primitiveElementType(t);
+        String size = "size" + depth;
+        String var = "arr" + depth;
+        String i = "i" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine("int " + size + " = " + io + ".readVarint(in);");
+        writer.startLine("if (" + size + " == 0) { " + target + " = null; }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = new " + eltT.name() + "[" + size + " - 1];");
+        writer.startLine("for (int " + i + " = 0; " + i + " < " + var + ".length; " + i + "++) {");
+        writer.indent();
+        readValue(writer, eltT, var + "[" + i + "]", depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine(target + " = " + var + ";");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) { handleSequence(t); return null; }
+      public Void forSequenceClass(SequenceClassName t) { handleSequence(t); return null; }
+
+      private void handleSequence(SequenceName t) {
+        TypeName eltT = t.elementType();
+        String size = "size" + depth;
+        String accum = "accum" + depth;
+        String elt = "elt" + depth;
+        String i = "i" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine("int " + size + " = " + io + ".readVarint(in);");
+        writer.startLine("if (" + size + " == 0) { " + target + " = null; }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine(t.accumulator(accum));
+        writer.startLine("for (int " + i + " = 1; " + i + " < " + size + "; " + i + "++) {");
+        writer.indent();
+        writer.startLine(eltT.name() + " " + elt + ";");
+        readValue(writer, eltT, elt, depth + 1);
+        writer.startLine(t.addToAccumulator(accum, elt));
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine(target + " = " + t.constructor(accum) + ";");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        TypeName eltT = t.elementType();
+        String tag = "tag" + depth;
+        String elt = "elt" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine("byte " + tag + " = in.readByte();");
+        writer.startLine("if (" + tag + " == 0) { " + target + " = null; }");
+        writer.startLine("else if (" + tag + " == 1) { " + target + " = " + t.emptyConstructor() + "; }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine(eltT.name() + " " + elt + ";");
+        readValue(writer, eltT, elt, depth + 1);
+        writer.startLine(target + " = " + t.nonEmptyConstructor(elt) + ";");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        List<TypeName> eltTs = t.elementTypes();
+        List<String> elts = new ArrayList<String>(eltTs.size());
+        writer.startLine("if (in.readByte() == 0) { " + target + " = null; }");
+        writer.startLine("else {");
+        writer.indent();
+        for (int i = 0; i < eltTs.size(); i++) {
+          String elt = "elt" + depth + "_" + i;
+          elts.add(elt);
+          writer.startLine(eltTs.get(i).name() + " " + elt + ";");
+          readValue(writer, eltTs.get(i), elt, depth + 1);
+        }
+        writer.startLine(target + " = " + t.constructor(elts) + ";");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forGeneralClass(ClassName t) {
+        writer.startLine(target + " = (" + t.name() + ") in.readObject();");
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+    List<NodeClass> concrete = new ArrayList<NodeClass>();
+    for (NodeClass c : ast.classes()) {
+      if (!c.isAbstract()) { concrete.add(c); }
+    }
+
+    TabPrintWriter writer = options.createJavaSourceInOutDir(ioClassName);
+    writer.startLine("/**");
+    writer.startLine(" * Encoding support for the generated {@code writeExternal} and {@code readExternal}");
+    writer.startLine(" * methods.  A node is written as a variable-length class tag (0 for {@code null})");
+    writer.startLine(" * followed by its fields, so no class descriptors or field names are written for nested");
+    writer.startLine(" * nodes.  Unsigned variable-length quantities use 7 bits per byte, low bits first; signed");
+    writer.startLine(" * values are zigzag-encoded first, so that small negative numbers are also short.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + ioClassName + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + ioClassName + "() {}");
+    writer.println();
+
+    writer.startLine("private static final java.util.IdentityHashMap<java.lang.Class<?>, java.lang.Integer> TAGS =");
+    writer.print(" new java.util.IdentityHashMap<java.lang.Class<?>, java.lang.Integer>();");
+    writer.startLine("static {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine("TAGS.put(" + concrete.get(i).name() + ".class, " + (i + 1) + ");");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Write a node's class tag and fields.");
+    writer.startLine(" * @throws java.io.NotSerializableException  If the node's class is not part of the AST.");
+    writer.startLine(" */");
+    writer.startLine("public static void writeNode(java.io.ObjectOutput out, java.io.Externalizable node)");
+    writer.print(" throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (node == null) { writeVarint(out, 0); return; }");
+    writer.startLine("java.lang.Integer tag = TAGS.get(node.getClass());");
+    writer.startLine("if (tag == null) { throw new java.io.NotSerializableException(node.getClass().getName()); }");
+    writer.startLine("writeVarint(out, tag);");
+    writer.startLine("node.writeExternal(out);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Read a node written by {@link #writeNode}. */");
+    writer.startLine("public static java.io.Externalizable readNode(java.io.ObjectInput in)");
+    writer.print(" throws java.io.IOException, java.lang.ClassNotFoundException {");
+    writer.indent();
+    writer.startLine("java.io.Externalizable node;");
+    writer.startLine("int tag = readVarint(in);");
+    writer.startLine("switch (tag) {");
+    writer.indent();
+    writer.startLine("case 0: return null;");
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine("case " + (i + 1) + ": node = new " + concrete.get(i).name() + "(); break;");
+    }
+    writer.startLine("default: throw new java.io.StreamCorruptedException(\"Unknown node tag: \" + tag);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("node.readExternal(in);");
+    writer.startLine("return node;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public static void writeVarint(java.io.DataOutput out, int v) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("while ((v & ~0x7f) != 0) {");
+    writer.indent();
+    writer.startLine("out.writeByte((v & 0x7f) | 0x80);");
+    writer.startLine("v >>>= 7;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("out.writeByte(v);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public static int readVarint(java.io.DataInput in) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("int result = 0;");
+    writer.startLine("for (int shift = 0; shift < 35; shift += 7) {");
+    writer.indent();
+    writer.startLine("byte b = in.readByte();");
+    writer.startLine("result |= (b & 0x7f) << shift;");
+    writer.startLine("if ((b & 0x80) == 0) { return result; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("throw new java.io.StreamCorruptedException(\"Malformed varint\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public static void writeVarlong(java.io.DataOutput out, long v) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("while ((v & ~0x7fL) != 0) {");
+    writer.indent();
+    writer.startLine("out.writeByte((int) (v & 0x7f) | 0x80);");
+    writer.startLine("v >>>= 7;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("out.writeByte((int) v);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public static long readVarlong(java.io.DataInput in) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("long result = 0;");
+    writer.startLine("for (int shift = 0; shift < 70; shift += 7) {");
+    writer.indent();
+    writer.startLine("byte b = in.readByte();");
+    writer.startLine("result |= (long) (b & 0x7f) << shift;");
+    writer.startLine("if ((b & 0x80) == 0) { return result; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("throw new java.io.StreamCorruptedException(\"Malformed varlong\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public static void writeSignedVarint(java.io.DataOutput out, int v) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("writeVarint(out, (v << 1) ^ (v >> 31));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public static int readSignedVarint(java.io.DataInput in) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("int v = readVarint(in);");
+    writer.startLine("return (v >>> 1) ^ -(v & 1);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public static void writeSignedVarlong(java.io.DataOutput out, long v) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("writeVarlong(out, (v << 1) ^ (v >> 63));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public static long readSignedVarlong(java.io.DataInput in) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("long v = readVarlong(in);");
+    writer.startLine("return (v >>> 1) ^ -(v & 1);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Write a string as its length plus one (0 for {@code null}) followed by its chars,");
+    writer.startLine(" * each as a variable-length quantity; ASCII text thus takes one byte per char.");
+    writer.startLine(" */");
+    writer.startLine("public static void writeString(java.io.DataOutput out, java.lang.String s) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (s == null) { writeVarint(out, 0); return; }");
+    writer.startLine("int length = s.length();");
+    writer.startLine("writeVarint(out, length + 1);");
+    writer.startLine("for (int i = 0; i < length; i++) { writeVarint(out, s.charAt(i)); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Read a string written by {@link #writeString}.  Like node constructors, interns the result. */");
+    writer.startLine("public static java.lang.String readString(java.io.DataInput in) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("int length = readVarint(in);");
+    writer.startLine("if (length == 0) { return null; }");
+    writer.startLine("char[] chars = new char[length - 1];");
+    writer.startLine("for (int i = 0; i < chars.length; i++) { chars[i] = (char) readVarint(in); }");
+    writer.startLine("return new java.lang.String(chars).intern();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
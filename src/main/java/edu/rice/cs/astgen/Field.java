@@ -37,6 +37,7 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.astgen;
 
+import edu.rice.cs.astgen.Types.CompactSequenceClassName;	///+ <CR022/>
 import edu.rice.cs.astgen.Types.KindTag;
 import edu.rice.cs.astgen.Types.TypeName;
 import edu.rice.cs.plt.tuple.Option;
@@ -154,15 +155,32 @@ public class Field {
 
 ///+ <CR001>
   public String getSetterMethod(boolean makeFinal) {
+    return getSetterMethod(makeFinal, false);	///+ <CR026/>
+  }
+
+  /** @param invalidateAttributes  Whether the setter discards the node's cached attributes */	///+ <CR026/>
+  public String getSetterMethod(boolean makeFinal, boolean invalidateAttributes) {	///+ <CR026/>
     StringBuilder buf = _getSetterSignature();
     if (makeFinal) {
       buf.insert(0, "final ");
     }
-    buf.append(" { _").append(_name).append(" = ").append(_name).append("; }");
+    buf.append(" { _").append(_name).append(" = ").append(_setterValue()).append(";");	///+ <CR022/>
+    if (invalidateAttributes) { buf.append(" invalidateAttributes();"); }	///+ <CR026/>
+    buf.append(" }");	///+ <CR026/>
     return buf.toString();
   }
 ///+ </CR001>
 
+///+ <CR022>
+  private String _setterValue() {
+    if (_type instanceof CompactSequenceClassName) {
+      return ((CompactSequenceClassName) _type).compactor(_name);
+    } else {
+      return _name;
+    }
+  }
+///+ </CR022>
+
   public String getGetterInterface() {
     StringBuilder buf = _getGetterSignature();	///* <CR000/> StringBuilder instead of StringBufffer
     buf.append(";");
@@ -174,22 +192,50 @@ public class Field {
   }
 
   public String getFieldInitialization() {
-    final String argName = getConstructorArgName();
+    return "_" + _name + " = " + _initialValue() + ";";	///+ <CR025/>
+  }
 
-    String start = "_" + _name + " = ";
+  private String _initialValue() {	///+ <CR025/>
+    final String argName = getConstructorArgName();
     // auto intern strings!
     if (Types.kind(_type).equals(KindTag.STRING)) {
       if (_allowNull) {
-        start += "(" + argName + " == null) ? null : " + argName + ".intern()";
+        return "(" + argName + " == null) ? null : " + argName + ".intern()";
       } else {
-        start += argName + ".intern()";
+        return argName + ".intern()";
       }
+    } else if (_type instanceof CompactSequenceClassName) {	///+ <CR022/>
+      return ((CompactSequenceClassName) _type).compactor(argName);	///+ <CR022/>
     } else {
-      start += argName;
+      return argName;
     }
-    return start + ";";
   }
 
+///+ <CR025>
+  /** Getter for a field stored in the given side table column, rather than in the node. */
+  public String getSideTableGetterMethod(boolean makeFinal, String column) {
+    StringBuilder buf = _getGetterSignature();
+    if (makeFinal) { buf.insert(0, "final "); }
+    buf.append(" { return ").append(column).append(".get(this); }");
+    return buf.toString();
+  }
+
+  /** Setter for a field stored in the given side table column, rather than in the node. */
+  public String getSideTableSetterMethod(boolean makeFinal, String column, boolean invalidateAttributes) {
+    StringBuilder buf = _getSetterSignature();
+    if (makeFinal) { buf.insert(0, "final "); }
+    buf.append(" { ").append(column).append(".put(this, ").append(_setterValue()).append(");");
+    if (invalidateAttributes) { buf.append(" invalidateAttributes();"); }	///+ <CR026/>
+    buf.append(" }");
+    return buf.toString();
+  }
+
+  /** Constructor initialization of a field stored in the given side table column. */
+  public String getSideTableInitialization(String column) {
+    return column + ".put(this, " + _initialValue() + ");";
+  }
+///+ </CR025>
+
   public String getConstructorArgName() {
     return "in_" + _name;
   }
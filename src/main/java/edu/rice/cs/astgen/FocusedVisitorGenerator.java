@@ -0,0 +1,197 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, "focused" variants of the update visitor and (if void visitors are
+ * generated) the void depth-first visitor.  A focused visitor is constructed with a set of target
+ * classes and only recurs into fields whose subtrees may contain an instance of one of those
+ * classes, according to the tables generated by {@link ReachabilityGenerator}.
+ */
+public class FocusedVisitorGenerator extends RecursiveVisitorGenerator {
+
+  public FocusedVisitorGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    if (options.generateVoidVisitors) {
+      return IterUtil.make(ReachabilityGenerator.class, UpdateVisitorGenerator.class,
+                           DepthFirstVoidVisitorGenerator.class);
+    } else {
+      return IterUtil.make(ReachabilityGenerator.class, UpdateVisitorGenerator.class);
+    }
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    Map<NodeType, Map<Field, Integer>> slots = new HashMap<NodeType, Map<Field, Integer>>();
+    int slot = 0;
+    for (Map.Entry<NodeType, Field> e : ChildrenGenerator.slots(ast, root)) {
+      Map<Field, Integer> fields = slots.get(e.getKey());
+      if (fields == null) {
+        fields = new HashMap<Field, Integer>();
+        slots.put(e.getKey(), fields);
+      }
+      fields.put(e.getValue(), slot++);
+    }
+    generateFocusedUpdateVisitor(root, slots);
+    if (options.generateVoidVisitors) {
+      generateFocusedVoidVisitor(root, slots);
+    }
+  }
+
+  private void outputHeader(TabPrintWriter writer, NodeType root, String visitorName, String superName) {
+    writer.startLine(" * Only fields whose subtrees may contain an instance of one of the target classes");
+    writer.startLine(" * passed to the constructor are visited; other fields are left unchanged, and the");
+    writer.startLine(" * cases for nodes within them are not invoked.  Thus, cases should only be overridden");
+    writer.startLine(" * for the target classes (or their supertypes).");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class " + visitorName + " extends " + superName + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** For each slot of {@link " + ChildrenGenerator.childrenClassName(root) + "}, whether to visit it. */");
+    writer.startLine("private final boolean[] _mask;");
+    writer.println();
+    writer.startLine("protected " + visitorName + "(java.lang.Class<?>... targets) {");
+    writer.indent();
+    writer.startLine("_mask = " + ReachabilityGenerator.reachabilityClassName(root) + ".fieldMask(targets);");
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+  protected void generateFocusedUpdateVisitor(NodeType root, Map<NodeType, Map<Field, Integer>> slots) {
+    String visitorName = root.name() + "FocusedUpdateVisitor";
+    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+    writer.startLine("/**");
+    writer.startLine(" * An update visitor over " + root.name() + " that only recurs where a target class may be found.");
+    outputHeader(writer, root, visitorName, root.name() + "UpdateVisitor");
+
+    for (NodeType t : ast.descendents(root)) {
+      Map<Field, Integer> fieldSlots = slots.get(t);
+      if (t.isAbstract() || fieldSlots == null) { continue; }
+      writer.println();
+      outputForCaseHeader(t, writer, root.name(), "");
+      writer.indent();
+      List<String> recurVals = new LinkedList<String>();
+      for (Field f : t.allFields(ast)) {
+        String getter = "that." + f.getGetterName() + "()";
+        Option<String> recur = recurExpression(f.type(), getter, root, false);
+        if (recur.isSome()) {
+          String recurName = f.name() + "_result";
+          String recurred = downcast(f.type(), recur.unwrap(), root);
+          Integer s = fieldSlots.get(f);
+          writer.startLine(f.type().name() + " " + recurName + " = ");
+          if (s == null) { writer.print(recurred + ";"); }
+          else { writer.print("_mask[" + s + "] ? " + recurred + " : " + getter + ";"); }
+          recurVals.add(recurName);
+        }
+      }
+      writer.startLine("return " + visitorMethodName(t) + "Only(that");
+      for (String recurVal : recurVals) {
+        writer.print(", " + recurVal);
+      }
+      writer.print(");");
+      writer.unindent();
+      writer.startLine("}");
+    }
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  protected void generateFocusedVoidVisitor(NodeType root, Map<NodeType, Map<Field, Integer>> slots) {
+    String visitorName = root.name() + "FocusedDepthFirstVisitor_void";
+    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+    writer.startLine("/**");
+    writer.startLine(" * A depth-first visitor over " + root.name() + " that only recurs where a target class may be found.");
+    outputHeader(writer, root, visitorName, root.name() + "DepthFirstVisitor_void");
+
+    for (NodeType t : ast.descendents(root)) {
+      Map<Field, Integer> fieldSlots = slots.get(t);
+      if (t.isAbstract() || fieldSlots == null) { continue; }
+      writer.println();
+      outputForCaseHeader(t, writer, "void", "");
+      writer.indent();
+      writer.startLine(visitorMethodName(t) + "DoFirst(that);");
+      for (Field f : t.allFields(ast)) {
+        Option<String> recur = recurExpression(f.type(), "that." + f.getGetterName() + "()", root, false);
+        if (recur.isSome()) {
+          Integer s = fieldSlots.get(f);
+          if (s == null) { writer.startLine(recur.unwrap() + ";"); }
+          else { writer.startLine("if (_mask[" + s + "]) { " + recur.unwrap() + "; }"); }
+        }
+      }
+      writer.startLine(visitorMethodName(t) + "Only(that);");
+      writer.unindent();
+      writer.startLine("}");
+    }
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /**
+   * The update visitor's recursion on a node produces the root type; cast it to the field's type
+   * when that is a proper descendant.  (Helpers for other types already produce the field's type.)
+   */
+  private String downcast(TypeName t, String recur, NodeType root) {
+    Option<NodeType> treeNode = ast.typeForName(t);
+    if (treeNode.isSome() && ast.isDescendent(root, treeNode.unwrap()) && !treeNode.unwrap().equals(root)) {
+      return "(" + t.name() + ") " + recur;
+    }
+    return recur;
+  }
+
+}
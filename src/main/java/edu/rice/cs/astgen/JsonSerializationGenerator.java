@@ -0,0 +1,741 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates JSON serialization.  Each class gets a {@code toJson(java.io.Writer)} method that
+ * writes its fields directly, without reflection or an intermediate tree, and a generated
+ * reader class parses the result incrementally, dispatching on type names with a switch.
+ * A node is written as an object whose first member, {@code "@type"}, is the class name,
+ * followed by one member per field.  Sequences and tuples are written as arrays, options as
+ * arrays of zero or one element.  Values of other types have no JSON form: only {@code null}
+ * is written or read for them, since the input may come from services not written in Java.
+ * The reader can also report the contents of a document to a {@link TreeWalker} as it is
+ * parsed, without constructing nodes.
+ */
+public class JsonSerializationGenerator extends CodeGenerator {
+
+  private final String jsonClassName;
+  private final String nodeReaderName;
+  private final String nodeType;
+  private final Set<TypeName> helpers;
+  private final Set<TypeName> walkHelpers;
+
+  public JsonSerializationGenerator(ASTModel ast) {
+    super(ast);
+    jsonClassName = jsonClassName(ast);
+    if (ast.topTypes().size() == 1) {
+      NodeType top = IterUtil.first(ast.topTypes());
+      nodeReaderName = "read" + upperCaseFirst(top.name());
+      nodeType = top.name();
+    } else {
+      nodeReaderName = "readTreeNode";
+      nodeType = "java.lang.Object";
+    }
+    helpers = new LinkedHashSet<TypeName>();
+    walkHelpers = new LinkedHashSet<TypeName>();
+  }
+
+  /** The name of the generated class holding JSON support code. */
+  public static String jsonClassName(ASTModel ast) {
+    if (ast.topTypes().size() == 1) {
+      return IterUtil.first(ast.topTypes()).name() + "Json";
+    } else {
+      return "TreeNodeJson";
+    }
+  }
+
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(WalkMethodGenerator.class);
+  }
+
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (ast.isTop(i)) {
+      writer.startLine("/** Generate a JSON representation that can be read with {@link " + jsonClassName + "}. */");
+      writer.startLine("public java.lang.String toJson();");
+      writer.startLine("/** Write a JSON representation that can be read with {@link " + jsonClassName + "}. */");
+      writer.startLine("public void toJson(java.io.Writer writer) throws java.io.IOException;");
+      writer.println();
+    }
+  }
+
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    if (ast.isTopClass(c)) {
+      writer.startLine("/** Generate a JSON representation that can be read with {@link " + jsonClassName + "}. */");
+      writer.startLine("public java.lang.String toJson() {");
+      writer.indent();
+      writer.startLine("java.io.StringWriter w = new java.io.StringWriter();");
+      writer.startLine("try { toJson(w); }");
+      writer.startLine("catch (java.io.IOException e) { throw new java.lang.RuntimeException(e); }");
+      writer.startLine("return w.toString();");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+    if (c.isAbstract()) {
+      if (ast.isTopClass(c)) {
+        writer.startLine("/** Write a JSON representation that can be read with {@link " + jsonClassName + "}. */");
+        writer.startLine("public abstract void toJson(java.io.Writer writer) throws java.io.IOException;");
+        writer.println();
+      }
+    } else {
+      writer.startLine("/** Write a JSON representation that can be read with {@link " + jsonClassName + "}. */");
+      writer.startLine("public void toJson(java.io.Writer writer) throws java.io.IOException {");
+      writer.indent();
+      writer.startLine("writer.write(\"{\\\"@type\\\":\\\"" + c.name() + "\\\"\");");
+      for (Field f : c.allFields(ast)) {
+        writer.startLine("writer.write(\",\\\"" + f.name() + "\\\":\");");
+        writeValue(writer, f.type(), "this." + f.getGetterName() + "()", 0);
+      }
+      writer.startLine("writer.write('}');");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+  }
+
+  /** Output statements writing the value of {@code expr}, of type {@code t}; nesting determines local names. */
+  protected void writeValue(final TabPrintWriter writer, TypeName t, final String expr, final int depth) {
+    final String var = "v" + depth;
+    t.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) {
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { writer.write(\"null\"); } else { " + var + ".toJson(writer); }");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forPrimitive(PrimitiveName t) {
+        String name = t.name();
+        if (name.equals("char")) { writer.startLine(jsonClassName + ".writeChar(writer, " + expr + ");"); }
+        else if (name.equals("double")) { writer.startLine(jsonClassName + ".writeDouble(writer, " + expr + ");"); }
+        else if (name.equals("float")) { writer.startLine(jsonClassName + ".writeFloat(writer, " + expr + ");"); }
+        else { writer.startLine("writer.write(java.lang.String.valueOf(" + expr + "));"); }
+        return null;
+      }
+
+      public Void forString(ClassName t) {
+        writer.startLine(jsonClassName + ".writeString(writer, " + expr + ");");
+        return null;
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        // avoid PrimitiveArrayName.elementType()
+        String eltName = t.name().substring(0, t.name().length() - 2);
+        writeSequence(t.name(), eltName, Types.parse(eltName, ast), var);
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) {
+        writeSequence(t.name(), t.elementType().name(), t.elementType(), t.iterable(var));
+        return null;
+      }
+
+      public Void forSequenceClass(SequenceClassName t) {
+        writeSequence(t.name(), t.elementType().name(), t.elementType(), t.iterable(var));
+        return null;
+      }
+
+      private void writeSequence(String typeName, String eltName, TypeName eltType, String iterable) {
+        String elt = "elt" + depth;
+        String first = "first" + depth;
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(typeName + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { writer.write(\"null\"); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("writer.write('[');");
+        writer.startLine("boolean " + first + " = true;");
+        writer.startLine("for (" + eltName + " " + elt + " : " + iterable + ") {");
+        writer.indent();
+        writer.startLine("if (" + first + ") { " + first + " = false; } else { writer.write(','); }");
+        writeValue(writer, eltType, elt, depth + 1);
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("writer.write(']');");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { writer.write(\"null\"); }");
+        writer.startLine("else if (" + t.emptyTester(var) + ") { writer.write(\"[]\"); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("writer.write('[');");
+        writeValue(writer, t.elementType(), t.nonEmptyGetter(var), depth + 1);
+        writer.startLine("writer.write(']');");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        writer.startLine("{");
+        writer.indent();
+        writer.startLine(t.name() + " " + var + " = " + expr + ";");
+        writer.startLine("if (" + var + " == null) { writer.write(\"null\"); }");
+        writer.startLine("else {");
+        writer.indent();
+        writer.startLine("writer.write('[');");
+        List<TypeName> eltTypes = t.elementTypes();
+        for (int i = 0; i < eltTypes.size(); i++) {
+          if (i > 0) { writer.startLine("writer.write(',');"); }
+          writeValue(writer, eltTypes.get(i), t.getter(var, i), depth + 1);
+        }
+        writer.startLine("writer.write(']');");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+        return null;
+      }
+
+      public Void forGeneralClass(ClassName t) {
+        writer.startLine(jsonClassName + ".writeUnknown(writer, " + expr + ");");
+        return null;
+      }
+    });
+  }
+
+  public void generateAdditionalCode() {
+    TabPrintWriter writer = options.createJavaSourceInOutDir(jsonClassName);
+
+    writer.startLine("/**");
+    writer.startLine(" * Support for JSON serialization: static methods used by the generated {@code toJson}");
+    writer.startLine(" * methods, and a reader that parses their output incrementally.  Members of a node");
+    writer.startLine(" * may appear in any order after {@code \"@type\"}; unknown members are skipped, and");
+    writer.startLine(" * missing members take their default values (or the Java default, if none is declared).");
+    writer.startLine(" * {@link #walk} reports a document's contents as events instead; see its description.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public class " + jsonClassName + " {");
+    writer.indent();
+    writer.println();
+
+    writer.startLine("/** Read a node from its JSON representation. */");
+    writer.startLine("public static " + nodeType + " read(java.lang.String s) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("return read(new java.io.StringReader(s));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Read a node from its JSON representation. */");
+    writer.startLine("public static " + nodeType + " read(java.io.Reader r) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine(jsonClassName + " reader = new " + jsonClassName + "(r);");
+    writer.startLine(nodeType + " result = reader." + nodeReaderName + "();");
+    writer.startLine("if (reader.skipWhitespace() >= 0) { throw reader.error(\"unexpected trailing characters\"); }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Parse a node's JSON representation, reporting its contents to {@code w} in the order");
+    writer.startLine(" * they appear, without constructing any nodes.  The calls made are those a node's");
+    writer.startLine(" * {@code walk} method would make, except that arguments standing for nodes, sequences,");
+    writer.startLine(" * options and tuples are {@code null}, since these are not constructed.  When a visit");
+    writer.startLine(" * method returns {@code false}, the corresponding part of the input is skipped without");
+    writer.startLine(" * being interpreted.  Memory use is proportional to the depth of the tree, not its size.");
+    writer.startLine(" */");
+    writer.startLine("public static void walk(java.io.Reader r, TreeWalker w) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine(jsonClassName + " reader = new " + jsonClassName + "(r);");
+    writer.startLine("reader.walker = w;");
+    writer.startLine("reader.walkNode();");
+    writer.startLine("if (reader.skipWhitespace() >= 0) { throw reader.error(\"unexpected trailing characters\"); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The walker receiving events, if reading with {@link #walk}. */");
+    writer.startLine("protected TreeWalker walker;");
+    writer.println();
+
+    writer.startLine("protected " + jsonClassName + "(java.io.Reader r) throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("in = r;");
+    writer.startLine("next();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Read a node, or {@code null}. */");
+    writer.startLine("public " + nodeType + " " + nodeReaderName + "() throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (readNull()) { return null; }");
+    writer.startLine("if (!beginObject() || !readName().equals(\"@type\")) { throw error(\"expected @type\"); }");
+    writer.startLine("java.lang.String type = readString();");
+    writer.startLine("if (type == null) { throw error(\"expected a type name\"); }");
+    writer.startLine("switch (type) {");
+    writer.indent();
+    for (NodeClass c : ast.classes()) {
+      if (!c.isAbstract()) {
+        writer.startLine("case \"" + c.name() + "\": return read" + upperCaseFirst(c.name()) + "Members();");
+      }
+    }
+    writer.startLine("default: throw error(\"unknown type \" + type);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    for (NodeClass c : ast.classes()) {
+      if (!c.isAbstract()) {
+        generateReadMethod(c, writer);
+      }
+    }
+
+    writer.startLine("/** Report a node, or {@code null}, to the walker. */");
+    writer.startLine("public void walkNode() throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (readNull()) { walker.visitNull(); return; }");
+    writer.startLine("if (!beginObject() || !readName().equals(\"@type\")) { throw error(\"expected @type\"); }");
+    writer.startLine("java.lang.String type = readString();");
+    writer.startLine("if (type == null) { throw error(\"expected a type name\"); }");
+    writer.startLine("switch (type) {");
+    writer.indent();
+    for (NodeClass c : ast.classes()) {
+      if (!c.isAbstract()) {
+        writer.startLine("case \"" + c.name() + "\": walk" + upperCaseFirst(c.name()) + "Members(); break;");
+      }
+    }
+    writer.startLine("default: throw error(\"unknown type \" + type);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    for (NodeClass c : ast.classes()) {
+      if (!c.isAbstract()) {
+        generateWalkMethod(c, writer);
+      }
+    }
+
+    // helpers may add further helpers as they are generated
+    Set<TypeName> generated = new HashSet<TypeName>();
+    while (generated.size() < helpers.size()) {
+      for (TypeName t : new ArrayList<TypeName>(helpers)) {
+        if (generated.add(t)) { generateHelper(t, writer); }
+      }
+    }
+
+    generated.clear();
+    while (generated.size() < walkHelpers.size()) {
+      for (TypeName t : new ArrayList<TypeName>(walkHelpers)) {
+        if (generated.add(t)) { generateWalkHelper(t, writer); }
+      }
+    }
+
+    copyFromResource(writer, "JsonMethods.txt", null);
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** Generate a method reading the members of a node of the given class, following its type name. */
+  protected void generateReadMethod(NodeClass c, TabPrintWriter writer) {
+    List<TypeName> fieldTypes = new ArrayList<TypeName>();
+    for (Field f : c.allFields(ast)) { fieldTypes.add(f.type()); }
+    if (castsToGenericType(fieldTypes)) { writer.startLine("@SuppressWarnings(\"unchecked\")"); }
+    writer.startLine("private " + c.name() + " read" + upperCaseFirst(c.name()) + "Members()");
+    writer.print(" throws java.io.IOException {");
+    writer.indent();
+    for (Field f : c.allFields(ast)) {
+      writer.startLine(f.type().name() + " read_" + f.name() + " = " + defaultValue(f) + ";");
+    }
+    writer.startLine("while (nextObjectMember()) {");
+    writer.indent();
+    writer.startLine("java.lang.String name = readName();");
+    writer.startLine("switch (name) {");
+    writer.indent();
+    for (Field f : c.allFields(ast)) {
+      writer.startLine("case \"" + f.name() + "\": read_" + f.name() + " = " + readExpression(f.type()) + "; break;");
+    }
+    writer.startLine("default: skipValue();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return new " + c.name() + "(");
+    boolean first = true;
+    for (Field f : c.allFields(ast)) {
+      if (first) { first = false; } else { writer.print(", "); }
+      writer.print("read_" + f.name());
+    }
+    writer.print(");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  private String defaultValue(Field f) {
+    if (f.defaultValue().isSome()) { return f.defaultValue().unwrap(); }
+    if (f.type() instanceof PrimitiveName) {
+      String name = f.type().name();
+      if (name.equals("boolean")) { return "false"; }
+      else if (name.equals("char")) { return "'\\0'"; }
+      else if (name.equals("long")) { return "0L"; }
+      else if (name.equals("float")) { return "0.0f"; }
+      else if (name.equals("double")) { return "0.0"; }
+      else { return "0"; } // a constant int narrows to byte and short
+    }
+    return "null";
+  }
+
+  /**
+   * Whether reading values of any of the given types involves a cast to a parameterized type:
+   * values of types unknown to the AST are read as objects and cast.
+   */
+  private static boolean castsToGenericType(Iterable<? extends TypeName> types) {
+    for (TypeName t : types) {
+      if (Types.kind(t).equals(KindTag.GENERAL_CLASS) && t.name().indexOf('<') >= 0) { return true; }
+    }
+    return false;
+  }
+
+  /** The types of the values read directly by the helper for {@code t}. */
+  private static List<TypeName> helperElementTypes(TypeName t) {
+    return t.accept(new TypeNameVisitor<List<TypeName>>() {
+      public List<TypeName> forTreeNode(ClassName t) { return none(); }
+      public List<TypeName> forPrimitive(PrimitiveName t) { return none(); }
+      public List<TypeName> forString(ClassName t) { return none(); }
+      public List<TypeName> forGeneralClass(ClassName t) { return none(); }
+      public List<TypeName> forPrimitiveArray(PrimitiveArrayName t) { return none(); }
+      public List<TypeName> forReferenceArray(ReferenceArrayName t) { return one(t.elementType()); }
+      public List<TypeName> forSequenceClass(SequenceClassName t) { return one(t.elementType()); }
+      public List<TypeName> forOptionClass(OptionClassName t) { return one(t.elementType()); }
+      public List<TypeName> forTupleClass(TupleClassName t) { return t.elementTypes(); }
+      private List<TypeName> none() { return Collections.<TypeName>emptyList(); }
+      private List<TypeName> one(TypeName t) { return Collections.singletonList(t); }
+    });
+  }
+
+  /** An expression reading a value of type {@code t}; helper methods are added as needed. */
+  protected String readExpression(TypeName t) {
+    return t.accept(new TypeNameVisitor<String>() {
+
+      public String forTreeNode(ClassName t) {
+        // the reader's own result type needs no cast
+        if (t.name().equals(nodeType)) { return nodeReaderName + "()"; }
+        return "(" + t.name() + ") " + nodeReaderName + "()";
+      }
+
+      public String forPrimitive(PrimitiveName t) {
+        return "read" + upperCaseFirst(t.name()) + "()";
+      }
+
+      public String forString(ClassName t) {
+        return "readString()";
+      }
+
+      public String forPrimitiveArray(PrimitiveArrayName t) { return callHelper(t); }
+      public String forReferenceArray(ReferenceArrayName t) { return callHelper(t); }
+      public String forSequenceClass(SequenceClassName t) { return callHelper(t); }
+      public String forOptionClass(OptionClassName t) { return callHelper(t); }
+      public String forTupleClass(TupleClassName t) { return callHelper(t); }
+
+      private String callHelper(TypeName t) {
+        helpers.add(t);
+        return "read" + t.identifierName() + "()";
+      }
+
+      public String forGeneralClass(ClassName t) {
+        return "(" + t.name() + ") readUnknown(\"" + t.name() + "\")";
+      }
+    });
+  }
+
+  /** Generate a helper read method for values of the given type. */
+  protected void generateHelper(TypeName t, final TabPrintWriter writer) {
+    if (castsToGenericType(helperElementTypes(t))) { writer.startLine("@SuppressWarnings(\"unchecked\")"); }
+    writer.startLine("private " + t.name() + " read" + t.identifierName() + "() throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (readNull()) { return null; }");
+
+    t.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) { throw error(t); }
+      public Void forPrimitive(PrimitiveName t) { throw error(t); }
+      public Void forString(ClassName t) { throw error(t); }
+      public Void forGeneralClass(ClassName t) { throw error(t); }
+
+      private RuntimeException error(TypeName t) {
+        return new IllegalArgumentException("Unexpected type for helper method: " + t.name());
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        // avoid PrimitiveArrayName.elementType()
+        String eltName = t.name().substring(0, t.name().length() - 2);
+        // accumulate in a growing array, rather than boxing each element
+        writer.startLine(t.name() + " result = new " + eltName + "[8];");
+        writer.startLine("int size = 0;");
+        writer.startLine("if (beginArray()) {");
+        writer.indent();
+        writer.startLine("do {");
+        writer.indent();
+        writer.startLine("if (size == result.length) { result = java.util.Arrays.copyOf(result, size * 2); }");
+        writer.startLine("result[size++] = " + readExpression(Types.parse(eltName, ast)) + ";");
+        writer.unindent();
+        writer.startLine("} while (nextArrayElement());");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return (size == result.length) ? result : java.util.Arrays.copyOf(result, size);");
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) { handleSequence(t); return null; }
+      public Void forSequenceClass(SequenceClassName t) { handleSequence(t); return null; }
+
+      private void handleSequence(SequenceName t) {
+        writer.startLine(t.accumulator("accum"));
+        writer.startLine("if (beginArray()) {");
+        writer.indent();
+        writer.startLine("do {");
+        writer.indent();
+        writer.startLine(t.elementType().name() + " elt_result = " + readExpression(t.elementType()) + ";");
+        writer.startLine(t.addToAccumulator("accum", "elt_result"));
+        writer.unindent();
+        writer.startLine("} while (nextArrayElement());");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return " + t.constructor("accum") + ";");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        writer.startLine("if (!beginArray()) { return " + t.emptyConstructor() + "; }");
+        writer.startLine(t.elementType().name() + " elt_result = " + readExpression(t.elementType()) + ";");
+        writer.startLine("expect(']');");
+        writer.startLine("return " + t.nonEmptyConstructor("elt_result") + ";");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        List<TypeName> elementTypes = t.elementTypes();
+        List<String> elements = new ArrayList<String>(elementTypes.size());
+        writer.startLine("expect('[');");
+        for (int i = 0; i < elementTypes.size(); i++) {
+          if (i > 0) { writer.startLine("expect(',');"); }
+          TypeName eltT = elementTypes.get(i);
+          String resultName = "elt_result_" + i;
+          elements.add(resultName);
+          writer.startLine(eltT.name() + " " + resultName + " = " + readExpression(eltT) + ";");
+        }
+        writer.startLine("expect(']');");
+        writer.startLine("return " + t.constructor(elements) + ";");
+        return null;
+      }
+    });
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /** Generate a method reporting the members of a node of the given class, following its type name. */
+  protected void generateWalkMethod(NodeClass c, TabPrintWriter writer) {
+    int fieldCount = IterUtil.sizeOf(c.allFields(ast));
+    String type = "\"" + c.name() + "\"";
+    writer.startLine("private void walk" + upperCaseFirst(c.name()) + "Members() throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (!walker.visitNode(null, " + type + ", " + fieldCount + ")) {");
+    writer.indent();
+    writer.startLine("while (nextObjectMember()) { readName(); skipValue(); }");
+    writer.startLine("return;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("while (nextObjectMember()) {");
+    writer.indent();
+    writer.startLine("java.lang.String name = readName();");
+    writer.startLine("if (!walker.visitNodeField(name, null)) { skipValue(); continue; }");
+    writer.startLine("switch (name) {");
+    writer.indent();
+    for (Field f : c.allFields(ast)) {
+      writer.startLine("case \"" + f.name() + "\": " + walkStatement(f.type()) + " break;");
+    }
+    writer.startLine("default: skipValue();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("walker.endNodeField(name, null);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("walker.endNode(null, " + type + ", " + fieldCount + ");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /** A statement reading a value of type {@code t} and reporting it to the walker. */
+  protected String walkStatement(TypeName t) {
+    return t.accept(new TypeNameVisitor<String>() {
+
+      public String forTreeNode(ClassName t) {
+        return "walkNode();";
+      }
+
+      public String forPrimitive(PrimitiveName t) {
+        String method = upperCaseFirst(t.name());
+        return "walker.visit" + method + "(read" + method + "());";
+      }
+
+      public String forString(ClassName t) {
+        return "{ java.lang.String s = readString(); if (s == null) { walker.visitNull(); } else { walker.visitString(s); } }";
+      }
+
+      public String forPrimitiveArray(PrimitiveArrayName t) { return callHelper(t); }
+      public String forReferenceArray(ReferenceArrayName t) { return callHelper(t); }
+      public String forSequenceClass(SequenceClassName t) { return callHelper(t); }
+      public String forOptionClass(OptionClassName t) { return callHelper(t); }
+      public String forTupleClass(TupleClassName t) { return callHelper(t); }
+
+      private String callHelper(TypeName t) {
+        walkHelpers.add(t);
+        return "walk" + t.identifierName() + "();";
+      }
+
+      public String forGeneralClass(ClassName t) {
+        return "{ java.lang.Object o = readUnknown(\"" + t.name() + "\"); if (o == null) { walker.visitNull(); } else { walker.visitUnknownObject(o); } }";
+      }
+    });
+  }
+
+  /** Generate a helper method reading and reporting values of the given type. */
+  protected void generateWalkHelper(TypeName t, final TabPrintWriter writer) {
+    writer.startLine("private void walk" + t.identifierName() + "() throws java.io.IOException {");
+    writer.indent();
+    writer.startLine("if (readNull()) { walker.visitNull(); return; }");
+
+    t.accept(new TypeNameVisitor<Void>() {
+
+      public Void forTreeNode(ClassName t) { throw error(t); }
+      public Void forPrimitive(PrimitiveName t) { throw error(t); }
+      public Void forString(ClassName t) { throw error(t); }
+      public Void forGeneralClass(ClassName t) { throw error(t); }
+
+      private RuntimeException error(TypeName t) {
+        return new IllegalArgumentException("Unexpected type for helper method: " + t.name());
+      }
+
+      public Void forPrimitiveArray(PrimitiveArrayName t) {
+        // avoid PrimitiveArrayName.elementType()
+        String eltName = t.name().substring(0, t.name().length() - 2);
+        handleSequence(Types.parse(eltName, ast));
+        return null;
+      }
+
+      public Void forReferenceArray(ReferenceArrayName t) { handleSequence(t.elementType()); return null; }
+      public Void forSequenceClass(SequenceClassName t) { handleSequence(t.elementType()); return null; }
+
+      private void handleSequence(TypeName eltT) {
+        writer.startLine("if (!walker.visitIterated(null)) { skipValue(); return; }");
+        writer.startLine("int i = 0;");
+        writer.startLine("if (beginArray()) {");
+        writer.indent();
+        writer.startLine("do {");
+        writer.indent();
+        if (eltT instanceof PrimitiveName) {
+          // primitive elements are reported without boxing, as by a node's walk method
+          String method = upperCaseFirst(eltT.name());
+          writer.startLine(eltT.name() + " elt = read" + method + "();");
+          writer.startLine("if (walker.visitIteratedElement(i, elt)) { walker.visit" + method + "(elt); }");
+        } else {
+          writer.startLine("if (walker.visitIteratedElement(i, null)) { " + walkStatement(eltT) + " }");
+          writer.startLine("else { skipValue(); }");
+        }
+        writer.startLine("i++;");
+        writer.unindent();
+        writer.startLine("} while (nextArrayElement());");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("walker.endIterated(null, i);");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        writer.startLine("if (!beginArray()) { walker.visitEmptyOption(null); return; }");
+        writer.startLine("if (walker.visitNonEmptyOption(null)) {");
+        writer.indent();
+        writer.startLine(walkStatement(t.elementType()));
+        writer.startLine("walker.endNonEmptyOption(null);");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("else { skipValue(); }");
+        writer.startLine("expect(']');");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        List<TypeName> elementTypes = t.elementTypes();
+        int arity = elementTypes.size();
+        writer.startLine("if (!walker.visitTuple(null, " + arity + ")) { skipValue(); return; }");
+        writer.startLine("expect('[');");
+        for (int i = 0; i < arity; i++) {
+          if (i > 0) { writer.startLine("expect(',');"); }
+          writer.startLine("if (walker.visitTupleElement(" + i + ", null)) { " + walkStatement(elementTypes.get(i)) + " }");
+          writer.startLine("else { skipValue(); }");
+          writer.startLine("walker.endTupleElement(" + i + ", null);");
+        }
+        writer.startLine("expect(']');");
+        writer.startLine("walker.endTuple(null, " + arity + ");");
+        return null;
+      }
+    });
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+}
@@ -0,0 +1,233 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+
+/**
+ * Gives every node type a stable integer tag: its ordinal in declaration order.  Nodes expose
+ * their tag with {@code kind()}; the tags are declared as compile-time constants in a generated
+ * constants class, and a per-root dispatcher maps a node to its visitor case with a
+ * {@code switch} over the tag rather than through double dispatch.
+ */
+public class KindTagGenerator extends VisitorGenerator {
+
+  private final String kindsClassName;
+
+  public KindTagGenerator(ASTModel ast) {
+    super(ast);
+    kindsClassName = kindsClassName(ast);
+  }
+
+  /** The name of the generated class declaring the kind constants. */
+  public static String kindsClassName(ASTModel ast) {
+    if (ast.topTypes().size() == 1) {
+      return IterUtil.first(ast.topTypes()).name() + "Kinds";
+    } else {
+      return "TreeNodeKinds";
+    }
+  }
+
+  /** The name of the constant for the given type, qualified by the constants class. */
+  public static String kindConstant(ASTModel ast, NodeType t) {
+    return kindsClassName(ast) + "." + constantName(t);
+  }
+
+  /** The ordinal of the given type, which is also the value of its kind constant. */
+  public static int kindOrdinal(ASTModel ast, NodeType t) {
+    int result = 0;
+    for (NodeType other : ast.types()) {
+      if (other.equals(t)) { return result; }
+      result++;
+    }
+    throw new IllegalArgumentException("Unknown type " + t.name());
+  }
+
+  /** Convert a type name to an upper-case constant name: {@code IntLiteral} becomes {@code INT_LITERAL}. */
+  public static String constantName(NodeType t) {
+    String name = t.name();
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (i > 0 && Character.isUpperCase(c)) {
+        char prev = name.charAt(i-1);
+        boolean nextLower = i+1 < name.length() && Character.isLowerCase(name.charAt(i+1));
+        if (Character.isLowerCase(prev) || Character.isDigit(prev) ||
+            (Character.isUpperCase(prev) && nextLower)) {
+          result.append('_');
+        }
+      }
+      result.append(Character.toUpperCase(c));
+    }
+    return result.toString();
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(VisitorInterfaceGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (ast.isTop(i)) {
+      writer.startLine("/** The kind tag of this node's class; see {@link " + kindsClassName + "}. */");
+      writer.startLine("public int kind();");
+    }
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    if (c.isAbstract()) {
+      // declared once, in the top type; other abstract classes inherit the declaration
+      if (!ast.isTop(c)) { return; }
+      writer.startLine("/** The kind tag of this node's class; see {@link " + kindsClassName + "}. */");
+      writer.startLine("public abstract int kind();");
+    } else {
+      writer.startLine("public final int kind() { return " + kindConstant(ast, c) + "; }");
+    }
+    writer.println();
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+    generateKindsClass();
+    super.generateAdditionalCode();
+  }
+
+  protected void generateKindsClass() {
+    TabPrintWriter writer = options.createJavaSourceInOutDir(kindsClassName);
+    writer.startLine("/**");
+    writer.startLine(" * Kind tags for all node types, numbered in declaration order.  Tags of abstract types");
+    writer.startLine(" * are never returned by {@code kind()}, but are reserved so that numbering is stable.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + kindsClassName + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + kindsClassName + "() {}");
+    writer.println();
+
+    Set<String> used = new HashSet<String>();
+    List<String> names = new ArrayList<String>();
+    int ordinal = 0;
+    for (NodeType t : ast.types()) {
+      String constant = constantName(t);
+      if (!used.add(constant)) {
+        throw new ASTGenException("Kind constant " + constant + " for " + t.name() + " is not unique");
+      }
+      writer.startLine("public static final int " + constant + " = " + ordinal + ";");
+      names.add(t.name());
+      ordinal++;
+    }
+    writer.println();
+    writer.startLine("/** The number of kind tags. */");
+    writer.startLine("public static final int COUNT = " + ordinal + ";");
+    writer.println();
+    writer.startLine("private static final java.lang.String[] NAMES = {");
+    writer.indent();
+    for (int i = 0; i < names.size(); i++) {
+      writer.startLine("\"" + names.get(i) + "\"" + (i+1 < names.size() ? "," : ""));
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("/** The simple name of the type with the given kind tag. */");
+    writer.startLine("public static java.lang.String name(int kind) { return NAMES[kind]; }");
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String className = root.name() + "KindDispatch";
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * Dispatches " + root.name() + " nodes to visitor cases by switching on {@code kind()}.");
+    writer.startLine(" * Equivalent to invoking {@code " + options.visitMethod + "}, but the case is selected by a");
+    writer.startLine(" * {@code switch} on the tag rather than by a second virtual call.  Note that {@code kind()}");
+    writer.startLine(" * is itself a virtual call on the node, so the first dispatch remains.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+
+    writer.startLine("public static <RetType> RetType dispatch(" + root.name() + " node, ");
+    writer.print(root.name() + "Visitor<RetType> visitor) {");
+    writer.indent();
+    outputSwitch(writer, root, "return ");
+    writer.unindent();
+    writer.startLine("}");
+
+    if (options.generateVoidVisitors) {
+      writer.println();
+      writer.startLine("public static void dispatch(" + root.name() + " node, ");
+      writer.print(root.name() + "Visitor_void visitor) {");
+      writer.indent();
+      outputSwitch(writer, root, "");
+      writer.unindent();
+      writer.startLine("}");
+    }
+
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  private void outputSwitch(TabPrintWriter writer, NodeType root, String prefix) {
+    writer.startLine("switch (node.kind()) {");
+    writer.indent();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        writer.startLine("case " + kindConstant(ast, t) + ": ");
+        writer.print(prefix + "visitor." + visitorMethodName(t) + "((" + t.name() + ") node);");
+        if (prefix.length() == 0) { writer.print(" break;"); }
+      }
+    }
+    writer.startLine("default: throw new java.lang.IllegalArgumentException(\"Unexpected kind \" + node.kind());");
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+}
@@ -0,0 +1,283 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import edu.rice.cs.plt.iter.IterUtil;
+
+/**
+ * Generates, for each root, a flattened preorder representation of a tree: an array of nodes
+ * with parallel arrays of subtree sizes, parent indices and kind tags.  Bulk scans over the
+ * arrays avoid following references between nodes, subtrees occupy contiguous ranges, and
+ * the ranges can be divided among threads.
+ */
+public class LinearizationGenerator extends VisitorGenerator {
+
+  public LinearizationGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  /** The name of the linearization class generated for {@code root}. */
+  public static String linearizationClassName(NodeType root) {
+    return root.name() + "Linearization";
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.make(ChildrenGenerator.class, KindTagGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = linearizationClassName(root);
+    String children = ChildrenGenerator.childrenClassName(root);
+    String kinds = KindTagGenerator.kindsClassName(ast);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * A " + r + " tree flattened into preorder.  Position 0 holds the root; the subtree of the");
+    writer.startLine(" * node at position {@code i} occupies positions {@code i} (inclusive) to {@code i + size(i)}");
+    writer.startLine(" * (exclusive), so a subtree can be skipped with {@code i += size(i)}.  The first child of");
+    writer.startLine(" * a node with size greater than 1 is at {@code i + 1}, and each following sibling starts");
+    writer.startLine(" * where the previous sibling's subtree ends.  Kinds are the tags of {@link " + kinds + "}.");
+    writer.startLine(" * The linearization is a snapshot: it is not affected by later rewrites of the tree.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private final " + r + "[] _nodes;");
+    writer.startLine("private final int[] _sizes;");
+    writer.startLine("private final int[] _parents;");
+    writer.startLine("private final int[] _kinds;");
+    writer.println();
+
+    writer.startLine("/** Linearize the tree with the given root. */");
+    writer.startLine("public " + className + "(" + r + " root) {");
+    writer.indent();
+    writer.startLine("Builder b = new Builder();");
+    writer.startLine("b.run(root);");
+    writer.startLine("int n = b._nodes.size();");
+    writer.startLine("_nodes = b._nodes.toArray(new " + r + "[n]);");
+    writer.startLine("_parents = java.util.Arrays.copyOf(b._parents, n);");
+    writer.startLine("_sizes = new int[n];");
+    writer.startLine("_kinds = new int[n];");
+    writer.startLine("for (int i = 0; i < n; i++) {");
+    writer.indent();
+    writer.startLine("_sizes[i] = 1;");
+    writer.startLine("_kinds[i] = _nodes[i].kind();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("// children follow their parents, so sizes can be accumulated in reverse");
+    writer.startLine("for (int i = n - 1; i > 0; i--) { _sizes[_parents[i]] += _sizes[i]; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The number of nodes. */");
+    writer.startLine("public int length() { return _nodes.length; }");
+    writer.println();
+    writer.startLine("/** The root of the tree. */");
+    writer.startLine("public " + r + " root() { return _nodes[0]; }");
+    writer.println();
+    writer.startLine("/** The node at position {@code i}. */");
+    writer.startLine("public " + r + " node(int i) { return _nodes[i]; }");
+    writer.println();
+    writer.startLine("/** The number of nodes in the subtree at position {@code i}, including that node. */");
+    writer.startLine("public int size(int i) { return _sizes[i]; }");
+    writer.println();
+    writer.startLine("/** The position following the subtree at position {@code i}. */");
+    writer.startLine("public int end(int i) { return i + _sizes[i]; }");
+    writer.println();
+    writer.startLine("/** The position of the parent of the node at position {@code i}, or -1 for the root. */");
+    writer.startLine("public int parent(int i) { return _parents[i]; }");
+    writer.println();
+    writer.startLine("/** The kind tag of the node at position {@code i}. */");
+    writer.startLine("public int kind(int i) { return _kinds[i]; }");
+    writer.println();
+    writer.startLine("/** The position of the first child of the node at position {@code i}, or -1. */");
+    writer.startLine("public int firstChild(int i) { return (_sizes[i] > 1) ? i + 1 : -1; }");
+    writer.println();
+    writer.startLine("/** The position of the next sibling of the node at position {@code i}, or -1. */");
+    writer.startLine("public int nextSibling(int i) {");
+    writer.indent();
+    writer.startLine("int p = _parents[i];");
+    writer.startLine("if (p < 0) { return -1; }");
+    writer.startLine("int next = i + _sizes[i];");
+    writer.startLine("return (next < p + _sizes[p]) ? next : -1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The position of {@code node}, compared by identity, or -1.  Takes linear time. */");
+    writer.startLine("public int indexOf(" + r + " node) {");
+    writer.indent();
+    writer.startLine("for (int i = 0; i < _nodes.length; i++) {");
+    writer.indent();
+    writer.startLine("if (_nodes[i] == node) { return i; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return -1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * A sequential stream of the nodes in the subtree at position {@code i}, in preorder.");
+    writer.startLine(" * The stream is backed by the node array, so it is {@code SIZED} and splits evenly.");
+    writer.startLine(" */");
+    writer.startLine("public java.util.stream.Stream<" + r + "> descendants(int i) {");
+    writer.indent();
+    writer.startLine("return java.util.Arrays.stream(_nodes, i, i + _sizes[i]);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/*");
+    writer.startLine(" * The following methods expose the underlying arrays, without copying, for tight loops.");
+    writer.startLine(" * Callers must not modify them.");
+    writer.startLine(" */");
+    writer.println();
+    writer.startLine("/** The nodes in preorder.  Must not be modified. */");
+    writer.startLine("public " + r + "[] nodeArray() { return _nodes; }");
+    writer.println();
+    writer.startLine("/** The subtree sizes, indexed by position.  Must not be modified. */");
+    writer.startLine("public int[] sizeArray() { return _sizes; }");
+    writer.println();
+    writer.startLine("/** The parent positions, indexed by position.  Must not be modified. */");
+    writer.startLine("public int[] parentArray() { return _parents; }");
+    writer.println();
+    writer.startLine("/** The kind tags, indexed by position.  Must not be modified. */");
+    writer.startLine("public int[] kindArray() { return _kinds; }");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Divide the positions of the subtree at {@code i} into at most {@code parts} contiguous");
+    writer.startLine(" * ranges of similar length, for processing by separate threads.  The result holds the");
+    writer.startLine(" * range boundaries: range {@code k} runs from {@code result[k]} (inclusive) to");
+    writer.startLine(" * {@code result[k+1]} (exclusive).  Where possible, boundaries are placed at the start");
+    writer.startLine(" * of a subtree whose size does not exceed a range, so few subtrees are divided.");
+    writer.startLine(" */");
+    writer.startLine("public int[] split(int i, int parts) {");
+    writer.indent();
+    writer.startLine("if (parts < 1) { throw new java.lang.IllegalArgumentException(\"parts < 1\"); }");
+    writer.startLine("int end = i + _sizes[i];");
+    writer.startLine("int target = java.lang.Math.max(1, (_sizes[i] + parts - 1) / parts);");
+    writer.startLine("int[] bounds = new int[parts + 1];");
+    writer.startLine("int count = 0;");
+    writer.startLine("bounds[count++] = i;");
+    writer.startLine("int start = i;");
+    writer.startLine("int pos = i;");
+    writer.startLine("while (pos < end && count < parts) {");
+    writer.indent();
+    writer.startLine("// take a whole subtree if it fits in the current range; otherwise descend into it");
+    writer.startLine("int next = (pos - start + _sizes[pos] <= target) ? pos + _sizes[pos] : pos + 1;");
+    writer.startLine("if (next - start >= target && next < end) {");
+    writer.indent();
+    writer.startLine("bounds[count++] = next;");
+    writer.startLine("start = next;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("pos = next;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("bounds[count++] = end;");
+    writer.startLine("return java.util.Arrays.copyOf(bounds, count);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Collects nodes and parent positions in preorder, using an explicit stack. */");
+    writer.startLine("private static final class Builder extends " + children + " {");
+    writer.indent();
+    writer.startLine("final java.util.ArrayList<" + r + "> _nodes = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("int[] _parents = new int[16];");
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("private int[] _stackParents = new int[16];");
+    writer.startLine("private int _current;");
+    writer.println();
+    writer.startLine("void run(" + r + " root) {");
+    writer.indent();
+    writer.startLine("push(root, -1);");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine("int top = _stack.size() - 1;");
+    writer.startLine(r + " node = _stack.remove(top);");
+    writer.startLine("_current = _nodes.size();");
+    writer.startLine("if (_current == _parents.length) { _parents = java.util.Arrays.copyOf(_parents, _current * 2); }");
+    writer.startLine("_parents[_current] = _stackParents[top];");
+    writer.startLine("_nodes.add(node);");
+    writer.startLine("int mark = _stack.size();");
+    writer.startLine("children(node);");
+    writer.startLine("// children were pushed in order, all with the same parent; reverse them so the first");
+    writer.startLine("// is visited first");
+    writer.startLine("java.util.Collections.reverse(_stack.subList(mark, _stack.size()));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void push(" + r + " node, int parent) {");
+    writer.indent();
+    writer.startLine("int top = _stack.size();");
+    writer.startLine("if (top == _stackParents.length) { _stackParents = java.util.Arrays.copyOf(_stackParents, top * 2); }");
+    writer.startLine("_stack.add(node);");
+    writer.startLine("_stackParents[top] = parent;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("@Override protected void child(" + r + " parent, " + r + " child, int slot, int index) {");
+    writer.indent();
+    writer.startLine("push(child, _current);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
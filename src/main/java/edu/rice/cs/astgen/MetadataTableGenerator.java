@@ -0,0 +1,480 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Moves the fields marked {@code ignoreForEquals} (source positions, comments, and other metadata)
+ * out of the nodes and into generated side tables.  Each such field is a column keyed by node
+ * identity with weak keys; a node's getter and setter read and write its entry, and values equal
+ * to the field's declared default (or, lacking one, zero, false, or null) are not stored at all.
+ */
+public class MetadataTableGenerator extends CodeGenerator {
+
+  private final String metadataClassName;
+
+  public MetadataTableGenerator(ASTModel ast) {
+    super(ast);
+    metadataClassName = metadataClassName(ast);
+  }
+
+  /** The name of the generated class declaring the side tables. */
+  public static String metadataClassName(ASTModel ast) {
+    if (ast.topTypes().size() == 1) {
+      return IterUtil.first(ast.topTypes()).name() + "Metadata";
+    } else {
+      return "TreeNodeMetadata";
+    }
+  }
+
+  /** Whether the given field is stored in a side table rather than in the node. */
+  public static boolean inSideTable(ASTModel ast, Field f) {
+    return ast.options().metadataSideTables && f.ignoreForEquals();
+  }
+
+  /** The column holding the given field, qualified by the metadata class. */
+  public static String column(ASTModel ast, Field f) {
+    return metadataClassName(ast) + "." + columnName(ast, f);
+  }
+
+  /**
+   * The name of the constant for the given field's column.  Fields with the same name, type and
+   * absent value share a column; if fields of the same name have different types, the type is
+   * appended, and if they differ only in their absent values, so is an ordinal.
+   */
+  private static String columnName(ASTModel ast, Field f) {
+    return columnName(f.name(), f, columns(ast).get(f.name()));
+  }
+
+  private static String columnName(String fieldName, Field f, Map<String, Field> sameName) {
+    String result = constantName(fieldName);
+    if (sameName.size() > 1) {
+      result += "_" + constantName(f.type().identifierName());
+      int sameType = 0;
+      int ordinal = 0;
+      for (Field other : sameName.values()) {
+        if (other.type().name().equals(f.type().name())) {
+          sameType++;
+          if (columnKey(other).equals(columnKey(f))) { ordinal = sameType; }
+        }
+      }
+      if (sameType > 1) { result += "_" + ordinal; }
+    }
+    return result;
+  }
+
+  /** Identifies the column of a field among the fields of the same name. */
+  private static String columnKey(Field f) {
+    return f.type().name() + " = " + absentValue(f);
+  }
+
+  /** A representative metadata field of each column, by field name. */
+  private static Map<String, Map<String, Field>> columns(ASTModel ast) {
+    Map<String, Map<String, Field>> result = new TreeMap<String, Map<String, Field>>();
+    for (NodeType t : ast.types()) {
+      for (Field f : t.allFields(ast)) {
+        if (f.ignoreForEquals()) {
+          Map<String, Field> sameName = result.get(f.name());
+          if (sameName == null) {
+            sameName = new LinkedHashMap<String, Field>();
+            result.put(f.name(), sameName);
+          }
+          if (!sameName.containsKey(columnKey(f))) { sameName.put(columnKey(f), f); }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static String constantName(String name) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i-1))) { result.append('_'); }
+      result.append(Character.toUpperCase(c));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Whether the column of {@code f} uses its declared default as the absent value.  A default of
+   * any other reference type would be a single instance shared by every node without an entry.
+   */
+  private static boolean hasSharedDefault(Field f) {
+    return f.defaultValue().isSome() &&
+      (f.type() instanceof PrimitiveName || Types.kind(f.type()).equals(KindTag.STRING));
+  }
+
+  /**
+   * The value a column holds for nodes without an entry: the field's declared default where it
+   * can be shared, and otherwise zero, false, or null.
+   */
+  private static String absentValue(Field f) {
+    TypeName t = f.type();
+    if (hasSharedDefault(f)) {
+      return f.defaultValue().unwrap();
+    } else if (t instanceof PrimitiveName) {
+      String name = t.name();
+      if (name.equals("boolean")) { return "false"; }
+      else if (name.equals("char")) { return "'\\0'"; }
+      else if (name.equals("long")) { return "0L"; }
+      else if (name.equals("float")) { return "0.0f"; }
+      else if (name.equals("double")) { return "0.0"; }
+      else if (name.equals("int")) { return "0"; }
+      else { return "(" + name + ") 0"; }
+    } else {
+      return "null";
+    }
+  }
+
+  /** The type of a column's values: a reference type, boxing primitives. */
+  private static String valueType(TypeName t) {
+    if (t instanceof PrimitiveName) {
+      String name = t.name();
+      if (name.equals("int")) { return "java.lang.Integer"; }
+      else if (name.equals("char")) { return "java.lang.Character"; }
+      else { return "java.lang." + upperCaseFirst(name); }
+    } else {
+      return t.name();
+    }
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+    Map<String, Map<String, Field>> columns = columns(ast);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(metadataClassName);
+    writer.startLine("/**");
+    writer.startLine(" * Side tables for the node fields marked ignoreForEquals.  Each field is a column keyed by node");
+    writer.startLine(" * identity, so that equal nodes keep distinct metadata, and a column only holds entries for");
+    writer.startLine(" * nodes whose value differs from the field's default.  Keys are weak: the entries of");
+    writer.startLine(" * unreachable nodes are dropped.  Columns are thread-safe; reads never lock, and writes lock");
+    writer.startLine(" * one of several segments.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + metadataClassName + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + metadataClassName + "() {}");
+    writer.println();
+
+    List<String> constants = new LinkedList<String>();
+    for (Map.Entry<String, Map<String, Field>> e : columns.entrySet()) {
+      for (Field f : e.getValue().values()) {
+        TypeName t = f.type();
+        String constant = columnName(e.getKey(), f, e.getValue());
+        constants.add(constant);
+        String valueT = valueType(t);
+        String absent = absentValue(f);
+        if (hasSharedDefault(f) && t instanceof PrimitiveName) {
+          // assignment converts the declared default to the field's type before it is boxed
+          writer.startLine("private static final " + t.name() + " ABSENT_" + constant + " = " + absent + ";");
+          absent = "ABSENT_" + constant;
+        }
+        writer.startLine("/** Column for fields {@code " + e.getKey() + "} of type {@code ");
+        writer.print(t.name().replace("<", "&lt;").replace(">", "&gt;") + "}. */");
+        writer.startLine("public static final Column<" + valueT + "> " + constant + " = ");
+        writer.print("new Column<" + valueT + ">(" + absent + ");");
+      }
+    }
+    writer.println();
+
+    writer.startLine("/** Remove all metadata of {@code node}. */");
+    writer.startLine("public static void remove(java.lang.Object node) {");
+    writer.indent();
+    for (String constant : constants) { writer.startLine(constant + ".remove(node);"); }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Give {@code to} the metadata of {@code from}. */");
+    writer.startLine("public static void copy(java.lang.Object from, java.lang.Object to) {");
+    writer.indent();
+    for (String constant : constants) { writer.startLine(constant + ".put(to, " + constant + ".get(from));"); }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    generateColumn(writer);
+    generateSegment(writer);
+
+    writer.startLine("private static final class Entry<V> extends java.lang.ref.WeakReference<java.lang.Object> {");
+    writer.indent();
+    writer.startLine("final int hash;");
+    writer.startLine("volatile V value;");
+    writer.startLine("final Entry<V> next;");
+    writer.println();
+    writer.startLine("Entry(java.lang.Object key, int hash, V value, Entry<V> next,");
+    writer.print(" java.lang.ref.ReferenceQueue<java.lang.Object> queue) {");
+    writer.indent();
+    writer.startLine("super(key, queue);");
+    writer.startLine("this.hash = hash;");
+    writer.startLine("this.value = value;");
+    writer.startLine("this.next = next;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /**
+   * Generate the column class.  A node's identity hash selects one of a fixed number of segments;
+   * reads search a segment without locking, and writes lock only that segment.  Entries of
+   * collected nodes are expunged by writes.
+   */
+  private void generateColumn(TabPrintWriter writer) {
+    writer.startLine("/** A map from nodes (compared by identity, and weakly referenced) to values. */");
+    writer.startLine("public static final class Column<V> {");
+    writer.indent();
+    writer.startLine("private static final int SEGMENTS = 16;");
+    writer.startLine("private final V _absent;");
+    writer.startLine("private final java.lang.ref.ReferenceQueue<java.lang.Object> _queue = ");
+    writer.print("new java.lang.ref.ReferenceQueue<java.lang.Object>();");
+    writer.startLine("private final Segment<V>[] _segments = newSegments(_queue);");
+    writer.println();
+    writer.startLine("private Column(V absent) { _absent = absent; }");
+    writer.println();
+    writer.startLine("/** The value for {@code node}, or the column's default if there is none.  Does not lock. */");
+    writer.startLine("public V get(java.lang.Object node) {");
+    writer.indent();
+    writer.startLine("int hash = java.lang.System.identityHashCode(node);");
+    writer.startLine("Entry<V> e = _segments[hash & (SEGMENTS - 1)].find(node, hash);");
+    writer.startLine("return (e == null) ? _absent : e.value;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Set the value for {@code node}; setting the column's default removes its entry. */");
+    writer.startLine("public void put(java.lang.Object node, V value) {");
+    writer.indent();
+    writer.startLine("if (value == null ? _absent == null : value.equals(_absent)) { remove(node); return; }");
+    writer.startLine("expunge();");
+    writer.startLine("int hash = java.lang.System.identityHashCode(node);");
+    writer.startLine("_segments[hash & (SEGMENTS - 1)].put(node, hash, value);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove the entry for {@code node}, if any. */");
+    writer.startLine("public void remove(java.lang.Object node) {");
+    writer.indent();
+    writer.startLine("expunge();");
+    writer.startLine("int hash = java.lang.System.identityHashCode(node);");
+    writer.startLine("_segments[hash & (SEGMENTS - 1)].remove(node, hash);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * The number of nodes with an entry.  Entries of collected nodes are counted until the next");
+    writer.startLine(" * write expunges them.");
+    writer.startLine(" */");
+    writer.startLine("public int size() {");
+    writer.indent();
+    writer.startLine("int result = 0;");
+    writer.startLine("for (Segment<V> s : _segments) { result += s.count; }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public void clear() {");
+    writer.indent();
+    writer.startLine("while (_queue.poll() != null) {}");
+    writer.startLine("for (Segment<V> s : _segments) { s.clear(); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove the entries of collected nodes. */");
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("private void expunge() {");
+    writer.indent();
+    writer.startLine("for (java.lang.Object ref = _queue.poll(); ref != null; ref = _queue.poll()) {");
+    writer.indent();
+    writer.startLine("Entry<V> e = (Entry<V>) ref;");
+    writer.startLine("_segments[e.hash & (SEGMENTS - 1)].unlink(e);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("private static <V> Segment<V>[] newSegments(java.lang.ref.ReferenceQueue<java.lang.Object> queue) {");
+    writer.indent();
+    writer.startLine("Segment<V>[] result = (Segment<V>[]) new Segment<?>[SEGMENTS];");
+    writer.startLine("for (int i = 0; i < SEGMENTS; i++) { result[i] = new Segment<V>(queue); }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /**
+   * Generate the segment class: a hash table whose chains are never modified once published, so
+   * that readers need no lock.  Removal copies the part of a chain before the removed entry, and
+   * the volatile count, written last by every change, publishes new entries to readers.
+   */
+  private void generateSegment(TabPrintWriter writer) {
+    writer.startLine("private static final class Segment<V> {");
+    writer.indent();
+    writer.startLine("private final java.lang.ref.ReferenceQueue<java.lang.Object> _queue;");
+    writer.startLine("private volatile Entry<V>[] _table = newTable(16);");
+    writer.startLine("volatile int count = 0;");
+    writer.println();
+    writer.startLine("Segment(java.lang.ref.ReferenceQueue<java.lang.Object> queue) { _queue = queue; }");
+    writer.println();
+    writer.startLine("Entry<V> find(java.lang.Object node, int hash) {");
+    writer.indent();
+    writer.startLine("if (count == 0) { return null; }");
+    writer.startLine("Entry<V>[] table = _table;");
+    writer.startLine("for (Entry<V> e = table[(hash >>> 4) & (table.length - 1)]; e != null; e = e.next) {");
+    writer.indent();
+    writer.startLine("if (e.get() == node) { return e; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("synchronized void put(java.lang.Object node, int hash, V value) {");
+    writer.indent();
+    writer.startLine("Entry<V>[] table = _table;");
+    writer.startLine("for (Entry<V> e = table[(hash >>> 4) & (table.length - 1)]; e != null; e = e.next) {");
+    writer.indent();
+    writer.startLine("if (e.get() == node) { e.value = value; return; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int c = count;");
+    writer.startLine("if (c >= table.length - (table.length >> 2)) {");
+    writer.indent();
+    writer.startLine("Entry<V>[] larger = newTable(table.length * 2);");
+    writer.startLine("c = 0;");
+    writer.startLine("for (Entry<V> e : table) {");
+    writer.indent();
+    writer.startLine("for (; e != null; e = e.next) {");
+    writer.indent();
+    writer.startLine("java.lang.Object key = e.get();");
+    writer.startLine("if (key == null) { continue; }");
+    writer.startLine("int index = (e.hash >>> 4) & (larger.length - 1);");
+    writer.startLine("larger[index] = new Entry<V>(key, e.hash, e.value, larger[index], _queue);");
+    writer.startLine("c++;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("table = larger;");
+    writer.startLine("_table = table;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int index = (hash >>> 4) & (table.length - 1);");
+    writer.startLine("table[index] = new Entry<V>(node, hash, value, table[index], _queue);");
+    writer.startLine("count = c + 1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("synchronized void remove(java.lang.Object node, int hash) {");
+    writer.indent();
+    writer.startLine("Entry<V>[] table = _table;");
+    writer.startLine("for (Entry<V> e = table[(hash >>> 4) & (table.length - 1)]; e != null; e = e.next) {");
+    writer.indent();
+    writer.startLine("if (e.get() == node) { unlink(e); return; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove {@code entry}, if it is still in the table, along with collected entries before it. */");
+    writer.startLine("synchronized void unlink(Entry<V> entry) {");
+    writer.indent();
+    writer.startLine("Entry<V>[] table = _table;");
+    writer.startLine("int index = (entry.hash >>> 4) & (table.length - 1);");
+    writer.startLine("Entry<V> first = table[index];");
+    writer.startLine("for (Entry<V> e = first; e != null; e = e.next) {");
+    writer.indent();
+    writer.startLine("if (e == entry) {");
+    writer.indent();
+    writer.startLine("int c = count - 1;");
+    writer.startLine("Entry<V> rest = e.next;");
+    writer.startLine("for (Entry<V> p = first; p != e; p = p.next) {");
+    writer.indent();
+    writer.startLine("java.lang.Object key = p.get();");
+    writer.startLine("if (key == null) { c--; }");
+    writer.startLine("else { rest = new Entry<V>(key, p.hash, p.value, rest, _queue); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("table[index] = rest;");
+    writer.startLine("count = c;");
+    writer.startLine("return;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("synchronized void clear() {");
+    writer.indent();
+    writer.startLine("_table = newTable(16);");
+    writer.startLine("count = 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("private static <V> Entry<V>[] newTable(int size) { return (Entry<V>[]) new Entry<?>[size]; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+}
@@ -83,7 +83,7 @@ public class NodeClass extends NodeType {
   }
 
   public void output(ASTModel ast, Iterable<CodeGenerator> gens) {
-    TabPrintWriter writer = ast.options().createJavaSourceInOutDir(_name);
+    TabPrintWriter writer = ast.options().createNodeSourceInOutDir(_name);
 
     // Class header
     writer.startLine("/**");
@@ -102,9 +102,14 @@ public class NodeClass extends NodeType {
     writer.startLine("public ");
     if (_isAbstract) { writer.print("abstract "); }
     writer.print("class " + _name + " extends " + _superClass.name());
-    if (_interfaces.size() > 0) {
+    Set<String> interfaces = new LinkedHashSet<String>();
+    for (TypeName i : _interfaces) { interfaces.add(i.name()); }
+    for (CodeGenerator g : gens) {
+      for (String i : g.additionalInterfaces(this)) { interfaces.add(i); }
+    }
+    if (interfaces.size() > 0) {
       writer.print(" implements ");
-      writer.print(IterUtil.toString(IterUtil.map(_interfaces, Types.GET_NAME), "", ", ", ""));
+      writer.print(IterUtil.toString(interfaces, "", ", ", ""));
     }
     writer.print(" {");
     writer.indent();
@@ -119,7 +124,7 @@ public class NodeClass extends NodeType {
 
     // Fields for this class
     for (Field f : declaredFields(ast)) {
-      writer.startLine(f.getFieldDefinition());
+      if (!MetadataTableGenerator.inSideTable(ast, f)) { writer.startLine(f.getFieldDefinition()); }
     }
 
     writer.println(); // skip line after fields
@@ -129,7 +134,7 @@ public class NodeClass extends NodeType {
     List<String> mainConstructorType = new LinkedList<String>();
     for (Field f : allFields) { mainConstructorType.add(f.type().erasedName()); }
     constructorTypes.add(mainConstructorType);
-    _outputMainConstructor(writer, allFields, superFields, declaredFields, ast.options().allowNulls);
+    _outputMainConstructor(ast, writer, allFields, superFields, declaredFields, ast.options().allowNulls);
 
     List<Iterable<Pair<Field, Boolean>>> constructorParams = new LinkedList<Iterable<Pair<Field, Boolean>>>();
     for (Field f : allFields) {
@@ -147,9 +152,16 @@ public class NodeClass extends NodeType {
 
 
     ///* Getters & Setters (only for fields defined in this class)
+    boolean invalidateAttributes = AttributeGenerator.hasAttributes(ast);
     for (Field f : declaredFields(ast)) {
+      if (MetadataTableGenerator.inSideTable(ast, f)) {
+        String column = MetadataTableGenerator.column(ast, f);
+        writer.startLine(f.getSideTableGetterMethod(!_isAbstract, column));
+        writer.startLine(f.getSideTableSetterMethod(!_isAbstract, column, invalidateAttributes));
+        continue;
+      }
       writer.startLine(f.getGetterMethod(!_isAbstract, false));
-      writer.startLine(f.getSetterMethod(!_isAbstract));	///+ <CR001/>
+      writer.startLine(f.getSetterMethod(!_isAbstract, invalidateAttributes));	///+ <CR001/>
     }
 
     if (parent.isSome()) {
@@ -171,7 +183,7 @@ public class NodeClass extends NodeType {
     writer.close();
   }
 
-  private void _outputMainConstructor(TabPrintWriter writer, Iterable<Field> allFields, Iterable<Field> superFields,
+  private void _outputMainConstructor(ASTModel ast, TabPrintWriter writer, Iterable<Field> allFields, Iterable<Field> superFields,
           Iterable<Field> declaredFields, boolean allowNulls) {
     writer.startLine("/**");
     writer.startLine(" * Constructs a " + _name + ".");
@@ -206,7 +218,11 @@ public class NodeClass extends NodeType {
         writer.unindent();
         writer.startLine("}");
       }
-      writer.startLine(curField.getFieldInitialization());
+      if (MetadataTableGenerator.inSideTable(ast, curField)) {
+        writer.startLine(curField.getSideTableInitialization(MetadataTableGenerator.column(ast, curField)));
+      } else {
+        writer.startLine(curField.getFieldInitialization());
+      }
     }
 
     writer.unindent();
@@ -0,0 +1,356 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+
+/**
+ * Generates, for each root, an index bucketing the nodes of a tree by concrete class.  A static
+ * table maps each type in the hierarchy (including abstract classes and interfaces) to the
+ * buckets of its concrete subtypes, so that all instances of a type can be found in time
+ * proportional to the number of results.  The index can be updated incrementally when a new
+ * version of the tree shares subtrees with the old one, or when a subtree is replaced in place.
+ */
+public class NodeIndexGenerator extends VisitorGenerator {
+
+  public NodeIndexGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(ChildrenGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = r + "NodeIndex";
+    String children = ChildrenGenerator.childrenClassName(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    List<NodeType> concrete = new ArrayList<NodeType>();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) { concrete.add(t); }
+    }
+    // map each supertype of a concrete descendant to the buckets of its concrete subtypes
+    Map<NodeType, List<Integer>> bucketsForType = new LinkedHashMap<NodeType, List<Integer>>();
+    for (int i = 0; i < concrete.size(); i++) {
+      for (NodeType sup : ast.supertypes(concrete.get(i))) {
+        List<Integer> buckets = bucketsForType.get(sup);
+        if (buckets == null) {
+          buckets = new ArrayList<Integer>();
+          bucketsForType.put(sup, buckets);
+        }
+        buckets.add(i);
+      }
+    }
+
+    writer.startLine("/**");
+    writer.startLine(" * Buckets the nodes of a " + r + " tree by concrete class, so that all instances of a class");
+    writer.startLine(" * or interface can be found in time proportional to the number of results.  Nodes are");
+    writer.startLine(" * compared by identity; a node object appearing at several positions is indexed once.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** The class of the nodes in each bucket. */");
+    writer.startLine("private static final java.lang.Class<?>[] BUCKET_CLASSES = {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine(concrete.get(i).name() + ".class" + (i+1 < concrete.size() ? "," : ""));
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("/** The buckets holding instances of each type declared in the AST. */");
+    writer.startLine("private static final java.util.Map<java.lang.Class<?>, int[]> BUCKETS_FOR_TYPE =");
+    writer.print(" new java.util.HashMap<java.lang.Class<?>, int[]>();");
+    writer.println();
+    writer.startLine("static {");
+    writer.indent();
+    for (Map.Entry<NodeType, List<Integer>> e : bucketsForType.entrySet()) {
+      StringBuilder buckets = new StringBuilder();
+      for (Integer i : e.getValue()) {
+        if (buckets.length() > 0) { buckets.append(", "); }
+        buckets.append(i);
+      }
+      writer.startLine("BUCKETS_FOR_TYPE.put(" + e.getKey().name() + ".class, new int[]{ " + buckets + " });");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private final java.util.ArrayList<" + r + ">[] _buckets;");
+    writer.startLine("private final java.util.IdentityHashMap<" + r + ", Entry> _entries = ");
+    writer.print("new java.util.IdentityHashMap<" + r + ", Entry>();");
+    writer.startLine("private final Indexer _indexer = new Indexer();");
+    writer.startLine("private int _generation = 0;");
+    writer.startLine("private " + r + " _root;");
+    writer.println();
+    writer.startLine("private static final class Entry {");
+    writer.indent();
+    writer.startLine("int bucket;");
+    writer.startLine("int position; // within the bucket");
+    writer.startLine("int stamp; // generation in which the entry was last reached");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Index the tree with the given root. */");
+    writer.startLine("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+    writer.startLine("public " + className + "(" + r + " root) {");
+    writer.indent();
+    writer.startLine("_buckets = new java.util.ArrayList[BUCKET_CLASSES.length];");
+    writer.startLine("for (int i = 0; i < _buckets.length; i++) { _buckets[i] = new java.util.ArrayList<" + r + ">(); }");
+    writer.startLine("_root = root;");
+    writer.startLine("_indexer.add(root);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The root of the indexed tree. */");
+    writer.startLine("public " + r + " root() { return _root; }");
+    writer.println();
+    writer.startLine("/** The number of indexed nodes. */");
+    writer.startLine("public int size() { return _entries.size(); }");
+    writer.println();
+    writer.startLine("/** Whether the given node is part of the indexed tree. */");
+    writer.startLine("public boolean contains(" + r + " node) { return _entries.containsKey(node); }");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * All indexed instances of {@code c}, grouped by concrete class.  Takes time proportional");
+    writer.startLine(" * to the size of the result for types declared in the AST; other types (such as");
+    writer.startLine(" * interfaces declared outside of the AST) also require a check of each concrete class.");
+    writer.startLine(" */");
+    writer.startLine("public <T> java.util.List<T> findAll(java.lang.Class<T> c) {");
+    writer.indent();
+    writer.startLine("int[] buckets = bucketsFor(c);");
+    writer.startLine("int size = 0;");
+    writer.startLine("for (int b : buckets) { size += _buckets[b].size(); }");
+    writer.startLine("java.util.List<T> result = new java.util.ArrayList<T>(size);");
+    writer.startLine("for (int b : buckets) {");
+    writer.indent();
+    writer.startLine("for (" + r + " node : _buckets[b]) { result.add(c.cast(node)); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The number of indexed instances of {@code c}. */");
+    writer.startLine("public int count(java.lang.Class<?> c) {");
+    writer.indent();
+    writer.startLine("int result = 0;");
+    writer.startLine("for (int b : bucketsFor(c)) { result += _buckets[b].size(); }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private static int[] bucketsFor(java.lang.Class<?> c) {");
+    writer.indent();
+    writer.startLine("int[] result = BUCKETS_FOR_TYPE.get(c);");
+    writer.startLine("if (result == null) {");
+    writer.indent();
+    writer.startLine("int count = 0;");
+    writer.startLine("int[] matches = new int[BUCKET_CLASSES.length];");
+    writer.startLine("for (int i = 0; i < BUCKET_CLASSES.length; i++) {");
+    writer.indent();
+    writer.startLine("if (c.isAssignableFrom(BUCKET_CLASSES[i])) { matches[count++] = i; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("result = java.util.Arrays.copyOf(matches, count);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Update the index after {@code oldSubtree} has been replaced by {@code newSubtree} in place,");
+    writer.startLine(" * by a setter on its parent, so that its ancestors are unchanged.  Subtrees already in the");
+    writer.startLine(" * index are not traversed; nodes of {@code oldSubtree} that are not reachable from");
+    writer.startLine(" * {@code newSubtree} are removed.  If {@code oldSubtree} is the root, {@code newSubtree} becomes");
+    writer.startLine(" * the new root.  Nodes of {@code oldSubtree} are assumed not to appear elsewhere in the tree.");
+    writer.startLine(" * <p>When the tree is instead rebuilt by path copying (as by an update visitor or a zipper),");
+    writer.startLine(" * the old ancestors are replaced as well; use {@link #update} with the new root, which");
+    writer.startLine(" * re-indexes the rebuilt path and removes the old one.</p>");
+    writer.startLine(" */");
+    writer.startLine("public void replace(" + r + " oldSubtree, " + r + " newSubtree) {");
+    writer.indent();
+    writer.startLine("if (oldSubtree == newSubtree) { return; }");
+    writer.startLine("_generation++;");
+    writer.startLine("_indexer.add(newSubtree);");
+    writer.startLine("_indexer.remove(oldSubtree);");
+    writer.startLine("if (oldSubtree == _root) { _root = newSubtree; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * Update the index to describe a new version of the tree, such as the result of an update");
+    writer.startLine(" * visitor.  Only nodes that are new, or no longer reachable, are visited; equivalent to");
+    writer.startLine(" * {@code replace(root(), newRoot)}.");
+    writer.startLine(" */");
+    writer.startLine("public void update(" + r + " newRoot) { replace(_root, newRoot); }");
+    writer.println();
+
+    writer.startLine("private void insert(" + r + " node) {");
+    writer.indent();
+    writer.startLine("Entry e = new Entry();");
+    writer.startLine("e.bucket = _indexer.bucket(node);");
+    writer.startLine("e.position = _buckets[e.bucket].size();");
+    writer.startLine("e.stamp = _generation;");
+    writer.startLine("_buckets[e.bucket].add(node);");
+    writer.startLine("_entries.put(node, e);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove a node from its bucket by moving the bucket's last node into its place. */");
+    writer.startLine("private void delete(" + r + " node, Entry e) {");
+    writer.indent();
+    writer.startLine("java.util.ArrayList<" + r + "> bucket = _buckets[e.bucket];");
+    writer.startLine(r + " last = bucket.remove(bucket.size() - 1);");
+    writer.startLine("if (last != node) {");
+    writer.indent();
+    writer.startLine("bucket.set(e.position, last);");
+    writer.startLine("_entries.get(last).position = e.position;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_entries.remove(node);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Adds and removes subtrees using an explicit stack. */");
+    writer.startLine("private final class Indexer extends " + children + " {");
+    writer.indent();
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("private boolean _removing;");
+    writer.startLine("private int _bucket;");
+    writer.startLine("private final " + r + "Visitor<Void> _classifier = new " + r + "Visitor<Void>() {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      NodeType t = concrete.get(i);
+      outputForCaseHeader(t, writer, "Void", "");
+      writer.print(" _bucket = " + i + "; return null; }");
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("int bucket(" + r + " node) {");
+    writer.indent();
+    writer.startLine("node." + options.visitMethod + "(_classifier);");
+    writer.startLine("return _bucket;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Index the nodes of a subtree that are not already indexed, marking those reached. */");
+    writer.startLine("void add(" + r + " node) {");
+    writer.indent();
+    writer.startLine("_removing = false;");
+    writer.startLine("if (!reach(node)) { run(node); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove the nodes of a subtree, stopping at nodes reached in the current generation. */");
+    writer.startLine("void remove(" + r + " node) {");
+    writer.indent();
+    writer.startLine("Entry e = _entries.get(node);");
+    writer.startLine("if (e == null || e.stamp == _generation) { return; }");
+    writer.startLine("delete(node, e);");
+    writer.startLine("_removing = true;");
+    writer.startLine("run(node);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Mark a node as reached, indexing it if necessary; true if it was already indexed. */");
+    writer.startLine("private boolean reach(" + r + " node) {");
+    writer.indent();
+    writer.startLine("Entry e = _entries.get(node);");
+    writer.startLine("if (e == null) { insert(node); return false; }");
+    writer.startLine("e.stamp = _generation;");
+    writer.startLine("return true;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void run(" + r + " node) {");
+    writer.indent();
+    writer.startLine("_stack.add(node);");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine("children(_stack.remove(_stack.size() - 1));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("protected void child(" + r + " parent, " + r + " child, int slot, int index) {");
+    writer.indent();
+    writer.startLine("if (_removing) {");
+    writer.indent();
+    writer.startLine("Entry e = _entries.get(child);");
+    writer.startLine("if (e != null && e.stamp != _generation) {");
+    writer.indent();
+    writer.startLine("delete(child, e);");
+    writer.startLine("_stack.add(child);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else if (!reach(child)) { _stack.add(child); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
@@ -52,7 +52,7 @@ public class NodeInterface extends NodeType {
   public boolean isAbstract() { return true; }
 
   public void output(ASTModel ast, Iterable<CodeGenerator> gens) {
-    TabPrintWriter writer = ast.options().createJavaSourceInOutDir(_name);
+    TabPrintWriter writer = ast.options().createNodeSourceInOutDir(_name);
 
     // Class header
     writer.startLine("@SuppressWarnings(\"unused\")");
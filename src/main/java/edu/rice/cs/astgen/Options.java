@@ -55,6 +55,15 @@ public class Options {
   /** Import statements to add to every generated class */
   public LinkedList<String> imports = new LinkedList<String>();
   
+  /** Derived attributes declared with the {@code attribute} directive */
+  public LinkedList<Attribute> attributes = new LinkedList<Attribute>();	///+ <CR026/>
+  
+  /**
+   * Directory in which the parsed declarations of included modules are cached, keyed by a digest
+   * of their content; if null, modules are always parsed
+   */
+  public String parseCacheDir = null;	///+ <CR027/>
+  
   /** Name of the generated visitor method in AST classes */
   public String visitMethod = "visit";
   
@@ -80,14 +89,94 @@ public class Options {
   public boolean generateVoidVisitors = true;
   public boolean generateSerializers = false;
   public boolean generateEmptyConstructor = false;
+  public boolean generateZippers = false;	///+ <CR005/>
+  public boolean generateKindTags = false;	///+ <CR006/>
+  public boolean generateComparators = false;	///+ <CR007/>
+  public boolean generateTreeDiffs = false;	///+ <CR008/>
+  public boolean generateDigests = false;	///+ <CR009/>
+  public boolean generateParentIndex = false;	///+ <CR010/>
+  public boolean generateNodeIndex = false;	///+ <CR011/>
+  public boolean generateQueries = false;	///+ <CR012/>
+  public boolean generateFocusedVisitors = false;	///+ <CR013/>
+  public boolean generateStatsWalkers = false;	///+ <CR014/>
+  public boolean generateLinearizations = false;	///+ <CR015/>
+  public boolean generateStreams = false;	///+ <CR016/>
+  public boolean generateDrafts = false;	///+ <CR017/>
+  public boolean generateJson = false;	///+ <CR018/>
+  public boolean generateExternalizable = false;	///+ <CR020/>
+  public boolean compactSequences = false;	///+ <CR022/>
+  public boolean generateStackSafeVisitors = false;	///+ <CR024/>
+  public boolean metadataSideTables = false;	///+ <CR025/>
+  public boolean lockFreeAttributes = false;	///+ <CR026/>
   
   /** Number of additional indentation spaces used to indicate a lower level in the hierarchy */
   public int tabSize = 2;
 
+  /**
+   * Maximum number of node types handled by each class of a generated visitor; a larger visitor is
+   * split into a chain of classes.  0 means no limit.
+   */
+  public int visitorShardSize = 0;	///+ <CR029/>
+
+  /**
+   * Maximum number of node types declared in each subpackage ({@code shard0}, {@code shard1}, ...)
+   * of the output package.  0 means all node types belong to the output package.
+   */
+  public int nodePackageShardSize = 0;	///+ <CR029/>
+
+  /** Files created in the output directory */
+  private final List<File> _outputFiles = new LinkedList<File>();	///+ <CR028/>
+
+  /** Subpackage of each node type assigned to a shard, in order of assignment */
+  private final Map<String, String> _nodeShards = new LinkedHashMap<String, String>();	///+ <CR029/>
+
   public Options(File basedir) {
     _basedir = basedir;
   }
 
+///+ <CR028>
+  /** The files created in the output directory so far, in order of creation. */
+  public List<File> outputFiles() {
+    return Collections.unmodifiableList(_outputFiles);
+  }
+///+ </CR028>
+
+///+ <CR029>
+  /**
+   * If {@code nodePackageShardSize} is set, assign the given node types, in order, to subpackages of
+   * {@code packageName}.  Every generated source file imports each node type from another package
+   * with a single-type import, so that, as in an unsharded package, node types take precedence over
+   * types imported on demand (such as {@code java.util.Map}).
+   */
+  public void assignNodeShards(Iterable<? extends NodeType> types) {
+    if (nodePackageShardSize == 0) { return; }
+    if (packageName.equals("")) {
+      throw new ASTGenException("nodePackageShardSize requires a package declaration");
+    }
+    int i = 0;
+    for (NodeType t : types) {
+      String shard = "shard" + (i / nodePackageShardSize);
+      _nodeShards.put(t.name(), shard);
+      i++;
+    }
+  }
+
+  /**
+   * Create a Java source file for the named node type, placing it in the subpackage assigned by
+   * {@link #assignNodeShards}, if any.
+   */
+  public TabPrintWriter createNodeSourceInOutDir(String name) {
+    String shard = _nodeShards.get(name);
+    if (shard == null) { return createJavaSourceInOutDir(name); }
+    new File(_outputDirFile(), shard).mkdir();
+    FileWriter f = createFileInOutDir(shard + File.separator + name + ".java");
+    TabPrintWriter result = new TabPrintWriter(f, tabSize);
+    result.println("package " + packageName + "." + shard + ";");
+    _outputImportStatements(result, shard);
+    return result;
+  }
+///+ </CR029>
+
   private File _outputDirFile() {
     return fileRelativeToSource(new File(outputDir));
   }
@@ -103,7 +192,9 @@ public class Options {
 
   public FileWriter createFileInOutDir(String fname) {
     try {
-      return new FileWriter(new File(_outputDirFile(), fname));
+      File f = new File(_outputDirFile(), fname);
+      _outputFiles.add(f);	///+ <CR028/>
+      return new FileWriter(f);
     } catch (IOException ioe) {
       throw new ASTGenException(ioe.toString());
     }
@@ -133,13 +224,31 @@ public class Options {
   }
 
   public void outputImportStatements(TabPrintWriter writer) {
+    _outputImportStatements(writer, null);	///+ <CR029/>
+  }
+
+  /** @param shard  The node subpackage of the file, or {@code null} for the output package */	///+ <CR029/>
+  private void _outputImportStatements(TabPrintWriter writer, String shard) {	///+ <CR029/>
     ListIterator itor = imports.listIterator();
     while (itor.hasNext()) {
       String imp = (String) itor.next();
       writer.startLine("import " + imp + ";");
     }
 
-    if (imports.size() > 0) {
+///+ <CR029>
+    if (shard != null) {
+      // the other generated classes remain in the output package
+      writer.startLine("import " + packageName + ".*;");
+    }
+    // single-type imports shadow on-demand imports, as the file's own package would
+    for (Map.Entry<String, String> e : _nodeShards.entrySet()) {
+      if (!e.getValue().equals(shard)) {
+        writer.startLine("import " + packageName + "." + e.getValue() + "." + e.getKey() + ";");
+      }
+    }
+///+ </CR029>
+
+    if (imports.size() > 0 || !_nodeShards.isEmpty()) {	///+ <CR029/>
       writer.println();
     }
   }
@@ -0,0 +1,369 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+/**
+ * Generates, for each root, an index mapping nodes to their parents.  The index is built in a
+ * single iterative traversal (using the enumerator generated by {@link ChildrenGenerator}) and
+ * stored in an open-addressing identity hash table made of parallel arrays, so that large trees
+ * do not require an entry object per node.  After a tree has been rewritten with shared,
+ * unchanged subtrees, the index can be updated in time proportional to the number of new and
+ * discarded nodes.
+ */
+public class ParentIndexGenerator extends VisitorGenerator {
+
+  public ParentIndexGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(ChildrenGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = r + "ParentIndex";
+    String children = ChildrenGenerator.childrenClassName(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * Maps each node of a " + r + " tree to its parent, the name of the parent's field that");
+    writer.startLine(" * holds it, and its index in that field (if the field is a sequence).  Lookups take");
+    writer.startLine(" * constant time.  Nodes are compared by identity, so equal subtrees at different");
+    writer.startLine(" * positions are distinguished; a tree that contains the same node object at two");
+    writer.startLine(" * positions is indexed at only one of them.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private static final int MIN_CAPACITY = 16;");
+    writer.println();
+    writer.startLine("// parallel arrays forming a linear-probing hash table keyed by node identity");
+    writer.startLine("private " + r + "[] _keys;");
+    writer.startLine("private " + r + "[] _parents;");
+    writer.startLine("private int[] _slots; // index into " + children + ".FIELD_NAMES, or -1");
+    writer.startLine("private int[] _indices; // sequence index, or -1");
+    writer.startLine("private int[] _stamps; // generation in which the entry was last touched");
+    writer.startLine("private int _size;");
+    writer.startLine("private int _generation;");
+    writer.startLine("private " + r + " _root;");
+    writer.startLine("private final Recorder _recorder = new Recorder();");
+    writer.println();
+
+    writer.startLine("/** Index the tree with the given root. */");
+    writer.startLine("public " + className + "(" + r + " root) {");
+    writer.indent();
+    writer.startLine("allocate(MIN_CAPACITY);");
+    writer.startLine("_root = root;");
+    writer.startLine("_generation = 1;");
+    writer.startLine("put(root, null, -1, -1);");
+    writer.startLine("_recorder.addSubtree(root, false);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The root of the indexed tree. */");
+    writer.startLine("public " + r + " root() { return _root; }");
+    writer.println();
+    writer.startLine("/** The number of indexed nodes. */");
+    writer.startLine("public int size() { return _size; }");
+    writer.println();
+    writer.startLine("/** Whether the given node is part of the indexed tree. */");
+    writer.startLine("public boolean contains(" + r + " node) { return find(node) >= 0; }");
+    writer.println();
+    writer.startLine("/** The parent of {@code node}, or {@code null} if it is the root or is not indexed. */");
+    writer.startLine("public " + r + " parent(" + r + " node) {");
+    writer.indent();
+    writer.startLine("int pos = find(node);");
+    writer.startLine("return (pos < 0) ? null : _parents[pos];");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The name of the parent's field holding {@code node}, or {@code null} if it is the root or is not indexed. */");
+    writer.startLine("public java.lang.String field(" + r + " node) {");
+    writer.indent();
+    writer.startLine("int pos = find(node);");
+    writer.startLine("return (pos < 0 || _slots[pos] < 0) ? null : " + children + ".FIELD_NAMES[_slots[pos]];");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The index of {@code node} in the parent's sequence field, or -1. */");
+    writer.startLine("public int index(" + r + " node) {");
+    writer.indent();
+    writer.startLine("int pos = find(node);");
+    writer.startLine("return (pos < 0) ? -1 : _indices[pos];");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The nearest proper ancestor of {@code node} that is an instance of {@code c}, or {@code null}. */");
+    writer.startLine("public <T> T enclosing(" + r + " node, java.lang.Class<T> c) {");
+    writer.indent();
+    writer.startLine(r + " current = parent(node);");
+    writer.startLine("while (current != null) {");
+    writer.indent();
+    writer.startLine("if (c.isInstance(current)) { return c.cast(current); }");
+    writer.startLine("current = parent(current);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Update the index to describe a new version of the tree, such as the result of an update");
+    writer.startLine(" * visitor, that shares unchanged subtrees with the indexed version.  Only new nodes are");
+    writer.startLine(" * traversed: a shared subtree is re-parented without visiting its interior.  Nodes of");
+    writer.startLine(" * the old version that are no longer part of the tree are then removed.");
+    writer.startLine(" */");
+    writer.startLine("public void update(" + r + " newRoot) {");
+    writer.indent();
+    writer.startLine(r + " oldRoot = _root;");
+    writer.startLine("if (newRoot == oldRoot) { return; }");
+    writer.startLine("_generation++;");
+    writer.startLine("_root = newRoot;");
+    writer.startLine("int pos = find(newRoot);");
+    writer.startLine("if (pos >= 0) { setEntry(pos, null, -1, -1); }");
+    writer.startLine("else { put(newRoot, null, -1, -1); _recorder.addSubtree(newRoot, true); }");
+    writer.startLine("_recorder.removeStale(oldRoot);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Records entries for children and removes stale subtrees, using an explicit stack. */");
+    writer.startLine("private final class Recorder extends " + children + " {");
+    writer.indent();
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("private boolean _updating;");
+    writer.startLine("private boolean _removing;");
+    writer.println();
+    writer.startLine("/** Index the descendants of {@code node}, which has already been recorded. */");
+    writer.startLine("void addSubtree(" + r + " node, boolean updating) {");
+    writer.indent();
+    writer.startLine("_updating = updating;");
+    writer.startLine("_removing = false;");
+    writer.startLine("run(node);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * Remove the nodes of the old tree that were not touched by the current update.  A node");
+    writer.startLine(" * that is still part of the tree was either touched or lies within a touched, shared");
+    writer.startLine(" * subtree, so the search stops at touched nodes.");
+    writer.startLine(" */");
+    writer.startLine("void removeStale(" + r + " oldRoot) {");
+    writer.indent();
+    writer.startLine("int pos = find(oldRoot);");
+    writer.startLine("if (pos < 0 || _stamps[pos] == _generation) { return; }");
+    writer.startLine("remove(pos);");
+    writer.startLine("_removing = true;");
+    writer.startLine("run(oldRoot);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void run(" + r + " node) {");
+    writer.indent();
+    writer.startLine("_stack.add(node);");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine("children(_stack.remove(_stack.size() - 1));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("protected void child(" + r + " parent, " + r + " child, int slot, int index) {");
+    writer.indent();
+    writer.startLine("int pos = find(child);");
+    writer.startLine("if (_removing) {");
+    writer.indent();
+    writer.startLine("if (pos >= 0 && _stamps[pos] != _generation && _parents[pos] == parent) {");
+    writer.indent();
+    writer.startLine("remove(pos);");
+    writer.startLine("_stack.add(child);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else if (pos >= 0 && _updating) {");
+    writer.indent();
+    writer.startLine("// a shared subtree: its interior is unchanged");
+    writer.startLine("setEntry(pos, parent, slot, index);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else if (pos < 0) {");
+    writer.indent();
+    writer.startLine("put(child, parent, slot, index);");
+    writer.startLine("_stack.add(child);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    outputIdentityTable(writer, r);
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  private void outputIdentityTable(TabPrintWriter writer, String r) {
+    writer.startLine("private void allocate(int capacity) {");
+    writer.indent();
+    writer.startLine("_keys = new " + r + "[capacity];");
+    writer.startLine("_parents = new " + r + "[capacity];");
+    writer.startLine("_slots = new int[capacity];");
+    writer.startLine("_indices = new int[capacity];");
+    writer.startLine("_stamps = new int[capacity];");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private static int hash(java.lang.Object key, int mask) {");
+    writer.indent();
+    writer.startLine("int h = java.lang.System.identityHashCode(key);");
+    writer.startLine("h ^= (h >>> 16);");
+    writer.startLine("return (h * 0x9E3779B9) & mask;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The table position of {@code key}, or -1. */");
+    writer.startLine("private int find(" + r + " key) {");
+    writer.indent();
+    writer.startLine("if (key == null) { return -1; }");
+    writer.startLine("int mask = _keys.length - 1;");
+    writer.startLine("for (int pos = hash(key, mask); _keys[pos] != null; pos = (pos + 1) & mask) {");
+    writer.indent();
+    writer.startLine("if (_keys[pos] == key) { return pos; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return -1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void setEntry(int pos, " + r + " parent, int slot, int index) {");
+    writer.indent();
+    writer.startLine("_parents[pos] = parent;");
+    writer.startLine("_slots[pos] = slot;");
+    writer.startLine("_indices[pos] = index;");
+    writer.startLine("_stamps[pos] = _generation;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Add an entry for {@code key}, which must not already be present. */");
+    writer.startLine("private void put(" + r + " key, " + r + " parent, int slot, int index) {");
+    writer.indent();
+    writer.startLine("if (3 * (_size + 1) > 2 * _keys.length) { rehash(_keys.length * 2); }");
+    writer.startLine("int mask = _keys.length - 1;");
+    writer.startLine("int pos = hash(key, mask);");
+    writer.startLine("while (_keys[pos] != null) { pos = (pos + 1) & mask; }");
+    writer.startLine("_keys[pos] = key;");
+    writer.startLine("setEntry(pos, parent, slot, index);");
+    writer.startLine("_size++;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Remove the entry at {@code pos}, shifting later entries of the probe sequence back. */");
+    writer.startLine("private void remove(int pos) {");
+    writer.indent();
+    writer.startLine("int mask = _keys.length - 1;");
+    writer.startLine("int hole = pos;");
+    writer.startLine("for (int next = (hole + 1) & mask; _keys[next] != null; next = (next + 1) & mask) {");
+    writer.indent();
+    writer.startLine("int home = hash(_keys[next], mask);");
+    writer.startLine("// move the entry at next into the hole if its home is not cyclically in (hole, next]");
+    writer.startLine("if (((next - home) & mask) >= ((next - hole) & mask)) {");
+    writer.indent();
+    writer.startLine("_keys[hole] = _keys[next];");
+    writer.startLine("_parents[hole] = _parents[next];");
+    writer.startLine("_slots[hole] = _slots[next];");
+    writer.startLine("_indices[hole] = _indices[next];");
+    writer.startLine("_stamps[hole] = _stamps[next];");
+    writer.startLine("hole = next;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_keys[hole] = null;");
+    writer.startLine("_parents[hole] = null;");
+    writer.startLine("_size--;");
+    writer.startLine("if (_keys.length > MIN_CAPACITY && 8 * _size < _keys.length) { rehash(_keys.length / 2); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void rehash(int capacity) {");
+    writer.indent();
+    writer.startLine(r + "[] keys = _keys;");
+    writer.startLine(r + "[] parents = _parents;");
+    writer.startLine("int[] slots = _slots;");
+    writer.startLine("int[] indices = _indices;");
+    writer.startLine("int[] stamps = _stamps;");
+    writer.startLine("allocate(capacity);");
+    writer.startLine("int mask = capacity - 1;");
+    writer.startLine("for (int i = 0; i < keys.length; i++) {");
+    writer.indent();
+    writer.startLine("if (keys[i] != null) {");
+    writer.indent();
+    writer.startLine("int pos = hash(keys[i], mask);");
+    writer.startLine("while (_keys[pos] != null) { pos = (pos + 1) & mask; }");
+    writer.startLine("_keys[pos] = keys[i];");
+    writer.startLine("_parents[pos] = parents[i];");
+    writer.startLine("_slots[pos] = slots[i];");
+    writer.startLine("_indices[pos] = indices[i];");
+    writer.startLine("_stamps[pos] = stamps[i];");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+}
@@ -0,0 +1,248 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Produces the primitive list classes ({@code IntList}, {@code LongList}, and {@code DoubleList})
+ * used by fields of the AST.  These are immutable lists backed by exact-size primitive arrays, so
+ * that numeric-heavy nodes can be built, traversed, and compared without boxing.  Generated code
+ * accumulates elements with the nested {@code Builder} class and iterates over {@code backingArray()}.
+ */
+public class PrimitiveListGenerator extends CodeGenerator {
+
+  public PrimitiveListGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return IterUtil.empty();
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  public void generateAdditionalCode() {
+    final Map<String, PrimitiveSequenceClassName> used = new TreeMap<String, PrimitiveSequenceClassName>();
+    TypeNameVisitor<Void> finder = new TypeNameVisitor<Void>() {
+      public Void forTreeNode(ClassName t) { return null; }
+      public Void forPrimitive(PrimitiveName t) { return null; }
+      public Void forString(ClassName t) { return null; }
+      public Void forPrimitiveArray(PrimitiveArrayName t) { return null; }
+      public Void forReferenceArray(ReferenceArrayName t) { return t.elementType().accept(this); }
+      public Void forSequenceClass(SequenceClassName t) {
+        if (t instanceof PrimitiveSequenceClassName) {
+          used.put(t.className(), (PrimitiveSequenceClassName) t);
+          return null;
+        }
+        return t.elementType().accept(this);
+      }
+      public Void forOptionClass(OptionClassName t) { return t.elementType().accept(this); }
+      public Void forTupleClass(TupleClassName t) {
+        for (TypeName eltT : t.elementTypes()) { eltT.accept(this); }
+        return null;
+      }
+      public Void forGeneralClass(ClassName t) { return null; }
+    };
+    for (NodeClass c : ast.classes()) {
+      for (Field f : c.declaredFields(ast)) { f.type().accept(finder); }
+    }
+    for (PrimitiveSequenceClassName t : used.values()) {
+      generateListClass(t);
+    }
+  }
+
+  /** Generate the given list class. */
+  protected void generateListClass(PrimitiveSequenceClassName t) {
+    String name = t.className();
+    String elt = t.elementType().name();
+    String boxed = t.elementType().boxed().name();
+    String array = elt + "[]";
+
+    TabPrintWriter writer = options.createJavaSourceInOutDir(name);
+    writer.startLine("/**");
+    writer.startLine(" * An immutable list of {@code " + elt + "} values, backed by an array of exactly the list's size.");
+    writer.startLine(" * Used in place of {@code java.util.List<" + boxed + ">} to avoid boxing.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + name + " implements java.io.Serializable, java.lang.Comparable<" + name + "> {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private static final " + array + " NO_ELEMENTS = new " + elt + "[0];");
+    writer.startLine("public static final " + name + " EMPTY = new " + name + "(NO_ELEMENTS);");
+    writer.println();
+    writer.startLine("private final " + array + " _elements;");
+    writer.println();
+    writer.startLine("private " + name + "(" + array + " elements) { _elements = elements; }");
+    writer.println();
+
+    writer.startLine("/** A list of the given elements.  The array is copied. */");
+    writer.startLine("public static " + name + " of(" + elt + "... elements) {");
+    writer.indent();
+    writer.startLine("return (elements.length == 0) ? EMPTY : new " + name + "(elements.clone());");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** A list of the given (non-null) boxed elements. */");
+    writer.startLine("public static " + name + " copyOf(java.lang.Iterable<? extends " + boxed + "> elements) {");
+    writer.indent();
+    writer.startLine("Builder result = new Builder();");
+    writer.startLine("for (" + boxed + " e : elements) { result.add(e); }");
+    writer.startLine("return result.build();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public int size() { return _elements.length; }");
+    writer.println();
+    writer.startLine("public boolean isEmpty() { return _elements.length == 0; }");
+    writer.println();
+    writer.startLine("public " + elt + " get(int i) { return _elements[i]; }");
+    writer.println();
+    writer.startLine("/** A copy of the elements. */");
+    writer.startLine("public " + array + " toArray() { return _elements.clone(); }");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * The array backing this list, for iteration without copying.  Callers must not");
+    writer.startLine(" * modify it.");
+    writer.startLine(" */");
+    writer.startLine("public " + array + " backingArray() { return _elements; }");
+    writer.println();
+
+    writer.startLine("/** A read-only view of this list with boxed elements. */");
+    writer.startLine("public java.util.List<" + boxed + "> asList() {");
+    writer.indent();
+    writer.startLine("return new java.util.AbstractList<" + boxed + ">() {");
+    writer.indent();
+    writer.startLine("public " + boxed + " get(int i) { return _elements[i]; }");
+    writer.startLine("public int size() { return _elements.length; }");
+    writer.unindent();
+    writer.startLine("};");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Lexicographic order; elements are compared as by {@code " + boxed + ".compare}. */");
+    writer.startLine("public int compareTo(" + name + " that) {");
+    writer.indent();
+    writer.startLine(array + " those = that._elements;");
+    writer.startLine("int length = java.lang.Math.min(_elements.length, those.length);");
+    writer.startLine("for (int i = 0; i < length; i++) {");
+    writer.indent();
+    if (elt.equals("double")) {
+      writer.startLine("int result = java.lang.Double.compare(_elements[i], those[i]);");
+      writer.startLine("if (result != 0) { return result; }");
+    } else {
+      writer.startLine("if (_elements[i] != those[i]) { return (_elements[i] < those[i]) ? -1 : 1; }");
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return (_elements.length == those.length) ? 0 : (_elements.length < those.length) ? -1 : 1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Elements are compared as by {@code " + boxed + ".equals}, as are primitive node fields. */");
+    writer.startLine("public boolean equals(java.lang.Object o) {");
+    writer.indent();
+    writer.startLine("if (this == o) { return true; }");
+    writer.startLine("if (!(o instanceof " + name + ")) { return false; }");
+    writer.startLine("return java.util.Arrays.equals(_elements, ((" + name + ") o)._elements);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public int hashCode() { return java.util.Arrays.hashCode(_elements); }");
+    writer.println();
+    writer.startLine("public java.lang.String toString() { return java.util.Arrays.toString(_elements); }");
+    writer.println();
+
+    writer.startLine("/** Accumulates elements for a new list.  Unless full, the array is trimmed by {@link #build}. */");
+    writer.startLine("public static final class Builder {");
+    writer.indent();
+    writer.startLine("private " + array + " _elements;");
+    writer.startLine("private int _size = 0;");
+    writer.println();
+    writer.startLine("public Builder() { this(8); }");
+    writer.println();
+    writer.startLine("/** @param capacity  The expected number of elements. */");
+    writer.startLine("public Builder(int capacity) { _elements = (capacity == 0) ? NO_ELEMENTS : new " + elt + "[capacity]; }");
+    writer.println();
+    writer.startLine("public Builder add(" + elt + " e) {");
+    writer.indent();
+    writer.startLine("if (_size == _elements.length) {");
+    writer.indent();
+    writer.startLine("_elements = java.util.Arrays.copyOf(_elements, java.lang.Math.max(8, _size * 2));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_elements[_size++] = e;");
+    writer.startLine("return this;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public int size() { return _size; }");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * A list of the elements added so far.  If the array is full, it is shared with the result;");
+    writer.startLine(" * since any later addition grows (and thus copies) the array, the result is unaffected.");
+    writer.startLine(" */");
+    writer.startLine("public " + name + " build() {");
+    writer.indent();
+    writer.startLine("if (_size == 0) { return EMPTY; }");
+    writer.startLine("if (_size == _elements.length) { return new " + name + "(_elements); }");
+    writer.startLine("return new " + name + "(java.util.Arrays.copyOf(_elements, _size));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
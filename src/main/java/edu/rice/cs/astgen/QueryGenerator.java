@@ -0,0 +1,203 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+/**
+ * Generates, for each root, short-circuiting search methods ({@code anyMatch},
+ * {@code findFirst}, {@code findAll}) that can prune subtrees and stop early.  Searches skip
+ * fields whose declared types cannot lead to an instance of the target class, using the table
+ * generated by {@link ReachabilityGenerator}.
+ */
+public class QueryGenerator extends VisitorGenerator {
+
+  public QueryGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(ReachabilityGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    generateQuery(root);
+  }
+
+  protected void generateQuery(NodeType root) {
+    String r = root.name();
+    String className = r + "Query";
+    String children = ChildrenGenerator.childrenClassName(root);
+    String reach = ReachabilityGenerator.reachabilityClassName(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * Searches of " + r + " trees for instances of a class satisfying a predicate.  Nodes are");
+    writer.startLine(" * tested in preorder (in declaration order of fields); a search stops as soon as its");
+    writer.startLine(" * result is known.  Subtrees that cannot contain an instance of the target class are");
+    writer.startLine(" * skipped, as are those whose root satisfies the optional {@code prune} predicate.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+
+    String pred = "java.util.function.Predicate";
+    String pruneParam = pred + "<? super " + r + "> prune";
+    writer.startLine("/** Whether {@code root} or one of its descendants is an instance of {@code c} satisfying {@code p}. */");
+    writer.startLine("public static <T> boolean anyMatch(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p) {");
+    writer.indent();
+    writer.startLine("return new Search<T>(c, p, null, false).run(root);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Like {@link #anyMatch(" + r + ", java.lang.Class, " + pred + ")}, ignoring nodes that satisfy {@code prune} and their subtrees. */");
+    writer.startLine("public static <T> boolean anyMatch(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p, ");
+    writer.print(pruneParam + ") {");
+    writer.indent();
+    writer.startLine("return new Search<T>(c, p, prune, false).run(root);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The first instance of {@code c} satisfying {@code p}, in preorder, or {@code null}. */");
+    writer.startLine("public static <T> T findFirst(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p) {");
+    writer.indent();
+    writer.startLine("Search<T> s = new Search<T>(c, p, null, false);");
+    writer.startLine("return s.run(root) ? s._results.get(0) : null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Like {@link #findFirst(" + r + ", java.lang.Class, " + pred + ")}, ignoring nodes that satisfy {@code prune} and their subtrees. */");
+    writer.startLine("public static <T> T findFirst(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p, ");
+    writer.print(pruneParam + ") {");
+    writer.indent();
+    writer.startLine("Search<T> s = new Search<T>(c, p, prune, false);");
+    writer.startLine("return s.run(root) ? s._results.get(0) : null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** All instances of {@code c} satisfying {@code p}, in preorder. */");
+    writer.startLine("public static <T> java.util.List<T> findAll(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p) {");
+    writer.indent();
+    writer.startLine("Search<T> s = new Search<T>(c, p, null, true);");
+    writer.startLine("s.run(root);");
+    writer.startLine("return s._results;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Like {@link #findAll(" + r + ", java.lang.Class, " + pred + ")}, ignoring nodes that satisfy {@code prune} and their subtrees. */");
+    writer.startLine("public static <T> java.util.List<T> findAll(" + r + " root, java.lang.Class<T> c, " + pred + "<? super T> p, ");
+    writer.print(pruneParam + ") {");
+    writer.indent();
+    writer.startLine("Search<T> s = new Search<T>(c, p, prune, true);");
+    writer.startLine("s.run(root);");
+    writer.startLine("return s._results;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static final class Search<T> extends " + children + " {");
+    writer.indent();
+    writer.startLine("private final java.lang.Class<T> _c;");
+    writer.startLine("private final " + pred + "<? super T> _p;");
+    writer.startLine("private final " + pruneParam.replace(" prune", " _prune") + "; // may be null");
+    writer.startLine("private final boolean _all;");
+    writer.startLine("private final boolean[] _mask;");
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("final java.util.List<T> _results = new java.util.ArrayList<T>();");
+    writer.println();
+    writer.startLine("Search(java.lang.Class<T> c, " + pred + "<? super T> p, " + pruneParam + ", boolean all) {");
+    writer.indent();
+    writer.startLine("_c = c;");
+    writer.startLine("_p = p;");
+    writer.startLine("_prune = prune;");
+    writer.startLine("_all = all;");
+    writer.startLine("_mask = " + reach + ".sharedFieldMask(c);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Search the tree; true if a match was found. */");
+    writer.startLine("boolean run(" + r + " root) {");
+    writer.indent();
+    writer.startLine("if (root != null) { _stack.add(root); }");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine(r + " node = _stack.remove(_stack.size() - 1);");
+    writer.startLine("if (_prune != null && _prune.test(node)) { continue; }");
+    writer.startLine("if (_c.isInstance(node)) {");
+    writer.indent();
+    writer.startLine("T match = _c.cast(node);");
+    writer.startLine("if (_p.test(match)) {");
+    writer.indent();
+    writer.startLine("_results.add(match);");
+    writer.startLine("if (!_all) { return true; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int mark = _stack.size();");
+    writer.startLine("children(node);");
+    writer.startLine("java.util.Collections.reverse(_stack.subList(mark, _stack.size()));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return !_results.isEmpty();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("protected void child(" + r + " parent, " + r + " child, int slot, int index) {");
+    writer.indent();
+    writer.startLine("if (_mask[slot]) { _stack.add(child); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
@@ -0,0 +1,131 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+
+/**
+ * A static analysis of a root's hierarchy determining which concrete classes can occur in the
+ * subtrees held by each field.  Concrete classes are numbered in declaration order and fields
+ * are numbered by slot (see {@link ChildrenGenerator#slots}).
+ */
+public class Reachability {
+
+  private final ASTModel _ast;
+  private final NodeType _root;
+  private final List<NodeType> _concrete;
+  private final List<Map.Entry<NodeType, Field>> _slots;
+  private final List<BitSet> _slotReach;
+
+  public Reachability(ASTModel ast, NodeType root) {
+    _ast = ast;
+    _root = root;
+    _concrete = new ArrayList<NodeType>();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) { _concrete.add(t); }
+    }
+    _slots = ChildrenGenerator.slots(ast, root);
+
+    // below.get(i): the concrete classes that can occur strictly below an instance of _concrete.get(i)
+    List<BitSet> below = new ArrayList<BitSet>();
+    for (int i = 0; i < _concrete.size(); i++) { below.add(new BitSet()); }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Map.Entry<NodeType, Field> slot : _slots) {
+        BitSet reach = reachFrom(ChildrenGenerator.childTypes(ast, root, slot.getValue().type()), below);
+        BitSet parentBelow = below.get(_concrete.indexOf(slot.getKey()));
+        int before = parentBelow.cardinality();
+        parentBelow.or(reach);
+        if (parentBelow.cardinality() != before) { changed = true; }
+      }
+    }
+    _slotReach = new ArrayList<BitSet>();
+    for (Map.Entry<NodeType, Field> slot : _slots) {
+      _slotReach.add(reachFrom(ChildrenGenerator.childTypes(ast, root, slot.getValue().type()), below));
+    }
+  }
+
+  /** The concrete classes that can be instances of one of {@code ts}, or occur below such an instance. */
+  private BitSet reachFrom(Iterable<NodeType> ts, List<BitSet> below) {
+    BitSet result = new BitSet();
+    for (NodeType t : ts) { result.or(concreteSubtypes(t)); }
+    BitSet subtypes = (BitSet) result.clone();
+    for (int i = subtypes.nextSetBit(0); i >= 0; i = subtypes.nextSetBit(i+1)) {
+      result.or(below.get(i));
+    }
+    return result;
+  }
+
+  /** The concrete descendants of the root, in numbering order. */
+  public List<NodeType> concreteTypes() {
+    return Collections.unmodifiableList(_concrete);
+  }
+
+  /** The concrete classes (by number) that are subtypes of {@code t}. */
+  public BitSet concreteSubtypes(NodeType t) {
+    BitSet result = new BitSet();
+    for (int i = 0; i < _concrete.size(); i++) {
+      if (_ast.supertypes(_concrete.get(i)).contains(t)) { result.set(i); }
+    }
+    return result;
+  }
+
+  /** The number of slots. */
+  public int slotCount() {
+    return _slots.size();
+  }
+
+  /** The concrete classes (by number) that can occur in the subtrees held by the given slot. */
+  public BitSet slotReach(int slot) {
+    return (BitSet) _slotReach.get(slot).clone();
+  }
+
+  /** A Java expression for a {@code long[]} literal encoding the given set. */
+  public String bitsLiteral(BitSet bits) {
+    int words = (_concrete.size() + 63) / 64;
+    StringBuilder result = new StringBuilder("{ ");
+    for (int w = 0; w < words; w++) {
+      long word = 0;
+      for (int b = 0; b < 64; b++) {
+        if (bits.get(w*64 + b)) { word |= (1L << b); }
+      }
+      if (w > 0) { result.append(", "); }
+      result.append("0x").append(Long.toHexString(word)).append("L");
+    }
+    return result.append(" }").toString();
+  }
+
+}
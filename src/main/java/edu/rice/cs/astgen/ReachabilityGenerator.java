@@ -0,0 +1,159 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+
+/**
+ * Generates, for each root, tables describing which concrete classes can occur in the subtrees
+ * held by each field, as computed by {@link Reachability}.  Searches and focused visitors use
+ * these tables to skip fields that cannot lead to the classes they are interested in.
+ */
+public class ReachabilityGenerator extends VisitorGenerator {
+
+  public ReachabilityGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  public static String reachabilityClassName(NodeType root) {
+    return root.name() + "Reachability";
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(ChildrenGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = reachabilityClassName(root);
+    String children = ChildrenGenerator.childrenClassName(root);
+    Reachability reach = new Reachability(ast, root);
+    List<NodeType> concrete = reach.concreteTypes();
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * Statically computed tables describing which concrete classes can occur in the subtrees");
+    writer.startLine(" * held by each field (identified by its slot in {@link " + children + "}).");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+    writer.startLine("private static final java.lang.Class<?>[] CONCRETE_CLASSES = {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine(concrete.get(i).name() + ".class" + (i+1 < concrete.size() ? "," : ""));
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("/** For each slot, a bit set (indexed as CONCRETE_CLASSES) of the classes that may occur below it. */");
+    writer.startLine("private static final long[][] FIELD_REACH = {");
+    writer.indent();
+    List<Map.Entry<NodeType, Field>> slots = ChildrenGenerator.slots(ast, root);
+    for (int i = 0; i < slots.size(); i++) {
+      writer.startLine(reach.bitsLiteral(reach.slotReach(i)) + (i+1 < slots.size() ? "," : ""));
+      writer.print(" // " + slots.get(i).getKey().name() + "." + slots.get(i).getValue().name());
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("private static final java.util.concurrent.ConcurrentHashMap<java.lang.Class<?>, boolean[]> MASKS =");
+    writer.print(" new java.util.concurrent.ConcurrentHashMap<java.lang.Class<?>, boolean[]>();");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * For each slot, whether the subtrees it holds may contain an instance of one of the given");
+    writer.startLine(" * classes.  A search for those classes need not traverse slots mapped to {@code false}.");
+    writer.startLine(" */");
+    writer.startLine("public static boolean[] fieldMask(java.lang.Class<?>... targets) {");
+    writer.indent();
+    writer.startLine("long[] matching = new long[(CONCRETE_CLASSES.length + 63) / 64];");
+    writer.startLine("for (int i = 0; i < CONCRETE_CLASSES.length; i++) {");
+    writer.indent();
+    writer.startLine("for (java.lang.Class<?> target : targets) {");
+    writer.indent();
+    writer.startLine("if (target.isAssignableFrom(CONCRETE_CLASSES[i])) { matching[i >>> 6] |= 1L << i; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("boolean[] result = new boolean[FIELD_REACH.length];");
+    writer.startLine("for (int slot = 0; slot < FIELD_REACH.length; slot++) {");
+    writer.indent();
+    writer.startLine("for (int w = 0; w < matching.length; w++) {");
+    writer.indent();
+    writer.startLine("if ((FIELD_REACH[slot][w] & matching[w]) != 0) { result[slot] = true; break; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** A cached {@code fieldMask(target)}, shared between callers: it must not be modified. */");
+    writer.startLine("static boolean[] sharedFieldMask(java.lang.Class<?> target) {");
+    writer.indent();
+    writer.startLine("boolean[] result = MASKS.get(target);");
+    writer.startLine("if (result == null) {");
+    writer.indent();
+    writer.startLine("result = fieldMask(target);");
+    writer.startLine("MASKS.putIfAbsent(target, result);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
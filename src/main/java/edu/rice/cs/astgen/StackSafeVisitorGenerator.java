@@ -0,0 +1,556 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.lambda.Lambda;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Produces variants of the depth-first visitors that visit children from an explicit work stack
+ * rather than by Java recursion, so that arbitrarily deep trees can be visited.  Each node's
+ * children are scheduled by its {@code forCASE} method; after they have been visited, the results
+ * (which are kept on a stack as well) are reassembled into the shapes passed to {@code forCASEOnly}.
+ */
+public class StackSafeVisitorGenerator extends DepthFirstVisitorGenerator {
+
+  private Set<TypeName> _stackHelpers; // composite types that need schedule and collect helpers
+
+  public StackSafeVisitorGenerator(ASTModel ast) {
+    super(ast);
+    _stackHelpers = new LinkedHashSet<TypeName>();
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    if (options.generateVoidVisitors) {
+      return IterUtil.<Class<? extends CodeGenerator>>make(DepthFirstVisitorGenerator.class,
+                                                           DepthFirstVoidVisitorGenerator.class);
+    } else {
+      return singleDependency(DepthFirstVisitorGenerator.class);
+    }
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    generateValueVisitor(root);
+    if (options.generateVoidVisitors) { generateVoidVisitor(root); }
+  }
+
+  /** The concrete descendants of {@code root} that have children. */
+  private List<NodeType> casesWithChildren(NodeType root) {
+    List<NodeType> result = new ArrayList<NodeType>();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract() && !IterUtil.isEmpty(childFields(t, root))) { result.add(t); }
+    }
+    return result;
+  }
+
+  private List<Field> childFields(NodeType t, NodeType root) {
+    List<Field> result = new ArrayList<Field>();
+    for (Field f : t.allFields(ast)) {
+      if (canRecurOn(f.type(), root)) { result.add(f); }
+    }
+    return result;
+  }
+
+  /**
+   * An expression processing the children in a value of type {@code t}: tree nodes are handled by
+   * {@code nodeExpr}, and composites by a helper named {@code prefix} followed by the type's identifier.
+   */
+  private Option<String> stackExpression(TypeName t, String valExpr, NodeType root,
+                                         final String prefix, final Lambda<String, String> nodeExpr) {
+    return t.accept(new RecurExpressionVisitor(valExpr, root, false) {
+      @Override
+      public Option<String> forTreeNode(ClassName t) {
+        NodeType nodeType = ast.typeForName(t).unwrap();
+        if (ast.isDescendent(_root, nodeType)) {
+          return Option.some(nodeExpr.value(_valExpr));
+        } else {
+          return Option.none();
+        }
+      }
+
+      @Override
+      protected Option<String> handleType(TypeName t, boolean recur) {
+        if (recur) {
+          _stackHelpers.add(t);
+          return Option.some(prefix + t.identifierName() + "(" + _valExpr + ")");
+        } else {
+          return Option.none();
+        }
+      }
+    });
+  }
+
+  private String scheduleExpression(TypeName t, String valExpr, NodeType root) {
+    return stackExpression(t, valExpr, root, "schedule", new Lambda<String, String>() {
+      public String value(String nodeExpr) { return "schedule(" + nodeExpr + ")"; }
+    }).unwrap();
+  }
+
+  private String collectExpression(TypeName t, String valExpr, NodeType root) {
+    return stackExpression(t, valExpr, root, "collect", new Lambda<String, String>() {
+      public String value(String nodeExpr) { return "nextResult()"; }
+    }).unwrap();
+  }
+
+  protected void generateValueVisitor(NodeType root) {
+    String visitorName = root.name() + "StackSafeDepthFirstVisitor";
+    String r = root.name();
+    List<NodeType> cases = casesWithChildren(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+
+    writer.startLine("/** A depth-first visitor over " + r + " that returns a value, and that does not");
+    writer.print(" overflow the Java stack on deep trees.");
+    writer.startLine(" ** Children are visited from an explicit work stack: for a node with children, forCASE()");
+    writer.startLine(" ** schedules the children's visits and returns a placeholder; once the children have been");
+    writer.startLine(" ** visited, forCASEOnly() is called with their results, as in " + r + "DepthFirstVisitor.");
+    writer.startLine(" ** An override of forCASE() may produce a result without recurring, or may perform some work");
+    writer.startLine(" ** and then return super.forCASE(that), in which case the result of forCASEOnly() is used.");
+    writer.startLine(" ** Instances hold the state of a traversal, so they should not be shared between threads.");
+    writer.startLine(" **/");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public abstract class " + visitorName + "<RetType> extends " + r + "DepthFirstVisitor<RetType> {");
+    writer.indent();
+    writer.println();
+    outputStackFields(writer, r);
+    writer.startLine("private java.lang.Object[] _results = new java.lang.Object[32];");
+    writer.startLine("private int _resultsSize = 0;");
+    writer.startLine("/** Position of the next result to be collected by a finishing node. */");
+    writer.startLine("private int _cursor = 0;");
+    writer.println();
+
+    for (int i = 0; i < cases.size(); i++) {
+      NodeType t = cases.get(i);
+      outputForCaseHeader(t, writer, "RetType", "");
+      writer.indent();
+      writer.startLine("if (_dispatched != that) { return recur(that); }");
+      writer.startLine("scheduleFinish(" + i + ", that);");
+      for (Field f : childFields(t, root)) {
+        writer.startLine(scheduleExpression(f.type(), "that." + f.getGetterName() + "()", root) + ";");
+      }
+      writer.startLine("endSchedule();");
+      writer.startLine("return null;");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+
+    writer.startLine("@Override");
+    writer.startLine("public RetType recur(" + r + " that) {");
+    writer.indent();
+    writer.startLine(r + " dispatched = _dispatched;");
+    writer.startLine("int workBase = _workSize;");
+    writer.startLine("int resultsBase = _resultsSize;");
+    writer.startLine("try {");
+    writer.indent();
+    writer.startLine("schedule(that);");
+    writer.startLine("while (_workSize > workBase) {");
+    writer.indent();
+    writer.startLine("int top = --_workSize;");
+    writer.startLine(r + " node = _work[top];");
+    writer.startLine("int kind = _workKinds[top];");
+    writer.startLine("_work[top] = null;");
+    writer.startLine("if (kind == VISIT) {");
+    writer.indent();
+    writer.startLine("_dispatched = node;");
+    writer.startLine("RetType result = node." + options.visitMethod + "(this);");
+    writer.startLine("if (_dispatched == node) { _dispatched = null; pushResult(result); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else {");
+    writer.indent();
+    writer.startLine("int base = _workBases[top];");
+    writer.startLine("_cursor = base;");
+    writer.startLine("RetType result = finish(kind, node);");
+    writer.startLine("popResults(base);");
+    writer.startLine("pushResult(result);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_cursor = resultsBase;");
+    writer.startLine("return nextResult();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("finally {");
+    writer.indent();
+    writer.startLine("_dispatched = dispatched;");
+    writer.startLine("popWork(workBase);");
+    writer.startLine("popResults(resultsBase);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Call forCASEOnly() for a node whose children have been visited. */");
+    writer.startLine("private RetType finish(int kind, " + r + " node) {");
+    writer.indent();
+    writer.startLine("switch (kind) {");
+    writer.indent();
+    for (int i = 0; i < cases.size(); i++) {
+      NodeType t = cases.get(i);
+      writer.startLine("case " + i + ": {");
+      writer.indent();
+      writer.startLine(t.name() + " that = (" + t.name() + ") node;");
+      List<String> results = new ArrayList<String>();
+      for (Field f : childFields(t, root)) {
+        String var = f.name() + "_result";
+        writer.startLine(resultType(f.type()).name() + " " + var + " = ");
+        writer.print(collectExpression(f.type(), "that." + f.getGetterName() + "()", root) + ";");
+        results.add(var);
+      }
+      writer.startLine("return " + visitorMethodName(t) + "Only(that, " + IterUtil.toString(results, "", ", ", "") + ");");
+      writer.unindent();
+      writer.startLine("}");
+    }
+    writer.startLine("default: throw new java.lang.IllegalStateException(\"Unexpected kind: \" + kind);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    outputStackMethods(writer, r, "_resultsSize");
+
+    writer.startLine("private void pushResult(RetType result) {");
+    writer.indent();
+    writer.startLine("if (_resultsSize == _results.length) {");
+    writer.indent();
+    writer.startLine("_results = java.util.Arrays.copyOf(_results, _resultsSize * 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_results[_resultsSize++] = result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void popResults(int size) {");
+    writer.indent();
+    writer.startLine("while (_resultsSize > size) { _results[--_resultsSize] = null; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("@SuppressWarnings(\"unchecked\")");
+    writer.startLine("private RetType nextResult() {");
+    writer.indent();
+    writer.startLine("return (RetType) _results[_cursor++];");
+    writer.unindent();
+    writer.startLine("}");
+
+    for (TypeName t : _stackHelpers) {
+      writer.println();
+      generateScheduleHelper(t, writer, root);
+      writer.println();
+      generateCollectHelper(t, writer, root);
+    }
+    _stackHelpers.clear();
+    clearArraySeeds();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  protected void generateVoidVisitor(NodeType root) {
+    String visitorName = root.name() + "StackSafeDepthFirstVisitor_void";
+    String r = root.name();
+    List<NodeType> cases = casesWithChildren(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
+
+    writer.startLine("/** A depth-first visitor over " + r + " that does not return a value, and that does");
+    writer.print(" not overflow the Java stack on deep trees.");
+    writer.startLine(" ** Children are visited from an explicit work stack: for a node with children, forCASE()");
+    writer.startLine(" ** calls forCASEDoFirst() and schedules the children's visits; once the children have been");
+    writer.startLine(" ** visited, forCASEOnly() is called, as in " + r + "DepthFirstVisitor_void.");
+    writer.startLine(" ** Instances hold the state of a traversal, so they should not be shared between threads.");
+    writer.startLine(" **/");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public class " + visitorName + " extends " + r + "DepthFirstVisitor_void {");
+    writer.indent();
+    writer.println();
+    outputStackFields(writer, r);
+
+    for (int i = 0; i < cases.size(); i++) {
+      NodeType t = cases.get(i);
+      outputForCaseHeader(t, writer, "void", "");
+      writer.indent();
+      writer.startLine("if (_dispatched != that) { recur(that); return; }");
+      writer.startLine(visitorMethodName(t) + "DoFirst(that);");
+      writer.startLine("scheduleFinish(" + i + ", that);");
+      for (Field f : childFields(t, root)) {
+        writer.startLine(scheduleExpression(f.type(), "that." + f.getGetterName() + "()", root) + ";");
+      }
+      writer.startLine("endSchedule();");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+
+    writer.startLine("@Override");
+    writer.startLine("public void recur(" + r + " that) {");
+    writer.indent();
+    writer.startLine(r + " dispatched = _dispatched;");
+    writer.startLine("int workBase = _workSize;");
+    writer.startLine("try {");
+    writer.indent();
+    writer.startLine("schedule(that);");
+    writer.startLine("while (_workSize > workBase) {");
+    writer.indent();
+    writer.startLine("int top = --_workSize;");
+    writer.startLine(r + " node = _work[top];");
+    writer.startLine("int kind = _workKinds[top];");
+    writer.startLine("_work[top] = null;");
+    writer.startLine("if (kind == VISIT) {");
+    writer.indent();
+    writer.startLine("_dispatched = node;");
+    writer.startLine("node." + options.visitMethod + "(this);");
+    writer.startLine("_dispatched = null;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else { finish(kind, node); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("finally {");
+    writer.indent();
+    writer.startLine("_dispatched = dispatched;");
+    writer.startLine("popWork(workBase);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Call forCASEOnly() for a node whose children have been visited. */");
+    writer.startLine("private void finish(int kind, " + r + " node) {");
+    writer.indent();
+    writer.startLine("switch (kind) {");
+    writer.indent();
+    for (int i = 0; i < cases.size(); i++) {
+      NodeType t = cases.get(i);
+      writer.startLine("case " + i + ": " + visitorMethodName(t) + "Only((" + t.name() + ") node); break;");
+    }
+    writer.startLine("default: throw new java.lang.IllegalStateException(\"Unexpected kind: \" + kind);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    outputStackMethods(writer, r, "0");
+
+    for (TypeName t : _stackHelpers) {
+      writer.println();
+      generateScheduleHelper(t, writer, root);
+    }
+    _stackHelpers.clear();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** Fields representing the work stack, shared by both kinds of visitor. */
+  private void outputStackFields(TabPrintWriter writer, String r) {
+    writer.startLine("/** Kind of work items that visit a node; other items finish a node of the given kind. */");
+    writer.startLine("private static final int VISIT = -1;");
+    writer.println();
+    writer.startLine("private " + r + "[] _work = new " + r + "[32];");
+    writer.startLine("private int[] _workKinds = new int[32];");
+    writer.startLine("private int[] _workBases = new int[32];");
+    writer.startLine("private int _workSize = 0;");
+    writer.startLine("/** Start of the children scheduled by the current forCASE() call. */");
+    writer.startLine("private int _scheduleStart = 0;");
+    writer.startLine("/** The node being dispatched from the work stack, until its forCASE() schedules its children. */");
+    writer.startLine("private " + r + " _dispatched = null;");
+    writer.println();
+  }
+
+  /**
+   * Methods manipulating the work stack, shared by both kinds of visitor.
+   * @param resultsBase  Expression for the base of a finishing node's results
+   */
+  private void outputStackMethods(TabPrintWriter writer, String r, String resultsBase) {
+    writer.startLine("private void push(" + r + " node, int kind, int base) {");
+    writer.indent();
+    writer.startLine("if (_workSize == _work.length) {");
+    writer.indent();
+    writer.startLine("_work = java.util.Arrays.copyOf(_work, _workSize * 2);");
+    writer.startLine("_workKinds = java.util.Arrays.copyOf(_workKinds, _workSize * 2);");
+    writer.startLine("_workBases = java.util.Arrays.copyOf(_workBases, _workSize * 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_work[_workSize] = node;");
+    writer.startLine("_workKinds[_workSize] = kind;");
+    writer.startLine("_workBases[_workSize] = base;");
+    writer.startLine("_workSize++;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private void popWork(int size) {");
+    writer.indent();
+    writer.startLine("while (_workSize > size) { _work[--_workSize] = null; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Schedule a visit to a child. */");
+    writer.startLine("private void schedule(" + r + " child) { push(child, VISIT, 0); }");
+    writer.println();
+    writer.startLine("/** Schedule the completion of the node being dispatched, before scheduling its children. */");
+    writer.startLine("private void scheduleFinish(int kind, " + r + " node) {");
+    writer.indent();
+    writer.startLine("_dispatched = null;");
+    writer.startLine("push(node, kind, " + resultsBase + ");");
+    writer.startLine("_scheduleStart = _workSize;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** Reverse the children just scheduled, so that they are visited in order. */");
+    writer.startLine("private void endSchedule() {");
+    writer.indent();
+    writer.startLine("for (int i = _scheduleStart, j = _workSize - 1; i < j; i++, j--) {");
+    writer.indent();
+    writer.startLine(r + " node = _work[i];");
+    writer.startLine("_work[i] = _work[j];");
+    writer.startLine("_work[j] = node;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+  }
+
+  /** Generate a method scheduling the children in a value of the given composite type. */
+  protected void generateScheduleHelper(TypeName t, final TabPrintWriter writer, final NodeType root) {
+    writer.startLine("private void schedule" + t.identifierName() + "(" + t.name() + " that) {");
+    writer.indent();
+    t.accept(new HelperGeneratingVisitor() {
+
+      public Void forTreeNode(ClassName t) {
+        throw error(t);
+      }
+
+      protected void handleSequence(SequenceName t) {
+        writer.startLine("for (" + t.elementType().name() + " elt : " + t.iterable("that") + ") {");
+        writer.indent();
+        writer.startLine(scheduleExpression(t.elementType(), "elt", root) + ";");
+        writer.unindent();
+        writer.startLine("}");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        String schedule = scheduleExpression(t.elementType(), t.nonEmptyGetter("that"), root);
+        writer.startLine("if (!" + t.emptyTester("that") + ") { " + schedule + "; }");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        List<TypeName> eltTs = t.elementTypes();
+        for (int i = 0; i < eltTs.size(); i++) {
+          if (canRecurOn(eltTs.get(i), root)) {
+            writer.startLine(scheduleExpression(eltTs.get(i), t.getter("that", i), root) + ";");
+          }
+        }
+        return null;
+      }
+    });
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+  /**
+   * Generate a method collecting the results for the children in a value of the given composite
+   * type, in the order they were scheduled.
+   */
+  protected void generateCollectHelper(TypeName t, final TabPrintWriter writer, final NodeType root) {
+    final TypeName resultT = resultType(t);
+    writer.startLine("private " + resultT.name() + " collect" + t.identifierName() + "(" + t.name() + " that) {");
+    writer.indent();
+    t.accept(new HelperGeneratingVisitor() {
+
+      public Void forTreeNode(ClassName t) {
+        throw error(t);
+      }
+
+      protected void handleSequence(SequenceName t) {
+        SequenceName resultSeqT = (SequenceName) resultT;
+        writer.startLine(resultSeqT.accumulator("accum"));
+        writer.startLine("for (" + t.elementType().name() + " elt : " + t.iterable("that") + ") {");
+        writer.indent();
+        writer.startLine(resultSeqT.addToAccumulator("accum", collectExpression(t.elementType(), "elt", root)));
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("return " + resultSeqT.constructor("accum") + ";");
+      }
+
+      public Void forOptionClass(OptionClassName t) {
+        OptionClassName resultOptT = (OptionClassName) resultT;
+        writer.startLine("if (" + t.emptyTester("that") + ") { return " + resultOptT.emptyConstructor() + "; }");
+        String collect = collectExpression(t.elementType(), t.nonEmptyGetter("that"), root);
+        writer.startLine("else { return " + resultOptT.nonEmptyConstructor(collect) + "; }");
+        return null;
+      }
+
+      public Void forTupleClass(TupleClassName t) {
+        TupleClassName resultTupT = (TupleClassName) resultT;
+        List<TypeName> eltTs = t.elementTypes();
+        List<String> resultElts = new ArrayList<String>(eltTs.size());
+        for (int i = 0; i < eltTs.size(); i++) {
+          String getter = t.getter("that", i);
+          if (canRecurOn(eltTs.get(i), root)) {
+            String var = "result_" + i;
+            writer.startLine(resultTupT.elementTypes().get(i).name() + " " + var + " = ");
+            writer.print(collectExpression(eltTs.get(i), getter, root) + ";");
+            resultElts.add(var);
+          } else {
+            resultElts.add(getter);
+          }
+        }
+        writer.startLine("return " + resultTupT.constructor(resultElts) + ";");
+        return null;
+      }
+    });
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+}
@@ -0,0 +1,426 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, a walker that gathers statistics about trees: instance counts,
+ * a depth histogram, sizes of sequence fields, string sizes, and estimated memory footprint
+ * per type.  Shallow sizes are estimated at generation time from the layout of each class's
+ * fields, assuming a 64-bit JVM with compressed references (12-byte object headers, 4-byte
+ * references, 8-byte alignment).  Trees are traversed iteratively.
+ */
+public class StatsWalkerGenerator extends VisitorGenerator {
+
+  public StatsWalkerGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(VisitorInterfaceGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  /** The estimated size in bytes of an instance of {@code t}, excluding the values it references. */
+  protected int shallowSize(NodeType t) {
+    int size = 12; // object header
+    for (Field f : t.allFields(ast)) {
+      if (!MetadataTableGenerator.inSideTable(ast, f)) { size += fieldSize(f.type()); }
+    }
+    // fields added by other generators
+    if (options.generateEquals) { size += 5; } // _hashCode, _hasHashCode
+    if (options.generateDigests) { size += 4; } // _digest
+    for (Attribute a : options.attributes) {
+      Option<NodeType> declaring = ast.typeForName(a.nodeTypeName());
+      if (declaring.isSome() && ast.supertypes(t).contains(declaring.unwrap())) { size += 4; } // cached value
+    }
+    return (size + 7) / 8 * 8;
+  }
+
+  private static int fieldSize(TypeName t) {
+    if (t instanceof PrimitiveName) {
+      String name = t.name();
+      if (name.equals("long") || name.equals("double")) { return 8; }
+      else if (name.equals("int") || name.equals("float")) { return 4; }
+      else if (name.equals("short") || name.equals("char")) { return 2; }
+      else { return 1; }
+    } else {
+      return 4;
+    }
+  }
+
+  private static int primitiveSize(String name) {
+    return fieldSize(Types.parse(name, null));
+  }
+
+  @Override
+  protected void generateVisitor(final NodeType root) {
+    final String r = root.name();
+    String className = r + "StatsWalker";
+    final TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    List<NodeType> concrete = new ArrayList<NodeType>();
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) { concrete.add(t); }
+    }
+    final List<String> listFields = new ArrayList<String>();
+    for (NodeType t : concrete) {
+      for (Field f : t.allFields(ast)) {
+        if (f.type() instanceof SequenceName) { listFields.add(t.name() + "." + f.name()); }
+      }
+    }
+
+    writer.startLine("/**");
+    writer.startLine(" * Gathers statistics about " + r + " trees: instance counts, depth histogram, sizes of");
+    writer.startLine(" * sequence fields, string sizes, and estimated shallow and retained memory per type.");
+    writer.startLine(" * Statistics accumulate over all calls to {@link #walk}.  Sizes are estimates for a");
+    writer.startLine(" * 64-bit JVM with compressed references; strings are assumed to use 2 bytes per char");
+    writer.startLine(" * and sequences to be array lists.  The retained size of a node is the sum of the sizes");
+    writer.startLine(" * of its subtree; nodes and strings shared between positions are counted at each.");
+    writer.startLine(" * Values of types unknown to the AST are not measured.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+
+    writer.startLine("private static final java.lang.String[] TYPE_NAMES = {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine("\"" + concrete.get(i).name() + "\"" + (i+1 < concrete.size() ? "," : ""));
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("/** Estimated shallow size of each type, in bytes. */");
+    writer.startLine("private static final int[] SHALLOW_SIZES = {");
+    writer.indent();
+    for (int i = 0; i < concrete.size(); i++) {
+      writer.startLine(shallowSize(concrete.get(i)) + (i+1 < concrete.size() ? "," : ""));
+      writer.print(" // " + concrete.get(i).name());
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+    writer.startLine("private static final java.lang.String[] LIST_FIELDS = {");
+    writer.indent();
+    for (int i = 0; i < listFields.size(); i++) {
+      writer.startLine("\"" + listFields.get(i) + "\"" + (i+1 < listFields.size() ? "," : ""));
+    }
+    writer.unindent();
+    writer.startLine("};");
+    writer.println();
+
+    writer.startLine("private final long[] _counts = new long[TYPE_NAMES.length];");
+    writer.startLine("private final long[] _retained = new long[TYPE_NAMES.length];");
+    writer.startLine("private final long[] _listCounts = new long[LIST_FIELDS.length];");
+    writer.startLine("private final long[] _listElements = new long[LIST_FIELDS.length];");
+    writer.startLine("private long[] _depths = new long[16];");
+    writer.startLine("private int _maxDepth = -1;");
+    writer.startLine("private long _nodes = 0;");
+    writer.startLine("private long _stringBytes = 0;");
+    writer.println();
+    writer.startLine("// traversal state: a stack of pending nodes, and the preorder sequence of visited nodes");
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("private int[] _stackDepths = new int[16];");
+    writer.startLine("private int[] _stackParents = new int[16];");
+    writer.startLine("private int[] _parents = new int[16];");
+    writer.startLine("private int[] _types = new int[16];");
+    writer.startLine("private long[] _sizes = new long[16];");
+    writer.startLine("private int _visited;");
+    writer.startLine("private final Measurer _measurer = new Measurer();");
+    writer.println();
+
+    writer.startLine("/** Add the statistics of the given tree. */");
+    writer.startLine("public void walk(" + r + " root) {");
+    writer.indent();
+    writer.startLine("_visited = 0;");
+    writer.startLine("push(root, 0, -1);");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine("int top = _stack.size() - 1;");
+    writer.startLine(r + " node = _stack.remove(top);");
+    writer.startLine("int depth = _stackDepths[top];");
+    writer.startLine("int parent = _stackParents[top];");
+    writer.startLine("int pos = _visited++;");
+    writer.startLine("if (pos == _parents.length) {");
+    writer.indent();
+    writer.startLine("_parents = java.util.Arrays.copyOf(_parents, pos * 2);");
+    writer.startLine("_types = java.util.Arrays.copyOf(_types, pos * 2);");
+    writer.startLine("_sizes = java.util.Arrays.copyOf(_sizes, pos * 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_parents[pos] = parent;");
+    writer.startLine("if (depth >= _depths.length) { _depths = java.util.Arrays.copyOf(_depths, depth * 2); }");
+    writer.startLine("_depths[depth]++;");
+    writer.startLine("if (depth > _maxDepth) { _maxDepth = depth; }");
+    writer.startLine("_nodes++;");
+    writer.startLine("_measurer._pos = pos;");
+    writer.startLine("_measurer._depth = depth;");
+    writer.startLine("node." + options.visitMethod + "(_measurer);");
+    writer.startLine("_counts[_types[pos]]++;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("// children follow their parents in preorder, so subtree sizes can be summed in reverse");
+    writer.startLine("for (int i = _visited - 1; i > 0; i--) { _sizes[_parents[i]] += _sizes[i]; }");
+    writer.startLine("for (int i = 0; i < _visited; i++) { _retained[_types[i]] += _sizes[i]; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private void push(" + r + " node, int depth, int parent) {");
+    writer.indent();
+    writer.startLine("if (node == null) { return; }");
+    writer.startLine("int top = _stack.size();");
+    writer.startLine("if (top == _stackDepths.length) {");
+    writer.indent();
+    writer.startLine("_stackDepths = java.util.Arrays.copyOf(_stackDepths, top * 2);");
+    writer.startLine("_stackParents = java.util.Arrays.copyOf(_stackParents, top * 2);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_stack.add(node);");
+    writer.startLine("_stackDepths[top] = depth;");
+    writer.startLine("_stackParents[top] = parent;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static long align(long size) { return (size + 7) & ~7L; }");
+    writer.println();
+    writer.startLine("private long stringSize(java.lang.String s) {");
+    writer.indent();
+    writer.startLine("if (s == null) { return 0; }");
+    writer.startLine("_stringBytes += 2L * s.length();");
+    writer.startLine("return 24 + align(16 + 2L * s.length());");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The total number of nodes walked. */");
+    writer.startLine("public long nodeCount() { return _nodes; }");
+    writer.println();
+    writer.startLine("/** The number of instances of the named class. */");
+    writer.startLine("public long count(java.lang.String typeName) {");
+    writer.indent();
+    writer.startLine("for (int i = 0; i < TYPE_NAMES.length; i++) {");
+    writer.indent();
+    writer.startLine("if (TYPE_NAMES[i].equals(typeName)) { return _counts[i]; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/** The number of nodes at each depth; the root is at depth 0. */");
+    writer.startLine("public long[] depthHistogram() { return java.util.Arrays.copyOf(_depths, _maxDepth + 1); }");
+    writer.println();
+    writer.startLine("/** The number of bytes used by characters of strings held in fields. */");
+    writer.startLine("public long stringBytes() { return _stringBytes; }");
+    writer.println();
+
+    writer.startLine("/** The statistics as a JSON object. */");
+    writer.startLine("public java.lang.String toJson() {");
+    writer.indent();
+    writer.startLine("java.lang.StringBuilder b = new java.lang.StringBuilder();");
+    writer.startLine("b.append(\"{\\\"nodes\\\":\").append(_nodes);");
+    writer.startLine("b.append(\",\\\"maxDepth\\\":\").append(_maxDepth);");
+    writer.startLine("b.append(\",\\\"stringBytes\\\":\").append(_stringBytes);");
+    writer.startLine("b.append(\",\\\"depthHistogram\\\":[\");");
+    writer.startLine("for (int i = 0; i <= _maxDepth; i++) { b.append(i > 0 ? \",\" : \"\").append(_depths[i]); }");
+    writer.startLine("b.append(\"],\\\"types\\\":{\");");
+    writer.startLine("boolean first = true;");
+    writer.startLine("for (int i = 0; i < TYPE_NAMES.length; i++) {");
+    writer.indent();
+    writer.startLine("if (_counts[i] == 0) { continue; }");
+    writer.startLine("if (!first) { b.append(\",\"); }");
+    writer.startLine("first = false;");
+    writer.startLine("b.append(\"\\\"\").append(TYPE_NAMES[i]).append(\"\\\":{\\\"count\\\":\").append(_counts[i]);");
+    writer.startLine("b.append(\",\\\"shallowBytes\\\":\").append(_counts[i] * SHALLOW_SIZES[i]);");
+    writer.startLine("b.append(\",\\\"retainedBytes\\\":\").append(_retained[i]).append(\"}\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("b.append(\"},\\\"lists\\\":{\");");
+    writer.startLine("first = true;");
+    writer.startLine("for (int i = 0; i < LIST_FIELDS.length; i++) {");
+    writer.indent();
+    writer.startLine("if (_listCounts[i] == 0) { continue; }");
+    writer.startLine("if (!first) { b.append(\",\"); }");
+    writer.startLine("first = false;");
+    writer.startLine("b.append(\"\\\"\").append(LIST_FIELDS[i]).append(\"\\\":{\\\"count\\\":\").append(_listCounts[i]);");
+    writer.startLine("b.append(\",\\\"elements\\\":\").append(_listElements[i]);");
+    writer.startLine("b.append(\",\\\"averageSize\\\":\").append((double) _listElements[i] / _listCounts[i]).append(\"}\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("b.append(\"}}\");");
+    writer.startLine("return b.toString();");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Records a node's type and own size, and pushes its children. */");
+    writer.startLine("private final class Measurer implements " + r + "Visitor<Void> {");
+    writer.indent();
+    writer.startLine("int _pos;");
+    writer.startLine("int _depth;");
+    int type = 0;
+    int list = 0;
+    for (NodeType t : concrete) {
+      writer.println();
+      outputForCaseHeader(t, writer, "Void", "");
+      writer.indent();
+      writer.startLine("long size = SHALLOW_SIZES[" + type + "];");
+      int temp = 0;
+      for (final Field f : t.allFields(ast)) {
+        // side-table fields are not part of the node; primitives and the like add nothing further
+        if (MetadataTableGenerator.inSideTable(ast, f) || !isMeasured(root, f.type())) { continue; }
+        final String val = "v" + (temp++);
+        writer.startLine(f.type().name() + " " + val + " = that." + f.getGetterName() + "();");
+        if (f.type() instanceof SequenceName) {
+          final int listIndex = list++;
+          final SequenceName seq = (SequenceName) f.type();
+          writer.startLine("if (" + val + " != null) {");
+          writer.indent();
+          if (seq instanceof PrimitiveSequenceClassName) {
+            // a primitive list holds nothing further to measure
+            writer.startLine("int n = " + val + ".size();");
+          } else {
+            writer.startLine("int n = 0;");
+            writer.startLine("for (" + seq.elementType().name() + " elt : " + seq.iterable(val) + ") {");
+            writer.indent();
+            writer.startLine("n++;");
+            measureValue(writer, root, seq.elementType(), "elt");
+            writer.unindent();
+            writer.startLine("}");
+          }
+          writer.startLine("_listCounts[" + listIndex + "]++;");
+          writer.startLine("_listElements[" + listIndex + "] += n;");
+          if (seq instanceof PrimitiveSequenceClassName) {
+            // the list object and its exactly-sized array
+            int width = fieldSize(seq.elementType());
+            writer.startLine("size += 16 + align(16 + " + width + "L * n);");
+          } else if (seq instanceof ArrayName) {
+            writer.startLine("size += align(16 + 4L * n);");
+          } else {
+            writer.startLine("size += 24 + align(16 + 4L * n);");
+          }
+          writer.unindent();
+          writer.startLine("}");
+        } else {
+          measureValue(writer, root, f.type(), val);
+        }
+      }
+      writer.startLine("_types[_pos] = " + type + ";");
+      writer.startLine("_sizes[_pos] = size;");
+      writer.startLine("return null;");
+      writer.unindent();
+      writer.startLine("}");
+      type++;
+    }
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** Whether a field of the given type adds to the measured size or holds children. */
+  private boolean isMeasured(NodeType root, TypeName type) {
+    if (type instanceof SequenceName) { return true; }
+    final boolean[] result = { true };
+    type.accept(new ChildFieldVisitor(root) {
+      @Override protected void handleNode(ClassName t) {}
+      @Override protected void handleSequence(SequenceName t) {}
+      @Override protected void handleOption(OptionClassName t) {}
+      @Override protected void handleOther(TypeName t) {
+        result[0] = t instanceof PrimitiveArrayName || Types.kind(t).equals(Types.KindTag.STRING);
+      }
+    });
+    return result[0];
+  }
+
+  /** Output statements adding the size of a value (other than a sequence) to {@code size}, or pushing a child. */
+  private void measureValue(final TabPrintWriter writer, final NodeType root, TypeName type,
+                            final String val) {
+    type.accept(new ChildFieldVisitor(root) {
+      @Override protected void handleNode(ClassName t) {
+        writer.startLine("push(" + val + ", _depth + 1, _pos);");
+      }
+      @Override protected void handleSequence(SequenceName t) {
+        // nested sequences of nodes: measure only the nodes
+        writer.startLine("if (" + val + " != null) {");
+        writer.indent();
+        writer.startLine("for (" + t.elementType().name() + " nested : " + t.iterable(val) + ") {");
+        writer.indent();
+        writer.startLine("push(nested, _depth + 1, _pos);");
+        writer.unindent();
+        writer.startLine("}");
+        writer.unindent();
+        writer.startLine("}");
+      }
+      @Override protected void handleOption(OptionClassName t) {
+        writer.startLine("if (" + val + " != null && !" + t.emptyTester(val) + ") {");
+        writer.indent();
+        writer.startLine("size += 16;");
+        writer.startLine("push(" + t.nonEmptyGetter(val) + ", _depth + 1, _pos);");
+        writer.unindent();
+        writer.startLine("}");
+      }
+      @Override protected void handleOther(TypeName t) {
+        if (t instanceof PrimitiveArrayName) {
+          String eltT = t.name().substring(0, t.name().length() - 2);
+          writer.startLine("if (" + val + " != null) { size += align(16 + " + primitiveSize(eltT) + "L * ");
+          writer.print(val + ".length); }");
+        } else if (Types.kind(t).equals(Types.KindTag.STRING)) {
+          writer.startLine("size += stringSize(" + val + ");");
+        }
+      }
+    });
+  }
+
+}
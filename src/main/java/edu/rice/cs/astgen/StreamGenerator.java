@@ -0,0 +1,276 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+/**
+ * Generates, for each root, a {@link java.util.Spliterator} over the nodes of a tree in preorder,
+ * and a {@code descendants()} method returning a {@link java.util.stream.Stream} of a node and its
+ * descendants.  The spliterator keeps pending subtrees on an explicit stack, and splits by
+ * handing off a prefix of that stack, so parallel streams divide the work by subtrees.  The
+ * method is declared in roots that do not descend from another root, so that its result type
+ * is the same throughout a hierarchy.
+ */
+public class StreamGenerator extends VisitorGenerator {
+
+  public StreamGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  /** The name of the spliterator class generated for {@code root}. */
+  public static String spliteratorClassName(NodeType root) {
+    return root.name() + "Spliterator";
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(ChildrenGenerator.class);
+  }
+
+  /** The outermost root that {@code t} descends from, or {@code null}. */
+  private NodeType streamRoot(NodeType t) {
+    for (NodeType r : ast.ancestorRoots(t)) {
+      boolean outermost = true;
+      for (NodeType other : ast.ancestorRoots(r)) {
+        if (!other.equals(r)) { outermost = false; }
+      }
+      if (outermost) { return r; }
+    }
+    return null;
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+    if (i.equals(streamRoot(i))) {
+      writer.startLine("/** A sequential stream of this node and its descendants, in preorder. */");
+      writer.startLine("public java.util.stream.Stream<" + i.name() + "> descendants();");
+      writer.println();
+    }
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+    NodeType root = streamRoot(c);
+    if (root == null) { return; }
+    // implemented in the root, or in the classes directly below an interface
+    if (c.equals(root) || !(ast.parent(c).unwrap(null) instanceof NodeClass)) {
+      writer.startLine("/** A sequential stream of this node and its descendants, in preorder. */");
+      writer.startLine("public java.util.stream.Stream<" + root.name() + "> descendants() {");
+      writer.indent();
+      writer.startLine("return " + spliteratorClassName(root) + ".stream(this);");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+    }
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = spliteratorClassName(root);
+    String children = ChildrenGenerator.childrenClassName(root);
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * A spliterator over the nodes of a " + r + " tree in preorder.  Subtrees still to be");
+    writer.startLine(" * traversed are kept on an explicit stack, so deep trees do not overflow the call stack.");
+    writer.startLine(" * {@link #trySplit} hands off the subtrees that come first in preorder, expanding a");
+    writer.startLine(" * single remaining subtree into its children when necessary.  The size of a tree is not");
+    writer.startLine(" * known in advance, so this spliterator does not report {@code SIZED}; traversing a");
+    writer.startLine(" * linearization of the tree does.  Unless a size is given, {@link #estimateSize} is");
+    writer.startLine(" * {@code Long.MAX_VALUE} (unknown) in every split until the tree is exhausted; it never");
+    writer.startLine(" * drops below the number of subtrees still pending.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + className + " implements java.util.Spliterator<" + r + "> {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** A sequential stream of {@code root} and its descendants, in preorder. */");
+    writer.startLine("public static java.util.stream.Stream<" + r + "> stream(" + r + " root) {");
+    writer.indent();
+    writer.startLine("return java.util.stream.StreamSupport.stream(new " + className + "(root), false);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("// subtrees to traverse; the last element is traversed first");
+    writer.startLine("private final java.util.ArrayList<" + r + "> _stack = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("// a node to report before the stack, whose children are already on the stack");
+    writer.startLine("private " + r + " _pending = null;");
+    writer.startLine("// the estimated number of nodes left to report, or Long.MAX_VALUE if unknown");
+    writer.startLine("private long _estimate = java.lang.Long.MAX_VALUE;");
+    writer.startLine("private final Expander _expander = new Expander();");
+    writer.println();
+    writer.startLine("/** Traverse the tree with the given root, whose size is unknown. */");
+    writer.startLine("public " + className + "(" + r + " root) {");
+    writer.indent();
+    writer.startLine("if (root == null) { throw new java.lang.NullPointerException(); }");
+    writer.startLine("_stack.add(root);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("/**");
+    writer.startLine(" * Traverse the tree with the given root, which is known (for example, from a stats walker or");
+    writer.startLine(" * a linearization) to have about {@code size} nodes.  The estimate is halved by each split.");
+    writer.startLine(" */");
+    writer.startLine("public " + className + "(" + r + " root, long size) {");
+    writer.indent();
+    writer.startLine("this(root);");
+    writer.startLine("if (size < 0) { throw new java.lang.IllegalArgumentException(\"negative size\"); }");
+    writer.startLine("_estimate = size;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+
+    writer.startLine("/** Push the children of {@code node} so that the first child is on top. */");
+    writer.startLine("private void expand(" + r + " node) {");
+    writer.indent();
+    writer.startLine("int mark = _stack.size();");
+    writer.startLine("_expander.children(node);");
+    writer.startLine("java.util.Collections.reverse(_stack.subList(mark, _stack.size()));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Account for a reported node in the size estimate. */");
+    writer.startLine("private void reported() {");
+    writer.indent();
+    writer.startLine("if (_estimate != java.lang.Long.MAX_VALUE && _estimate > 0) { _estimate--; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public boolean tryAdvance(java.util.function.Consumer<? super " + r + "> action) {");
+    writer.indent();
+    writer.startLine("if (_pending != null) {");
+    writer.indent();
+    writer.startLine(r + " node = _pending;");
+    writer.startLine("_pending = null;");
+    writer.startLine("reported();");
+    writer.startLine("action.accept(node);");
+    writer.startLine("return true;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("if (_stack.isEmpty()) { return false; }");
+    writer.startLine(r + " node = _stack.remove(_stack.size() - 1);");
+    writer.startLine("expand(node);");
+    writer.startLine("reported();");
+    writer.startLine("action.accept(node);");
+    writer.startLine("return true;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public void forEachRemaining(java.util.function.Consumer<? super " + r + "> action) {");
+    writer.indent();
+    writer.startLine("if (_pending != null) {");
+    writer.indent();
+    writer.startLine(r + " node = _pending;");
+    writer.startLine("_pending = null;");
+    writer.startLine("action.accept(node);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("while (!_stack.isEmpty()) {");
+    writer.indent();
+    writer.startLine(r + " node = _stack.remove(_stack.size() - 1);");
+    writer.startLine("expand(node);");
+    writer.startLine("action.accept(node);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("_estimate = 0;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public java.util.Spliterator<" + r + "> trySplit() {");
+    writer.indent();
+    writer.startLine("if (_pending == null && _stack.size() == 1) {");
+    writer.indent();
+    writer.startLine("// expand the only subtree so that its children can be divided");
+    writer.startLine("_pending = _stack.remove(0);");
+    writer.startLine("expand(_pending);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int size = _stack.size();");
+    writer.startLine("if (size < 2) { return null; }");
+    writer.startLine("int from = size - size / 2;");
+    writer.startLine("// the top of the stack, with the pending node, forms a prefix of the traversal");
+    writer.startLine(className + " prefix = new " + className + "();");
+    writer.startLine("prefix._pending = _pending;");
+    writer.startLine("_pending = null;");
+    writer.startLine("java.util.List<" + r + "> top = _stack.subList(from, size);");
+    writer.startLine("prefix._stack.addAll(top);");
+    writer.startLine("top.clear();");
+    writer.startLine("// an unknown size stays unknown in both halves");
+    writer.startLine("if (_estimate != java.lang.Long.MAX_VALUE) { _estimate >>>= 1; }");
+    writer.startLine("prefix._estimate = _estimate;");
+    writer.startLine("return prefix;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("public long estimateSize() {");
+    writer.indent();
+    writer.startLine("long pending = _stack.size() + (_pending == null ? 0 : 1);");
+    writer.startLine("if (pending == 0) { return 0; }");
+    writer.startLine("return java.lang.Math.max(_estimate, pending);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public int characteristics() {");
+    writer.indent();
+    writer.startLine("return java.util.Spliterator.ORDERED | java.util.Spliterator.NONNULL | java.util.Spliterator.IMMUTABLE;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private final class Expander extends " + children + " {");
+    writer.indent();
+    writer.startLine("@Override protected void child(" + r + " parent, " + r + " child, int slot, int index) {");
+    writer.indent();
+    writer.startLine("_stack.add(child);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+}
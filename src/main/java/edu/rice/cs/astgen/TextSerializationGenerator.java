@@ -238,27 +238,25 @@ public class TextSerializationGenerator extends CodeGenerator {
       }
 
       public Void forPrimitiveArray(PrimitiveArrayName t) {
-        String boxedName = t.elementType().boxed().name();
         String readElt = elementReadString(t.elementType(), false).first(); // we assume second() is false
 
-        String accumType = "java.util.ArrayList<" + boxedName + ">";
-        writer.startLine(accumType + " accum = new " + accumType + "();");
+        // accumulate in a growing array, rather than boxing each element
+        writer.startLine(t.name() + " result = new " + t.elementType().name() + "[8];");
+        writer.startLine("int size = 0;");
 
         writer.startLine("java.lang.String word = readWord();");
         writer.startLine("if (!word.equals(\"{\")) throw error();");
         writer.startLine("word = readWord();");
         writer.startLine("while (word.equals(\"*\")) {");
         writer.indent();
-        writer.startLine("accum.add(" + readElt + ");");
+        writer.startLine("if (size == result.length) result = java.util.Arrays.copyOf(result, size * 2);");
+        writer.startLine("result[size++] = " + readElt + ";");
         writer.startLine("word = readWord();");
         writer.unindent();
         writer.startLine("}");
         writer.startLine("if (!word.equals(\"}\")) throw error();");
 
-        writer.startLine(t.name() + " result = new " + t.elementType().name() + "[accum.size()];");
-        writer.startLine("int i = 0;");
-        writer.startLine("for (" + boxedName + " elt : accum) result[i++] = elt;");
-        writer.startLine("return result;");
+        writer.startLine("return (size == result.length) ? result : java.util.Arrays.copyOf(result, size);");
         return null;
       }
 
@@ -0,0 +1,479 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, a class computing an edit script between two versions of a tree.
+ * Subtrees that are identical, or that are equal according to the (cached) {@code hashCode}
+ * and {@code equals}, are skipped without being traversed.  Otherwise, nodes of the same class
+ * are compared field by field; sequences of children are aligned using a longest common
+ * subsequence, after trimming their common prefix and suffix.
+ */
+public class TreeDiffGenerator extends VisitorGenerator {
+
+  public TreeDiffGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(VisitorInterfaceGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String r = root.name();
+    String className = r + "TreeDiff";
+    TabPrintWriter writer = options.createJavaSourceInOutDir(className);
+
+    writer.startLine("/**");
+    writer.startLine(" * Computes an edit script transforming one " + r + " tree into another.  Subtrees that");
+    writer.startLine(" * are identical or equal (as determined by the cached hash code and {@code equals}) are");
+    writer.startLine(" * skipped in constant time, so diffing mostly-unchanged trees takes time roughly");
+    writer.startLine(" * proportional to the size of the changed region.  Edits are described by paths from the");
+    writer.startLine(" * top of the old and new trees, such as {@code /body/stmts[3]/cond}.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings({\"unused\", \"unchecked\"})");
+    writer.startLine("public final class " + className + " {");
+    writer.indent();
+    writer.println();
+    writer.startLine("/** Sequences whose unmatched middle sections are larger than this (as a product of");
+    writer.startLine(" * lengths) are aligned by position rather than with a longest common subsequence. */");
+    writer.startLine("private static final long LCS_LIMIT = 1L << 22;");
+    writer.println();
+    writer.startLine("public static enum Kind {");
+    writer.indent();
+    writer.startLine("/** A node was replaced by a node of a different class. */");
+    writer.startLine("REPLACE,");
+    writer.startLine("/** A field not holding children was changed. */");
+    writer.startLine("UPDATE,");
+    writer.startLine("/** A child was added to a sequence or option. */");
+    writer.startLine("INSERT,");
+    writer.startLine("/** A child was removed from a sequence or option. */");
+    writer.startLine("DELETE,");
+    writer.startLine("/** A child was moved, unchanged, to a different position in a sequence. */");
+    writer.startLine("MOVE");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** A single edit.  Paths and values that do not apply to the edit's kind are {@code null}. */");
+    writer.startLine("public static final class Edit {");
+    writer.indent();
+    writer.startLine("public final Kind kind;");
+    writer.startLine("public final java.lang.String oldPath;");
+    writer.startLine("public final java.lang.String newPath;");
+    writer.startLine("public final java.lang.Object oldValue;");
+    writer.startLine("public final java.lang.Object newValue;");
+    writer.println();
+    writer.startLine("public Edit(Kind kind, java.lang.String oldPath, java.lang.String newPath, ");
+    writer.print("java.lang.Object oldValue, java.lang.Object newValue) {");
+    writer.indent();
+    writer.startLine("this.kind = kind;");
+    writer.startLine("this.oldPath = oldPath;");
+    writer.startLine("this.newPath = newPath;");
+    writer.startLine("this.oldValue = oldValue;");
+    writer.startLine("this.newValue = newValue;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("public java.lang.String toString() {");
+    writer.indent();
+    writer.startLine("switch (kind) {");
+    writer.indent();
+    writer.startLine("case INSERT: return kind + \" \" + show(newPath);");
+    writer.startLine("case DELETE: return kind + \" \" + show(oldPath);");
+    writer.startLine("case MOVE: return kind + \" \" + show(oldPath) + \" -> \" + show(newPath);");
+    writer.startLine("default: return kind + \" \" + show(newPath) + \": \" + oldValue + \" -> \" + newValue;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("private static java.lang.String show(java.lang.String path) {");
+    writer.indent();
+    writer.startLine("return (path.length() == 0) ? \"/\" : path;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private " + className + "() {}");
+    writer.println();
+
+    writer.startLine("/** Compute the edits transforming {@code oldTree} into {@code newTree}. */");
+    writer.startLine("public static java.util.List<Edit> diff(" + r + " oldTree, " + r + " newTree) {");
+    writer.indent();
+    writer.startLine("Differ d = new Differ();");
+    writer.startLine("d.push(oldTree, newTree, \"\", \"\");");
+    writer.startLine("while (!d._olds.isEmpty()) { d.step(); }");
+    writer.startLine("return d._edits;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Whether two values are known to be equal: identical, or with equal hash codes and equal. */");
+    writer.startLine("private static boolean same(java.lang.Object x, java.lang.Object y) {");
+    writer.indent();
+    writer.startLine("return x == y || (x != null && y != null && x.hashCode() == y.hashCode() && x.equals(y));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("private static <T> java.util.List<T> toList(java.lang.Iterable<? extends T> iter) {");
+    writer.indent();
+    writer.startLine("java.util.List<T> result = new java.util.ArrayList<T>();");
+    writer.startLine("for (T elt : iter) { result.add(elt); }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    generateDiffer(writer, root);
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  protected void generateDiffer(final TabPrintWriter writer, final NodeType root) {
+    final String r = root.name();
+    writer.startLine("/** Worklist-driven differ; each case compares {@code _old} to a node of the same class. */");
+    writer.startLine("private static final class Differ implements " + r + "Visitor<Void> {");
+    writer.indent();
+    writer.startLine("final java.util.List<Edit> _edits = new java.util.ArrayList<Edit>();");
+    writer.startLine("final java.util.ArrayList<" + r + "> _olds = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("final java.util.ArrayList<" + r + "> _news = new java.util.ArrayList<" + r + ">();");
+    writer.startLine("final java.util.ArrayList<java.lang.String> _oldPaths = new java.util.ArrayList<java.lang.String>();");
+    writer.startLine("final java.util.ArrayList<java.lang.String> _newPaths = new java.util.ArrayList<java.lang.String>();");
+    writer.startLine("// the pair currently being compared");
+    writer.startLine(r + " _old;");
+    writer.startLine("java.lang.String _oldPath;");
+    writer.startLine("java.lang.String _newPath;");
+    writer.println();
+
+    writer.startLine("void push(" + r + " oldNode, " + r + " newNode, java.lang.String oldPath, java.lang.String newPath) {");
+    writer.indent();
+    writer.startLine("_olds.add(oldNode);");
+    writer.startLine("_news.add(newNode);");
+    writer.startLine("_oldPaths.add(oldPath);");
+    writer.startLine("_newPaths.add(newPath);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("void step() {");
+    writer.indent();
+    writer.startLine("int last = _olds.size() - 1;");
+    writer.startLine(r + " oldNode = _olds.remove(last);");
+    writer.startLine(r + " newNode = _news.remove(last);");
+    writer.startLine("java.lang.String oldPath = _oldPaths.remove(last);");
+    writer.startLine("java.lang.String newPath = _newPaths.remove(last);");
+    writer.startLine("if (same(oldNode, newNode)) { return; }");
+    writer.startLine("if (oldNode == null || newNode == null || oldNode.getClass() != newNode.getClass()) {");
+    writer.indent();
+    writer.startLine("_edits.add(new Edit(Kind.REPLACE, oldPath, newPath, oldNode, newNode));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("else {");
+    writer.indent();
+    writer.startLine("_old = oldNode;");
+    writer.startLine("_oldPath = oldPath;");
+    writer.startLine("_newPath = newPath;");
+    writer.startLine("newNode." + options.visitMethod + "(this);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("void update(java.lang.String field, java.lang.Object oldVal, java.lang.Object newVal) {");
+    writer.indent();
+    writer.startLine("_edits.add(new Edit(Kind.UPDATE, _oldPath + \"/\" + field, _newPath + \"/\" + field, oldVal, newVal));");
+    writer.unindent();
+    writer.startLine("}");
+
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        writer.println();
+        outputForCaseHeader(t, writer, "Void", "");
+        writer.indent();
+        writer.startLine(t.name() + " old = (" + t.name() + ") _old;");
+        writer.startLine("java.lang.String oldPath = _oldPath;");
+        writer.startLine("java.lang.String newPath = _newPath;");
+        for (final Field f : t.allFields(ast)) {
+          if (f.ignoreForEquals()) { continue; }
+          final String oldVal = "old." + f.getGetterName() + "()";
+          final String newVal = "that." + f.getGetterName() + "()";
+          final String oldField = "oldPath + \"/" + f.name() + "\"";
+          final String newField = "newPath + \"/" + f.name() + "\"";
+          f.type().accept(new ChildFieldVisitor(root) {
+            @Override protected void handleNode(ClassName t) {
+              writer.startLine("push(" + oldVal + ", " + newVal + ", " + oldField + ", " + newField + ");");
+            }
+            @Override protected void handleSequence(SequenceName t) {
+              String list = (t instanceof ReferenceArrayName) ? "java.util.Arrays.asList" : "toList";
+              writer.startLine("diffSequence(" + list + "(" + oldVal + "), " + list + "(" + newVal + "), ");
+              writer.print(oldField + ", " + newField + ");");
+            }
+            @Override protected void handleOption(OptionClassName t) {
+              writer.startLine("{");
+              writer.indent();
+              writer.startLine(f.type().name() + " oldOpt = " + oldVal + ";");
+              writer.startLine(f.type().name() + " newOpt = " + newVal + ";");
+              writer.startLine("boolean oldEmpty = " + t.emptyTester("oldOpt") + ";");
+              writer.startLine("boolean newEmpty = " + t.emptyTester("newOpt") + ";");
+              writer.startLine("if (!oldEmpty && !newEmpty) {");
+              writer.indent();
+              writer.startLine("push(" + t.nonEmptyGetter("oldOpt") + ", " + t.nonEmptyGetter("newOpt") + ", ");
+              writer.print(oldField + ", " + newField + ");");
+              writer.unindent();
+              writer.startLine("}");
+              writer.startLine("else if (oldEmpty && !newEmpty) {");
+              writer.indent();
+              writer.startLine("_edits.add(new Edit(Kind.INSERT, null, " + newField + ", null, ");
+              writer.print(t.nonEmptyGetter("newOpt") + "));");
+              writer.unindent();
+              writer.startLine("}");
+              writer.startLine("else if (!oldEmpty && newEmpty) {");
+              writer.indent();
+              writer.startLine("_edits.add(new Edit(Kind.DELETE, " + oldField + ", null, ");
+              writer.print(t.nonEmptyGetter("oldOpt") + ", null));");
+              writer.unindent();
+              writer.startLine("}");
+              writer.unindent();
+              writer.startLine("}");
+            }
+            @Override protected void handleOther(TypeName t) {
+              if (t instanceof PrimitiveName) {
+                writer.startLine("if (" + EqualsGenerator.primitiveDiffers(t, oldVal, newVal) + ") { ");
+                writer.print("update(\"" + f.name() + "\", ");
+              } else if (t instanceof PrimitiveArrayName) {
+                writer.startLine("if (!java.util.Arrays.equals(" + oldVal + ", " + newVal + ")) { ");
+                writer.print("update(\"" + f.name() + "\", ");
+              } else if (t instanceof ArrayName) {
+                writer.startLine("if (!java.util.Arrays.deepEquals(" + oldVal + ", " + newVal + ")) { ");
+                writer.print("update(\"" + f.name() + "\", ");
+              } else {
+                writer.startLine("if (!same(" + oldVal + ", " + newVal + ")) { update(\"" + f.name() + "\", ");
+              }
+              writer.print(oldVal + ", " + newVal + "); }");
+            }
+          });
+        }
+        writer.startLine("return null;");
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    writer.println();
+    outputDiffSequence(writer, r);
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+  protected void outputDiffSequence(TabPrintWriter writer, String r) {
+    writer.startLine("/**");
+    writer.startLine(" * Align two sequences of children.  Matching elements in the common prefix and suffix and");
+    writer.startLine(" * in a longest common subsequence of the remainder are unchanged.  Unmatched elements that");
+    writer.startLine(" * are equal to an unmatched element of the other sequence are moves.  Remaining unmatched");
+    writer.startLine(" * elements between the same pair of matches are diffed pairwise (preferring pairs of the");
+    writer.startLine(" * same class), and any left over are inserts or deletes.");
+    writer.startLine(" */");
+    writer.startLine("void diffSequence(java.util.List<? extends " + r + "> olds, java.util.List<? extends " + r + "> news, ");
+    writer.print("java.lang.String oldPath, java.lang.String newPath) {");
+    writer.indent();
+    writer.startLine("int n = olds.size();");
+    writer.startLine("int m = news.size();");
+    writer.startLine("int pre = 0;");
+    writer.startLine("while (pre < n && pre < m && same(olds.get(pre), news.get(pre))) { pre++; }");
+    writer.startLine("int post = 0;");
+    writer.startLine("while (post < n-pre && post < m-pre && same(olds.get(n-1-post), news.get(m-1-post))) { post++; }");
+    writer.startLine("int oldLen = n - pre - post;");
+    writer.startLine("int newLen = m - pre - post;");
+    writer.startLine("if (oldLen == 0 && newLen == 0) { return; }");
+    writer.println();
+    writer.startLine("// matchedOld[i] is the index in news matched to olds[pre+i], or -1");
+    writer.startLine("int[] matchedOld = new int[oldLen];");
+    writer.startLine("java.util.Arrays.fill(matchedOld, -1);");
+    writer.startLine("if (oldLen > 0 && newLen > 0 && (long) oldLen * newLen <= LCS_LIMIT) {");
+    writer.indent();
+    writer.startLine("int[][] lcs = new int[oldLen+1][newLen+1];");
+    writer.startLine("for (int i = oldLen-1; i >= 0; i--) {");
+    writer.indent();
+    writer.startLine("for (int j = newLen-1; j >= 0; j--) {");
+    writer.indent();
+    writer.startLine("if (same(olds.get(pre+i), news.get(pre+j))) { lcs[i][j] = lcs[i+1][j+1] + 1; }");
+    writer.startLine("else { lcs[i][j] = java.lang.Math.max(lcs[i+1][j], lcs[i][j+1]); }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("int i = 0;");
+    writer.startLine("int j = 0;");
+    writer.startLine("while (i < oldLen && j < newLen) {");
+    writer.indent();
+    writer.startLine("if (same(olds.get(pre+i), news.get(pre+j))) { matchedOld[i] = pre+j; i++; j++; }");
+    writer.startLine("else if (lcs[i+1][j] >= lcs[i][j+1]) { i++; }");
+    writer.startLine("else { j++; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("boolean[] matchedNew = new boolean[newLen];");
+    writer.startLine("for (int i = 0; i < oldLen; i++) {");
+    writer.indent();
+    writer.startLine("if (matchedOld[i] >= 0) { matchedNew[matchedOld[i]-pre] = true; }");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("// moves: unmatched old elements equal to some unmatched new element");
+    writer.startLine("java.util.Map<" + r + ", java.util.LinkedList<java.lang.Integer>> unmatched = ");
+    writer.print("new java.util.HashMap<" + r + ", java.util.LinkedList<java.lang.Integer>>();");
+    writer.startLine("for (int i = 0; i < oldLen; i++) {");
+    writer.indent();
+    writer.startLine("if (matchedOld[i] < 0 && olds.get(pre+i) != null) {");
+    writer.indent();
+    writer.startLine("java.util.LinkedList<java.lang.Integer> indices = unmatched.get(olds.get(pre+i));");
+    writer.startLine("if (indices == null) {");
+    writer.indent();
+    writer.startLine("indices = new java.util.LinkedList<java.lang.Integer>();");
+    writer.startLine("unmatched.put(olds.get(pre+i), indices);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("indices.add(i);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("boolean[] moved = new boolean[oldLen];");
+    writer.startLine("if (!unmatched.isEmpty()) {");
+    writer.indent();
+    writer.startLine("for (int j = 0; j < newLen; j++) {");
+    writer.indent();
+    writer.startLine("if (!matchedNew[j] && news.get(pre+j) != null) {");
+    writer.indent();
+    writer.startLine("java.util.LinkedList<java.lang.Integer> indices = unmatched.get(news.get(pre+j));");
+    writer.startLine("if (indices != null && !indices.isEmpty()) {");
+    writer.indent();
+    writer.startLine("int i = indices.removeFirst();");
+    writer.startLine("moved[i] = true;");
+    writer.startLine("matchedNew[j] = true;");
+    writer.startLine("_edits.add(new Edit(Kind.MOVE, oldPath + \"[\" + (pre+i) + \"]\", newPath + \"[\" + (pre+j) + \"]\", ");
+    writer.print("olds.get(pre+i), news.get(pre+j)));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.startLine("// walk the gaps between matches, pairing up the remaining elements");
+    writer.startLine("int i = 0;");
+    writer.startLine("int j = 0;");
+    writer.startLine("while (i < oldLen || j < newLen) {");
+    writer.indent();
+    writer.startLine("int iEnd = i;");
+    writer.startLine("while (iEnd < oldLen && matchedOld[iEnd] < 0) { iEnd++; }");
+    writer.startLine("int jEnd = (iEnd < oldLen) ? matchedOld[iEnd]-pre : newLen;");
+    writer.startLine("java.util.LinkedList<java.lang.Integer> oldGap = new java.util.LinkedList<java.lang.Integer>();");
+    writer.startLine("java.util.LinkedList<java.lang.Integer> newGap = new java.util.LinkedList<java.lang.Integer>();");
+    writer.startLine("for (int k = i; k < iEnd; k++) { if (!moved[k]) { oldGap.add(pre+k); } }");
+    writer.startLine("for (int k = j; k < jEnd; k++) { if (!matchedNew[k]) { newGap.add(pre+k); } }");
+    writer.startLine("// prefer pairing nodes of the same class, which can be diffed field by field");
+    writer.startLine("java.util.Iterator<java.lang.Integer> oldIter = oldGap.iterator();");
+    writer.startLine("while (oldIter.hasNext() && !newGap.isEmpty()) {");
+    writer.indent();
+    writer.startLine("int oldIndex = oldIter.next();");
+    writer.startLine(r + " oldElt = olds.get(oldIndex);");
+    writer.startLine("java.util.Iterator<java.lang.Integer> newIter = newGap.iterator();");
+    writer.startLine("while (newIter.hasNext()) {");
+    writer.indent();
+    writer.startLine("int newIndex = newIter.next();");
+    writer.startLine(r + " newElt = news.get(newIndex);");
+    writer.startLine("if (oldElt != null && newElt != null && oldElt.getClass() == newElt.getClass()) {");
+    writer.indent();
+    writer.startLine("push(oldElt, newElt, oldPath + \"[\" + oldIndex + \"]\", newPath + \"[\" + newIndex + \"]\");");
+    writer.startLine("oldIter.remove();");
+    writer.startLine("newIter.remove();");
+    writer.startLine("break;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("while (!oldGap.isEmpty() && !newGap.isEmpty()) {");
+    writer.indent();
+    writer.startLine("int oldIndex = oldGap.removeFirst();");
+    writer.startLine("int newIndex = newGap.removeFirst();");
+    writer.startLine("push(olds.get(oldIndex), news.get(newIndex), oldPath + \"[\" + oldIndex + \"]\", ");
+    writer.print("newPath + \"[\" + newIndex + \"]\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("for (int oldIndex : oldGap) {");
+    writer.indent();
+    writer.startLine("_edits.add(new Edit(Kind.DELETE, oldPath + \"[\" + oldIndex + \"]\", null, olds.get(oldIndex), null));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("for (int newIndex : newGap) {");
+    writer.indent();
+    writer.startLine("_edits.add(new Edit(Kind.INSERT, null, newPath + \"[\" + newIndex + \"]\", null, news.get(newIndex)));");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("// skip the match itself");
+    writer.startLine("i = iEnd + 1;");
+    writer.startLine("j = jEnd + 1;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+}
@@ -81,6 +81,50 @@ public abstract class TreeWalker {
     return true;
   }
 
+  /**
+   * Visit a primitive iterated element, an element of a primitive array or list.  By default, the
+   * boxed element is passed to {@link #visitIteratedElement(int, Object)}; walkers that handle
+   * primitives can override these methods to avoid boxing.
+   */
+  public boolean visitIteratedElement(int index, boolean element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, char element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, byte element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, short element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, int element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, long element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, float element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
+  /** Visit a primitive iterated element; see {@link #visitIteratedElement(int, boolean)}. */
+  public boolean visitIteratedElement(int index, double element) {
+    return visitIteratedElement(index, (java.lang.Object) element);
+  }
+
   /** Signal the end of recursion on an iterated element. */
   public void endIteratedElement(int index, java.lang.Object element) {
   }
@@ -414,6 +414,28 @@ public final class Types {
     public SequenceClassName withMappedOriginal(String origVar);
   }
 
+  /**
+   * A sequence class specialized to a primitive element type, such as {@code IntList}.  Instances are
+   * immutable and backed by exact-size arrays; the classes are generated by {@link PrimitiveListGenerator}.
+   */
+  public static interface PrimitiveSequenceClassName extends SequenceClassName {
+
+    public PrimitiveName elementType();
+  }
+
+  /**
+   * A sequence class whose values are stored as an immutable, exact-size {@code CompactList}; the
+   * class is generated by {@link CompactListGenerator}.  (See {@link Options#compactSequences}.)
+   */
+  public static interface CompactSequenceClassName extends SequenceClassName {
+
+    /**
+     * Produce an expression converting the given variable of this type to a {@code CompactList}.
+     * Compact lists and {@code null} are returned as is.
+     */
+    public String compactor(String var);
+  }
+
   /** A class type with an empty and non-empty variant. */
   public static interface OptionClassName extends ClassName {
 
@@ -687,7 +709,7 @@ public final class Types {
     }
 
     public PrimitiveName elementType() {
-      return (PrimitiveName) elementType();
+      return (PrimitiveName) super.elementType();
     }
   }
 
@@ -1215,9 +1237,134 @@ public final class Types {
     }
   }
 
+  /** Immutable, exact-size lists are used in place of {@code ArrayList}s. */
+  private static class ConcreteCompactSequenceClassName extends ConcreteSequenceClassName
+          implements CompactSequenceClassName {
+    
+    // supported classes: interfaces implemented by CompactList
+    public static final Set<String> CLASSES = new HashSet<String>();
+
+    static {
+      CLASSES.add("Iterable");
+      CLASSES.add("java.lang.Iterable");
+      CLASSES.add("Collection");
+      CLASSES.add("java.util.Collection");
+      CLASSES.add("List");
+      CLASSES.add("java.util.List");
+    }
+
+    public ConcreteCompactSequenceClassName(String cName, TypeArgumentName targ) {
+      super(cName, targ, "CompactList.Builder", true);
+    }
+
+    protected ConcreteCompactSequenceClassName(String cName, TypeArgumentName targ, String sizeExpr) {
+      super(cName, targ, "CompactList.Builder", sizeExpr);
+    }
+
+    @Override
+    public SequenceClassName withElementType(TypeName elementType) {
+      return new ConcreteCompactSequenceClassName(className(), elementType, _sizeExpr);
+    }
+
+    @Override
+    public SequenceClassName withMappedOriginal(String origVar) {
+      if (className().endsWith("Iterable")) {
+        return this;
+      } else {
+        return new ConcreteCompactSequenceClassName(className(), _eltT, origVar + ".size()");
+      }
+    }
+
+    @Override
+    public String constructor(String accumVar) {
+      return accumVar + ".build()";
+    }
+
+    public String compactor(String var) {
+      return "CompactList.copyOf(" + var + ")";
+    }
+  }
+
+  /**
+   * A generated sequence class specialized to a primitive element type.  Element access is
+   * through the backing array, so that neither iteration nor accumulation boxes elements.
+   */
+  private static class ConcretePrimitiveSequenceClassName extends ConcreteClassName
+          implements PrimitiveSequenceClassName {
+    // supported classes and their element types
+
+    public static final Map<String, String> CLASSES = new HashMap<String, String>();
+
+    static {
+      CLASSES.put("IntList", "int");
+      CLASSES.put("LongList", "long");
+      CLASSES.put("DoubleList", "double");
+    }
+    
+    private final PrimitiveName _eltT;
+    private final String _sizeExpr;
+
+    public ConcretePrimitiveSequenceClassName(String cName) {
+      this(cName, "");
+    }
+
+    protected ConcretePrimitiveSequenceClassName(String cName, String sizeExpr) {
+      super(cName);
+      _eltT = ConcretePrimitiveName.INSTANCES.get(CLASSES.get(cName));
+      _sizeExpr = sizeExpr;
+    }
+
+    public <T> T accept(TypeNameVisitor<? extends T> visitor) {
+      return visitor.forSequenceClass(this);
+    }
+
+    public PrimitiveName elementType() {
+      return _eltT;
+    }
+
+    /**
+     * Another primitive list class if {@code eltType} has one; otherwise, a {@code java.util.List}
+     * of the (boxed) element type.
+     */
+    public SequenceClassName withElementType(TypeName eltType) {
+      for (Map.Entry<String, String> e : CLASSES.entrySet()) {
+        if (e.getValue().equals(eltType.name())) {
+          return new ConcretePrimitiveSequenceClassName(e.getKey(), _sizeExpr);
+        }
+      }
+      if (eltType instanceof PrimitiveName) {
+        eltType = ((PrimitiveName) eltType).boxed();
+      }
+      return new ConcreteSequenceClassName("java.util.List", eltType, "java.util.ArrayList", true);
+    }
+
+    public SequenceClassName withMappedOriginal(String origVar) {
+      return new ConcretePrimitiveSequenceClassName(className(), origVar + ".size()");
+    }
+
+    public String accumulator(String accumVar) {
+      return className() + ".Builder " + accumVar + " = new " + className() + ".Builder(" + _sizeExpr + ");";
+    }
+
+    public String addToAccumulator(String accumVar, String eltExpression) {
+      return accumVar + ".add(" + eltExpression + ");";
+    }
+
+    public String constructor(String accumVar) {
+      return accumVar + ".build()";
+    }
+
+    /** Iterates over the backing array (which must not be modified). */
+    public String iterable(String var) {
+      return var + ".backingArray()";
+    }
+  }
+
   public static TypeName parse(String name, ASTModel ast) {
     if (ConcretePrimitiveName.INSTANCES.containsKey(name)) {
       return ConcretePrimitiveName.INSTANCES.get(name);
+    } else if (ConcretePrimitiveSequenceClassName.CLASSES.containsKey(name)) {
+      return new ConcretePrimitiveSequenceClassName(name);
     } else if (name.endsWith("[]")) {
       String eltName = name.substring(0, name.length() - 2);
       if (ConcretePrimitiveName.INSTANCES.containsKey(eltName)) {
@@ -1272,7 +1419,9 @@ public final class Types {
         }
       }
 
-      if (ConcreteSequenceClassName.CLASSES.containsKey(className)) {
+      if (ast.options().compactSequences && ConcreteCompactSequenceClassName.CLASSES.contains(className)) {
+        return new ConcreteCompactSequenceClassName(className, targs.get(0));
+      } else if (ConcreteSequenceClassName.CLASSES.containsKey(className)) {
         String accumClass = ConcreteSequenceClassName.CLASSES.get(className);
         boolean useSize = ConcreteSequenceClassName.SIZE_CLASSES.contains(className)
                 && ConcreteSequenceClassName.SIZE_CONS_CLASSES.contains(accumClass);
@@ -209,18 +209,35 @@ public class UpdateVisitorGenerator extends RecursiveVisitorGenerator {
       }
 
       protected void handleSequence(SequenceName t) {
-        writer.startLine(t.accumulator("accum"));
-        writer.startLine("boolean unchanged = true;");
-        writer.startLine("for (" + t.elementType().name() + " elt : " + t.iterable("that") + ") {");
-        writer.indent();
+        // copy on change: nothing is allocated until an element's result differs from the original
+        String eltT = t.elementType().name();
         // we assume t has an element type that can be recurred on
         String recur = recurExpression(t.elementType(), "elt", root, false).unwrap();
-        writer.startLine(t.elementType().name() + " update_elt = " + recur + ";");
-        writer.startLine("unchanged &= (elt == update_elt);");
-        writer.startLine(t.addToAccumulator("accum", "update_elt"));
+        writer.startLine("int changed = 0;");
+        writer.startLine(eltT + " changed_elt = null;");
+        writer.startLine("boolean unchanged = true;");
+        writer.startLine("for (" + eltT + " elt : " + t.iterable("that") + ") {");
+        writer.indent();
+        writer.startLine(eltT + " update_elt = " + recur + ";");
+        writer.startLine("if (elt != update_elt) { changed_elt = update_elt; unchanged = false; break; }");
+        writer.startLine("changed++;");
+        writer.unindent();
+        writer.startLine("}");
+        writer.startLine("if (unchanged) { return that; }");
+
+        // elements before the first change are reused, and later elements are each recurred on once
+        SequenceName mapped = t.withMappedOriginal("that");
+        writer.startLine(mapped.accumulator("accum"));
+        writer.startLine("int index = 0;");
+        writer.startLine("for (" + eltT + " elt : " + t.iterable("that") + ") {");
+        writer.indent();
+        writer.startLine("if (index < changed) { " + mapped.addToAccumulator("accum", "elt") + " }");
+        writer.startLine("else if (index == changed) { " + mapped.addToAccumulator("accum", "changed_elt") + " }");
+        writer.startLine("else { " + mapped.addToAccumulator("accum", recur) + " }");
+        writer.startLine("index++;");
         writer.unindent();
         writer.startLine("}");
-        writer.startLine("return unchanged ? that : " + t.constructor("accum") + ";");
+        writer.startLine("return " + mapped.constructor("accum") + ";");
       }
 
       public Void forOptionClass(OptionClassName t) {
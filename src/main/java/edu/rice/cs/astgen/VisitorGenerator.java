@@ -34,8 +34,11 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.astgen;
 
+import java.util.ArrayList;
+import java.util.List;
 import edu.rice.cs.plt.iter.IterUtil;
 import edu.rice.cs.plt.tuple.Option;
+import edu.rice.cs.astgen.Types.*;
 
 /** Shared code for visitor code generators. */
 public abstract class VisitorGenerator extends CodeGenerator {
@@ -54,13 +57,49 @@ public abstract class VisitorGenerator extends CodeGenerator {
   /** Generate a visitor for the given root type. */
   protected abstract void generateVisitor(NodeType root);
 
+///+ <CR029>
+  /**
+   * Split the descendents of {@code root} into consecutive shards of at most
+   * {@code options.visitorShardSize} types, each to be handled by a separate class or interface.
+   * Descendents are listed in a preorder traversal of the hierarchy, so a shard is made up of
+   * neighboring subtrees, and a type's parent never belongs to a later shard.  If the option is not
+   * set, the result has a single shard.
+   */
+  protected List<List<NodeType>> shards(NodeType root) {
+    List<List<NodeType>> result = new ArrayList<List<NodeType>>();
+    List<NodeType> shard = new ArrayList<NodeType>();
+    for (NodeType t : ast.descendents(root)) {
+      if (options.visitorShardSize > 0 && shard.size() == options.visitorShardSize) {
+        result.add(shard);
+        shard = new ArrayList<NodeType>();
+      }
+      shard.add(t);
+    }
+    result.add(shard);
+    return result;
+  }
+
+  /**
+   * The name of the class or interface handling shard {@code i} of {@code count}.  The last shard
+   * keeps the visitor's name, so that clients are unaffected by sharding.
+   */
+  protected static String shardName(String visitorName, int i, int count) {
+    return (i == count - 1) ? visitorName : visitorName + "_" + i;
+  }
+///+ </CR029>
+
   protected String visitorMethodName(NodeType c) {
     return options.visitorMethodPrefix + upperCaseFirst(c.name());
   }
 
   protected void outputVisitorInterfaceCases(NodeType root, TabPrintWriter writer, String retType) {
+    outputVisitorInterfaceCases(ast.descendents(root), writer, retType);	///+ <CR029/>
+  }
+
+  protected void outputVisitorInterfaceCases(Iterable<NodeType> types, TabPrintWriter writer,	///+ <CR029/>
+                                             String retType) {
     // Write out case methods for each concrete class
-    for (NodeType t : ast.descendents(root)) {
+    for (NodeType t : types) {
       if (!t.isAbstract()) {
         writer.println();
         writer.startLine("/** Process an instance of " + t.name() + ". */");
@@ -144,4 +183,63 @@ public abstract class VisitorGenerator extends CodeGenerator {
     }
     writer.print(") {");
   }
+
+  /**
+   * Classifies a field type according to whether it holds children in a root's hierarchy:
+   * a node directly, a sequence of nodes, or an option of a node.  Other types (including
+   * nodes outside of the root's hierarchy) are passed to {@link #handleOther}.
+   */
+  protected abstract class ChildFieldVisitor implements TypeNameVisitor<Void> {
+
+    private final NodeType _root;
+
+    protected ChildFieldVisitor(NodeType root) {
+      _root = root;
+    }
+
+    protected abstract void handleNode(ClassName t);
+
+    protected abstract void handleSequence(SequenceName t);
+
+    protected abstract void handleOption(OptionClassName t);
+
+    /** Handle a type that does not hold children; by default, do nothing. */
+    protected void handleOther(TypeName t) {
+    }
+
+    protected boolean isChild(TypeName t) {
+      Option<NodeType> nodeType = ast.typeForName(t);
+      return nodeType.isSome() && ast.isDescendent(_root, nodeType.unwrap());
+    }
+
+    public Void forTreeNode(ClassName t) {
+      if (isChild(t)) { handleNode(t); } else { handleOther(t); }
+      return null;
+    }
+
+    public Void forReferenceArray(ReferenceArrayName t) {
+      if (isChild(t.elementType())) { handleSequence(t); } else { handleOther(t); }
+      return null;
+    }
+
+    public Void forSequenceClass(SequenceClassName t) {
+      if (isChild(t.elementType())) { handleSequence(t); } else { handleOther(t); }
+      return null;
+    }
+
+    public Void forOptionClass(OptionClassName t) {
+      if (isChild(t.elementType())) { handleOption(t); } else { handleOther(t); }
+      return null;
+    }
+
+    public Void forPrimitive(PrimitiveName t) { handleOther(t); return null; }
+
+    public Void forString(ClassName t) { handleOther(t); return null; }
+
+    public Void forPrimitiveArray(PrimitiveArrayName t) { handleOther(t); return null; }
+
+    public Void forTupleClass(TupleClassName t) { handleOther(t); return null; }
+
+    public Void forGeneralClass(ClassName t) { handleOther(t); return null; }
+  }
 }
@@ -34,6 +34,7 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.astgen;
 
+import java.util.List;
 import edu.rice.cs.plt.iter.IterUtil;
 
 public class VoidVisitorInterfaceGenerator extends VisitorGenerator {
@@ -90,6 +91,22 @@ public class VoidVisitorInterfaceGenerator extends VisitorGenerator {
   @Override
   protected void generateVisitor(NodeType root) {
     String visitorName = visitorName(root);
+    List<List<NodeType>> shards = shards(root);	///+ <CR029/>
+///+ <CR029>
+    for (int i = 0; i < shards.size() - 1; i++) {
+      String shardName = shardName(visitorName, i, shards.size());
+      TabPrintWriter writer = options.createJavaSourceInOutDir(shardName);
+      writer.startLine("/** Part of {@link " + visitorName + "}, declaring the cases for shard " + i + ". */");
+      writer.startLine("@SuppressWarnings(\"unused\")");
+      writer.startLine("public interface " + shardName + " {");
+      writer.indent();
+      outputVisitorInterfaceCases(shards.get(i), writer, "void");
+      writer.unindent();
+      writer.startLine("}");
+      writer.println();
+      writer.close();
+    }
+///+ </CR029>
     TabPrintWriter writer = options.createJavaSourceInOutDir(visitorName);
 
     // Class header
@@ -98,6 +115,13 @@ public class VoidVisitorInterfaceGenerator extends VisitorGenerator {
     writer.startLine("@SuppressWarnings(\"unused\")");
     writer.startLine("public interface " + visitorName);
     boolean first = true;
+///+ <CR029>
+    for (int i = 0; i < shards.size() - 1; i++) {
+      writer.print(first ? " extends " : ", ");
+      first = false;
+      writer.print(shardName(visitorName, i, shards.size()));
+    }
+///+ </CR029>
     for (NodeType d : ast.descendents(root)) {
       if (!d.equals(root) && ast.isRoot(d)) {
         if (first) {
@@ -112,7 +136,7 @@ public class VoidVisitorInterfaceGenerator extends VisitorGenerator {
     writer.print(" {");
     writer.indent();
 
-    outputVisitorInterfaceCases(root, writer, "void");
+    outputVisitorInterfaceCases(shards.get(shards.size() - 1), writer, "void");	///+ <CR029/>
 
     writer.unindent();
     writer.startLine("}");
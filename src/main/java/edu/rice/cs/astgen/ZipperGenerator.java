@@ -0,0 +1,362 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+ASTGen BSD License
+
+Copyright (c) 2007 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+Rice University
+http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+- Redistributions of source code must retain the above copyright notice, this list of conditions 
+and the following disclaimer.
+- Redistributions in binary form must reproduce the above copyright notice, this list of 
+conditions and the following disclaimer in the documentation and/or other materials provided 
+with the distribution.
+- Neither the name of the JavaPLT group, Rice University, nor the names of the tool's 
+contributors may be used to endorse or promote products derived from this software without 
+specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.astgen;
+
+import java.util.*;
+import edu.rice.cs.astgen.Types.*;
+
+/**
+ * Generates, for each root, a zipper class supporting local edits.  A zipper is focused on
+ * one node of a tree and remembers the path back to the root; replacing the focus and moving
+ * back up rebuilds (using the generated constructors) only the nodes on that path, so
+ * untouched subtrees are shared with the original tree.  Navigation is supported for fields
+ * that hold a node directly, in a sequence, or in an option.
+ */
+public class ZipperGenerator extends VisitorGenerator {
+
+  public ZipperGenerator(ASTModel ast) {
+    super(ast);
+  }
+
+  @Override
+  public Iterable<Class<? extends CodeGenerator>> dependencies() {
+    return singleDependency(VisitorInterfaceGenerator.class);
+  }
+
+  @Override
+  public void generateInterfaceMembers(TabPrintWriter writer, NodeInterface i) {
+  }
+
+  @Override
+  public void generateClassMembers(TabPrintWriter writer, NodeClass c) {
+  }
+
+  @Override
+  protected void generateVisitor(NodeType root) {
+    String zipperName = root.name() + "Zipper";
+    String r = root.name();
+    TabPrintWriter writer = options.createJavaSourceInOutDir(zipperName);
+
+    // Class header
+    writer.startLine("/**");
+    writer.startLine(" * A cursor over a tree of " + r + " nodes.  Each zipper is immutable: it is focused");
+    writer.startLine(" * on a single node and records the path (field name and index) leading back to");
+    writer.startLine(" * the top.  After a {@link #replace}, moving {@link #up} rebuilds only the nodes");
+    writer.startLine(" * along that path, so an edit costs time proportional to the depth of the focus.");
+    writer.startLine(" * Indices select an element of a sequence-typed field; fields holding a node");
+    writer.startLine(" * directly or in an option use an index of -1.");
+    writer.startLine(" */");
+    writer.startLine("@SuppressWarnings(\"unused\")");
+    writer.startLine("public final class " + zipperName + " {");
+    writer.indent();
+    writer.println();
+
+    writer.startLine("private final " + r + " _focus;");
+    writer.startLine("private final " + zipperName + " _up; // null at the top");
+    writer.startLine("private final java.lang.String _field; // field of _up's focus holding _focus");
+    writer.startLine("private final int _index;");
+    writer.startLine("private final boolean _changed; // whether _focus differs from the original child");
+    writer.println();
+
+    writer.startLine("private " + zipperName + "(" + r + " focus, " + zipperName + " up, java.lang.String field, ");
+    writer.print("int index, boolean changed) {");
+    writer.indent();
+    writer.startLine("_focus = focus;");
+    writer.startLine("_up = up;");
+    writer.startLine("_field = field;");
+    writer.startLine("_index = index;");
+    writer.startLine("_changed = changed;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Create a zipper focused on the top of the given tree. */");
+    writer.startLine("public static " + zipperName + " of(" + r + " tree) {");
+    writer.indent();
+    writer.startLine("return new " + zipperName + "(tree, null, null, -1, false);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The node at the current position. */");
+    writer.startLine("public " + r + " focus() { return _focus; }");
+    writer.println();
+    writer.startLine("/** Whether this zipper is focused on the top of the tree. */");
+    writer.startLine("public boolean isTop() { return _up == null; }");
+    writer.println();
+    writer.startLine("/** The name of the parent's field holding the focus, or {@code null} at the top. */");
+    writer.startLine("public java.lang.String field() { return _field; }");
+    writer.println();
+    writer.startLine("/** The index of the focus within the parent's field, or -1 if the field is not a sequence. */");
+    writer.startLine("public int index() { return _index; }");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Move to the node held by the given field of the focus.");
+    writer.startLine(" * @throws IllegalArgumentException  If the field does not hold a node directly or in an option.");
+    writer.startLine(" */");
+    writer.startLine("public " + zipperName + " down(java.lang.String field) {");
+    writer.indent();
+    writer.startLine("return down(field, -1);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Move to the node at position {@code index} of the given sequence field of the focus.");
+    writer.startLine(" * @throws IllegalArgumentException  If the field or index does not identify a node.");
+    writer.startLine(" */");
+    writer.startLine("public " + zipperName + " down(java.lang.String field, int index) {");
+    writer.indent();
+    writer.startLine(r + " child = _focus." + options.visitMethod + "(new ChildGetter(field, index));");
+    writer.startLine("return new " + zipperName + "(child, this, field, index, false);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Move to another element of the sequence field holding the focus.");
+    writer.startLine(" * @throws IllegalStateException  If the focus is not held in a sequence.");
+    writer.startLine(" */");
+    writer.startLine("public " + zipperName + " sibling(int index) {");
+    writer.indent();
+    writer.startLine("if (_up == null || _index < 0) {");
+    writer.indent();
+    writer.startLine("throw new java.lang.IllegalStateException(\"Focus is not an element of a sequence\");");
+    writer.unindent();
+    writer.startLine("}");
+    writer.startLine("return up().down(_field, index);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Produce a zipper at the same position with the focus replaced by {@code node}.");
+    writer.startLine(" * The original tree is not modified.");
+    writer.startLine(" */");
+    writer.startLine("public " + zipperName + " replace(" + r + " node) {");
+    writer.indent();
+    writer.startLine("if (node == _focus) { return this; }");
+    writer.startLine("return new " + zipperName + "(node, _up, _field, _index, true);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/**");
+    writer.startLine(" * Move to the parent of the focus.  If the focus has been replaced, the parent is");
+    writer.startLine(" * rebuilt with the new child; otherwise, the original parent is reused.");
+    writer.startLine(" * @throws IllegalStateException  If this zipper is at the top.");
+    writer.startLine(" * @throws ClassCastException  If the replacement is not valid for the parent's field.");
+    writer.startLine(" */");
+    writer.startLine("public " + zipperName + " up() {");
+    writer.indent();
+    writer.startLine("if (_up == null) { throw new java.lang.IllegalStateException(\"Already at the top\"); }");
+    writer.startLine("if (!_changed) { return _up; }");
+    writer.startLine(r + " rebuilt = _up._focus." + options.visitMethod + "(new ChildSetter(_field, _index, _focus));");
+    writer.startLine("return new " + zipperName + "(rebuilt, _up._up, _up._field, _up._index, true);");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** Move to the top of the tree, rebuilding the path as necessary. */");
+    writer.startLine("public " + zipperName + " top() {");
+    writer.indent();
+    writer.startLine(zipperName + " result = this;");
+    writer.startLine("while (result._up != null) { result = result.up(); }");
+    writer.startLine("return result;");
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+
+    writer.startLine("/** The (possibly rebuilt) top of the tree. */");
+    writer.startLine("public " + r + " root() { return top()._focus; }");
+    writer.println();
+
+    generateChildGetter(writer, root);
+    writer.println();
+    generateChildSetter(writer, root);
+    writer.println();
+
+    writer.startLine("private static java.lang.IllegalArgumentException noChild(" + r + " node, ");
+    writer.print("java.lang.String field, int index) {");
+    writer.indent();
+    writer.startLine("return new java.lang.IllegalArgumentException(\"No child of \" + node.getClass().getName()");
+    writer.print(" + \" at \" + field + (index < 0 ? \"\" : \"[\" + index + \"]\"));");
+    writer.unindent();
+    writer.startLine("}");
+
+    writer.unindent();
+    writer.startLine("}");
+    writer.println();
+    writer.close();
+  }
+
+  /** Output a visitor that gets the child at a given field and index. */
+  protected void generateChildGetter(final TabPrintWriter writer, final NodeType root) {
+    String r = root.name();
+    writer.startLine("private static final class ChildGetter implements " + r + "Visitor<" + r + "> {");
+    writer.indent();
+    writer.startLine("private final java.lang.String _field;");
+    writer.startLine("private final int _index;");
+    writer.startLine("public ChildGetter(java.lang.String field, int index) { _field = field; _index = index; }");
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        writer.println();
+        outputForCaseHeader(t, writer, r, "");
+        writer.indent();
+        for (Field f : t.allFields(ast)) {
+          final String getter = "that." + f.getGetterName() + "()";
+          final String test = "_field.equals(\"" + f.name() + "\")";
+          f.type().accept(new ChildFieldVisitor(root) {
+            @Override protected void handleNode(ClassName t) {
+              writer.startLine("if (" + test + " && _index < 0) { return " + getter + "; }");
+            }
+            @Override protected void handleSequence(SequenceName t) {
+              writer.startLine("if (" + test + " && _index >= 0) {");
+              writer.indent();
+              writer.startLine("int i = 0;");
+              writer.startLine("for (" + t.elementType().name() + " elt : " + t.iterable(getter) + ") {");
+              writer.indent();
+              writer.startLine("if (i++ == _index) { return elt; }");
+              writer.unindent();
+              writer.startLine("}");
+              writer.unindent();
+              writer.startLine("}");
+            }
+            @Override protected void handleOption(OptionClassName t) {
+              writer.startLine("if (" + test + " && _index < 0 && !" + t.emptyTester(getter) + ") {");
+              writer.indent();
+              writer.startLine("return " + t.nonEmptyGetter(getter) + ";");
+              writer.unindent();
+              writer.startLine("}");
+            }
+          });
+        }
+        writer.startLine("throw noChild(that, _field, _index);");
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+  /** Output a visitor that rebuilds a node with the child at a given field and index replaced. */
+  protected void generateChildSetter(final TabPrintWriter writer, final NodeType root) {
+    String r = root.name();
+    writer.startLine("private static final class ChildSetter implements " + r + "Visitor<" + r + "> {");
+    writer.indent();
+    writer.startLine("private final java.lang.String _field;");
+    writer.startLine("private final int _index;");
+    writer.startLine("private final " + r + " _child;");
+    writer.startLine("public ChildSetter(java.lang.String field, int index, " + r + " child) {");
+    writer.indent();
+    writer.startLine("_field = field; _index = index; _child = child;");
+    writer.unindent();
+    writer.startLine("}");
+    for (NodeType t : ast.descendents(root)) {
+      if (!t.isAbstract()) {
+        writer.println();
+        outputForCaseHeader(t, writer, r, "");
+        writer.indent();
+        final List<Field> fields = new ArrayList<Field>();
+        for (Field f : t.allFields(ast)) { fields.add(f); }
+        for (int i = 0; i < fields.size(); i++) {
+          final Field f = fields.get(i);
+          final String getter = "that." + f.getGetterName() + "()";
+          final String test = "_field.equals(\"" + f.name() + "\")";
+          final String newNode = newNodeExpression(t, fields, i, "replaced");
+          f.type().accept(new ChildFieldVisitor(root) {
+            @Override protected void handleNode(ClassName t) {
+              writer.startLine("if (" + test + " && _index < 0) {");
+              writer.indent();
+              writer.startLine(t.name() + " replaced = (" + t.name() + ") _child;");
+              writer.startLine("return " + newNode + ";");
+              writer.unindent();
+              writer.startLine("}");
+            }
+            @Override protected void handleSequence(SequenceName t) {
+              SequenceName mapped = t.withMappedOriginal("original");
+              String eltT = t.elementType().name();
+              writer.startLine("if (" + test + " && _index >= 0) {");
+              writer.indent();
+              writer.startLine(f.type().name() + " original = " + getter + ";");
+              writer.startLine(mapped.accumulator("accum"));
+              writer.startLine("int i = 0;");
+              writer.startLine("for (" + eltT + " elt : " + t.iterable("original") + ") {");
+              writer.indent();
+              writer.startLine(mapped.addToAccumulator("accum", "(i++ == _index) ? (" + eltT + ") _child : elt"));
+              writer.unindent();
+              writer.startLine("}");
+              writer.startLine("if (_index >= i) { throw noChild(that, _field, _index); }");
+              writer.startLine(f.type().name() + " replaced = " + mapped.constructor("accum") + ";");
+              writer.startLine("return " + newNode + ";");
+              writer.unindent();
+              writer.startLine("}");
+            }
+            @Override protected void handleOption(OptionClassName t) {
+              String eltT = t.elementType().name();
+              writer.startLine("if (" + test + " && _index < 0 && !" + t.emptyTester(getter) + ") {");
+              writer.indent();
+              writer.startLine(f.type().name() + " replaced = " + t.nonEmptyConstructor("(" + eltT + ") _child") + ";");
+              writer.startLine("return " + newNode + ";");
+              writer.unindent();
+              writer.startLine("}");
+            }
+          });
+        }
+        writer.startLine("throw noChild(that, _field, _index);");
+        writer.unindent();
+        writer.startLine("}");
+      }
+    }
+    writer.unindent();
+    writer.startLine("}");
+  }
+
+  /** An expression constructing a copy of {@code that} with field {@code replacedIndex} set to {@code var}. */
+  protected String newNodeExpression(NodeType t, List<Field> fields, int replacedIndex, String var) {
+    StringBuilder result = new StringBuilder();
+    result.append("new ").append(t.name()).append("(");
+    for (int i = 0; i < fields.size(); i++) {
+      if (i > 0) { result.append(", "); }
+      if (i == replacedIndex) { result.append(var); }
+      else { result.append("that.").append(fields.get(i).getGetterName()).append("()"); }
+    }
+    result.append(")");
+    return result.toString();
+  }
+
+}